@@ -0,0 +1,72 @@
+package org.llvm.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.llvm.BasicBlock;
+import org.llvm.Builder;
+import org.llvm.Module;
+import org.llvm.TypeRef;
+import org.llvm.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Instructions emitted per second through Builder.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BuilderBenchmark {
+
+	private static final int INSTRUCTIONS = 1000;
+
+	@Param({ "true", "false" })
+	public boolean names;
+
+	private Module module;
+
+	private Value function;
+
+	private Builder builder;
+
+	@Setup
+	public void setUp() {
+		TypeRef i64 = TypeRef.int64Type();
+		this.module = Module.createWithName("builder");
+		this.function = this.module.addFunction("f",
+				TypeRef.functionType(i64, i64, i64));
+		this.builder = Builder.createBuilder();
+		this.builder.setNamesEnabled(this.names);
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.builder.dispose();
+		this.module.dispose();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(INSTRUCTIONS)
+	public Value buildInstructions() {
+		BasicBlock bb = this.function.appendBasicBlock("bb");
+		this.builder.positionBuilderAtEnd(bb);
+
+		Value a = this.function.getParam(0);
+		Value b = this.function.getParam(1);
+		for (int i = 0; i < INSTRUCTIONS; i++) {
+			a = this.builder.buildAdd(a, b, "tmp");
+		}
+
+		bb.delete();
+		return a;
+	}
+
+}
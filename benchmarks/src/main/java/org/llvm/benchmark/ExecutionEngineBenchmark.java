@@ -0,0 +1,63 @@
+package org.llvm.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.bridj.Pointer;
+import org.llvm.ExecutionEngine;
+import org.llvm.LLVMException;
+import org.llvm.Module;
+import org.llvm.Target;
+import org.llvm.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Latency of creating an execution engine and obtaining machine code for a<br>
+ * function of its module.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExecutionEngineBenchmark {
+
+	@Param({ "1", "100" })
+	public int functions;
+
+	private Module module;
+
+	private Value entry;
+
+	private ExecutionEngine engine;
+
+	@Setup(Level.Trial)
+	public void initialiseTarget() {
+		Target.initialiseNativeTarget();
+	}
+
+	@Setup(Level.Invocation)
+	public void setUp() throws LLVMException {
+		this.module = Modules.generate("engine", this.functions, 20);
+		this.entry = this.module.getNamedFunction("f0");
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDown() {
+		/* The engine owns the module. */
+		this.engine.dispose();
+	}
+
+	@Benchmark
+	public Pointer<?> createEngine() {
+		this.engine = ExecutionEngine.createForModule(this.module);
+		return this.engine.getPointerToGlobal(this.entry);
+	}
+
+}
@@ -0,0 +1,80 @@
+package org.llvm.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.llvm.ExecutionEngine;
+import org.llvm.GenericValue;
+import org.llvm.Module;
+import org.llvm.Target;
+import org.llvm.TypeRef;
+import org.llvm.Value;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Per-call overhead of ExecutionEngine.runFunction compared with a call<br>
+ * through ExecutionEngine.getFunction, which still boxes the arguments<br>
+ * for a reflective proxy call. Run with<br>
+ * java -jar target/benchmarks.jar InvocationBenchmark after packaging.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InvocationBenchmark {
+
+	public interface LongBinaryFunction {
+		long apply(long a, long b);
+	}
+
+	private ExecutionEngine engine;
+
+	private Value sum;
+
+	private TypeRef i64;
+
+	private LongBinaryFunction direct;
+
+	private long a = 40;
+
+	private long b = 2;
+
+	@Setup
+	public void setUp() {
+		Target.initialiseNativeTarget();
+		Module module = Module.createWithName("invoke");
+		this.sum = Modules.addSum(module, "sum");
+		this.i64 = TypeRef.int64Type();
+		this.engine = ExecutionEngine.createForModule(module);
+		this.direct = this.engine.getFunction(this.sum,
+				LongBinaryFunction.class);
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.engine.dispose();
+	}
+
+	@Benchmark
+	public long runFunction() {
+		GenericValue x = GenericValue.createInt(this.i64, this.a, true);
+		GenericValue y = GenericValue.createInt(this.i64, this.b, true);
+		GenericValue r = this.engine.runFunction(this.sum, x, y);
+		long result = r.toInt(true);
+		r.dispose();
+		y.dispose();
+		x.dispose();
+		return result;
+	}
+
+	@Benchmark
+	public long directCall() {
+		return this.direct.apply(this.a, this.b);
+	}
+
+}
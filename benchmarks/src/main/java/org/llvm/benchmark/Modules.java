@@ -0,0 +1,103 @@
+package org.llvm.benchmark;
+
+import org.llvm.BasicBlock;
+import org.llvm.Builder;
+import org.llvm.Module;
+import org.llvm.PassManager;
+import org.llvm.TypeRef;
+import org.llvm.Value;
+
+/**
+ * Generates the modules measured by the benchmarks.
+ */
+final class Modules {
+
+	private Modules() {
+	}
+
+	/**
+	 * Add a function i64 name(i64 a, i64 b) returning a + b.
+	 */
+	static Value addSum(Module m, String name) {
+		TypeRef i64 = TypeRef.int64Type();
+		Value f = m.addFunction(name, TypeRef.functionType(i64, i64, i64));
+		Builder builder = Builder.createBuilder();
+		try {
+			builder.positionBuilderAtEnd(f.appendBasicBlock("entry"));
+			builder.buildRet(builder.buildAdd(f.getParam(0), f.getParam(1),
+					"sum"));
+		} finally {
+			builder.dispose();
+		}
+		return f;
+	}
+
+	/**
+	 * Create a module of functions f0 .. f(n-1). Each one keeps its state<br>
+	 * in allocas, runs a chain of arithmetic on it and calls its<br>
+	 * predecessor, which leaves work for mem2reg, instcombine, GVN and the<br>
+	 * inliner.
+	 */
+	static Module generate(String name, int functions, int chain) {
+		Module m = Module.createWithName(name);
+		TypeRef i64 = TypeRef.int64Type();
+		TypeRef fnTy = TypeRef.functionType(i64, i64, i64);
+		Builder builder = Builder.createBuilder();
+		try {
+			Value previous = null;
+			for (int n = 0; n < functions; n++) {
+				Value f = m.addFunction("f" + n, fnTy);
+				BasicBlock entry = f.appendBasicBlock("entry");
+				builder.positionBuilderAtEnd(entry);
+
+				Value x = builder.buildAlloca(i64, "x");
+				Value y = builder.buildAlloca(i64, "y");
+				builder.buildStore(f.getParam(0), x);
+				builder.buildStore(f.getParam(1), y);
+
+				for (int i = 0; i < chain; i++) {
+					Value a = builder.buildLoad(x, "a");
+					Value b = builder.buildLoad(y, "b");
+					Value c;
+					switch (i % 3) {
+					case 0:
+						c = builder.buildAdd(a, b, "c");
+						break;
+					case 1:
+						c = builder.buildMul(a, i64.constInt(i, false), "c");
+						break;
+					default:
+						c = builder.buildXor(a, b, "c");
+						break;
+					}
+					builder.buildStore(c, x);
+				}
+
+				Value result = builder.buildLoad(x, "result");
+				if (previous != null) {
+					result = builder.buildCall(previous, "call", result,
+							builder.buildLoad(y, "b"));
+				}
+				builder.buildRet(result);
+				previous = f;
+			}
+		} finally {
+			builder.dispose();
+		}
+		return m;
+	}
+
+	/**
+	 * The pipeline used by TestFactorial plus inlining, standing in for a<br>
+	 * typical hand-assembled pipeline.
+	 */
+	static void addStandardPasses(PassManager pm) {
+		pm.addFunctionInliningPass();
+		pm.addPromoteMemoryToRegisterPass();
+		pm.addInstructionCombiningPass();
+		pm.addReassociatePass();
+		pm.addGVNPass();
+		pm.addCFGSimplificationPass();
+	}
+
+}
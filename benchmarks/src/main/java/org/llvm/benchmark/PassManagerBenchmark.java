@@ -0,0 +1,52 @@
+package org.llvm.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.llvm.Module;
+import org.llvm.PassManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Time of PassManager.runForModule over generated modules of varying size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PassManagerBenchmark {
+
+	@Param({ "10", "100", "1000" })
+	public int functions;
+
+	private Module module;
+
+	@Setup(Level.Invocation)
+	public void setUp() {
+		this.module = Modules.generate("opt", this.functions, 20);
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDown() {
+		this.module.dispose();
+	}
+
+	@Benchmark
+	public boolean runStandardPipeline() {
+		PassManager pm = PassManager.create();
+		try {
+			Modules.addStandardPasses(pm);
+			return pm.runForModule(this.module);
+		} finally {
+			pm.dispose();
+		}
+	}
+
+}
@@ -0,0 +1,119 @@
+package org.llvm;
+
+/**
+ * Maps native addresses to dense indices, in the order they were added.<br>
+ * An open-addressing table of primitive longs; the address 0 is never a<br>
+ * key. Not thread-safe.
+ */
+final class AddressTable {
+
+	private long[] keys;
+
+	private int[] indices;
+
+	private int size;
+
+	AddressTable(int expected) {
+		int capacity = 16;
+		while (capacity < 2 * expected) {
+			capacity <<= 1;
+		}
+		this.keys = new long[capacity];
+		this.indices = new int[capacity];
+	}
+
+	/**
+	 * Returns the number of indices given out, removed addresses included.
+	 */
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the index of an address, or -1 if it was never added or<br>
+	 * was removed.
+	 */
+	int get(long address) {
+		int mask = this.keys.length - 1;
+		for (int i = hash(address) & mask;; i = (i + 1) & mask) {
+			long k = this.keys[i];
+			if (k == address) {
+				return this.indices[i];
+			}
+			if (k == 0) {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * Returns the index of an address, adding it with the next free index<br>
+	 * if it is new.
+	 */
+	int add(long address) {
+		int index = this.get(address);
+		if (index >= 0) {
+			return index;
+		}
+		if (2 * (this.size + 1) > this.keys.length) {
+			this.rehash(this.keys.length * 2);
+		}
+		insert(this.keys, this.indices, address, this.size);
+		return this.size++;
+	}
+
+	/**
+	 * Forget an address, e.g. when the native object was freed and the<br>
+	 * address may be reused. Its index is not given out again.
+	 */
+	void remove(long address) {
+		int mask = this.keys.length - 1;
+		int hole = hash(address) & mask;
+		while (this.keys[hole] != address) {
+			if (this.keys[hole] == 0) {
+				return;
+			}
+			hole = (hole + 1) & mask;
+		}
+
+		/* Shift back the entries of the run that could not use the slot. */
+		for (int i = (hole + 1) & mask; this.keys[i] != 0; i = (i + 1) & mask) {
+			int home = hash(this.keys[i]) & mask;
+			if (((i - home) & mask) >= ((i - hole) & mask)) {
+				this.keys[hole] = this.keys[i];
+				this.indices[hole] = this.indices[i];
+				hole = i;
+			}
+		}
+		this.keys[hole] = 0;
+	}
+
+	private void rehash(int capacity) {
+		long[] k = new long[capacity];
+		int[] v = new int[capacity];
+		for (int i = 0; i < this.keys.length; i++) {
+			if (this.keys[i] != 0) {
+				insert(k, v, this.keys[i], this.indices[i]);
+			}
+		}
+		this.keys = k;
+		this.indices = v;
+	}
+
+	private static void insert(long[] keys, int[] indices, long key, int index) {
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+			if (keys[i] == 0) {
+				keys[i] = key;
+				indices[i] = index;
+				return;
+			}
+		}
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
@@ -14,6 +14,8 @@ import static org.llvm.binding.LLVMLibrary.LLVMMoveBasicBlockBefore;
 
 import org.bridj.Pointer;
 import org.llvm.binding.LLVMLibrary.LLVMBasicBlockRef;
+import org.llvm.binding.LLVMLibrary.LLVMValueRef;
+import org.llvm.binding.LLVMRaw;
 
 /**
  * This represents a single basic block in LLVM. A basic block is simply a
@@ -106,6 +108,29 @@ public class BasicBlock {
 		return new Value(LLVMGetFirstInstruction(this.bb));
 	}
 
+	/**
+	 * Returns a view of the instructions of the basic block, in order.
+	 */
+	public Iterable<Value> instructions() {
+		final long block = Pointer.getPeer(this.bb);
+		return new NativeList<Value>() {
+			@Override
+			long first() {
+				return LLVMRaw.LLVMGetFirstInstruction(block);
+			}
+
+			@Override
+			long next(long inst) {
+				return LLVMRaw.LLVMGetNextInstruction(inst);
+			}
+
+			@Override
+			Value wrap(long inst) {
+				return new Value(new LLVMValueRef(inst));
+			}
+		};
+	}
+
 	/**
 	 * Obtain the last instruction in a basic block.<br>
 	 * The returned LLVMValueRef corresponds to a LLVM:Instruction.
@@ -4,39 +4,100 @@ import static org.llvm.binding.LLVMLibrary.*;
 
 import org.bridj.IntValuedEnum;
 import org.bridj.Pointer;
+import org.llvm.binding.LLVMRaw;
 import org.llvm.binding.LLVMLibrary.LLVMBuilderRef;
 import org.llvm.binding.LLVMLibrary.LLVMIntPredicate;
 import org.llvm.binding.LLVMLibrary.LLVMOpcode;
 import org.llvm.binding.LLVMLibrary.LLVMRealPredicate;
 import org.llvm.binding.LLVMLibrary.LLVMValueRef;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This provides a uniform API for creating instructions and inserting them into
  * a basic block: either at the end of a BasicBlock, or at a specific iterator
  * location in a block.
  */
-public class Builder {
+public class Builder implements AutoCloseable {
+	/* Shared by every builder; LLVM copies names, it never writes them. */
+	static final Pointer<Byte> EMPTY_NAME = Pointer.pointerToCString("");
+
+	private static final int NAME_CACHE_SIZE = 256;
+
 	private LLVMBuilderRef builder;
 
+	private final NativeCleaner.Cleanable cleanable;
+
+	private boolean namesEnabled = true;
+
+	/* Most recently used names, converted to C strings once. */
+	private final Map<String, Pointer<Byte>> names = new LinkedHashMap<String, Pointer<Byte>>(
+			16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Pointer<Byte>> e) {
+			return this.size() > NAME_CACHE_SIZE;
+		}
+	};
+
 	LLVMBuilderRef builder() {
-		Class x = LLVMBuilderRef.class;
 		return this.builder;
 	}
 
 	Builder(LLVMBuilderRef builder) {
 		this.builder = builder;
+		this.cleanable = NativeCleaner.register(this, new Disposer(builder));
+	}
+
+	public void dispose() {
+		this.cleanable.clean();
+		this.builder = null;
 	}
 
 	@Override
-	public void finalize() {
+	public void close() {
 		this.dispose();
 	}
 
-	public void dispose() {
-		LLVMDisposeBuilder(this.builder);
-		this.builder = null;
+	/**
+	 * Choose whether instructions get the names passed to the build<br>
+	 * methods. With names disabled every instruction is left unnamed, which<br>
+	 * saves the conversion and the symbol table work in production<br>
+	 * code generation. Globals created by buildGlobalString() and<br>
+	 * buildGlobalStringPtr() keep their names, since they may be looked up<br>
+	 * or linked by name. Names are enabled by default.
+	 */
+	public void setNamesEnabled(boolean enabled) {
+		this.namesEnabled = enabled;
+	}
+
+	public boolean isNamesEnabled() {
+		return this.namesEnabled;
+	}
+
+	/**
+	 * Returns the C string for an instruction name, reusing the one built<br>
+	 * for a recent identical name.
+	 */
+	Pointer<Byte> name(String name) {
+		if (!this.namesEnabled) {
+			return EMPTY_NAME;
+		}
+		return this.globalName(name);
+	}
+
+	/* The C string for the name of a global, which is never dropped. */
+	private Pointer<Byte> globalName(String name) {
+		if (name == null || name.isEmpty()) {
+			return EMPTY_NAME;
+		}
+		Pointer<Byte> cstr = this.names.get(name);
+		if (cstr == null) {
+			cstr = Pointer.pointerToCString(name);
+			this.names.put(name, cstr);
+		}
+		return cstr;
 	}
 
 	/* Creation */
@@ -77,7 +138,7 @@ public class Builder {
 
 	public void insertIntoBuilderWithName(Value instr, String name) {
 		LLVMInsertIntoBuilderWithName(this.builder, instr.value(),
-				Pointer.pointerToCString(name));
+				this.name(name));
 	}
 
 	public void setCurrentDebugLocation(Value l) {
@@ -129,7 +190,7 @@ public class Builder {
 			BasicBlock catch_, String name) {
 		return new Value(LLVMBuildInvoke(this.builder, fn.value(),
 				Value.internalize(args), args.size(), then.bb(), catch_.bb(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	/* public Value buildUnwind() {
@@ -158,178 +219,178 @@ public class Builder {
 
 	public Value buildAdd(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildAdd(this.builder, lhs.value(), rhs.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildNSWAdd(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildNSWAdd(this.builder, lhs.value(),
-				rhs.value(), Pointer.pointerToCString(name)));
+				rhs.value(), this.name(name)));
 	}
 
 	public Value buildNUWAdd(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildNUWAdd(this.builder, lhs.value(),
-				rhs.value(), Pointer.pointerToCString(name)));
+				rhs.value(), this.name(name)));
 	}
 
 	public Value buildFAdd(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildFAdd(this.builder, lhs.value(), rhs.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildSub(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildSub(this.builder, lhs.value(), rhs.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildNSWSub(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildNSWSub(this.builder, lhs.value(),
-				rhs.value(), Pointer.pointerToCString(name)));
+				rhs.value(), this.name(name)));
 	}
 
 	public Value buildNUWSub(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildNUWSub(this.builder, lhs.value(),
-				rhs.value(), Pointer.pointerToCString(name)));
+				rhs.value(), this.name(name)));
 	}
 
 	public Value buildFSub(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildFSub(this.builder, lhs.value(), rhs.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildMul(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildMul(this.builder, lhs.value(), rhs.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildNSWMul(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildNSWMul(this.builder, lhs.value(),
-				rhs.value(), Pointer.pointerToCString(name)));
+				rhs.value(), this.name(name)));
 	}
 
 	public Value buildNUWMul(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildNUWMul(this.builder, lhs.value(),
-				rhs.value(), Pointer.pointerToCString(name)));
+				rhs.value(), this.name(name)));
 	}
 
 	public Value buildFMul(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildFMul(this.builder, lhs.value(), rhs.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildUDiv(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildUDiv(this.builder, lhs.value(), rhs.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildSDiv(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildSDiv(this.builder, lhs.value(), rhs.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildExactSDiv(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildExactSDiv(this.builder, lhs.value(),
-				rhs.value(), Pointer.pointerToCString(name)));
+				rhs.value(), this.name(name)));
 	}
 
 	public Value buildFDiv(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildFDiv(this.builder, lhs.value(), rhs.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildURem(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildURem(this.builder, lhs.value(), rhs.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildSRem(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildSRem(this.builder, lhs.value(), rhs.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildFRem(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildFRem(this.builder, lhs.value(), rhs.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildShl(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildShl(this.builder, lhs.value(), rhs.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildLShr(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildLShr(this.builder, lhs.value(), rhs.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildAShr(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildAShr(this.builder, lhs.value(), rhs.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildAnd(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildAnd(this.builder, lhs.value(), rhs.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildOr(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildOr(this.builder, lhs.value(), rhs.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildXor(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildXor(this.builder, lhs.value(), rhs.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildBinOp(IntValuedEnum<LLVMOpcode> op, Value lhs, Value rhs,
 			String name) {
 		return new Value(LLVMBuildBinOp(this.builder, op, lhs.value(),
-				rhs.value(), Pointer.pointerToCString(name)));
+				rhs.value(), this.name(name)));
 	}
 
 	public Value buildNeg(Value v, String name) {
 		return new Value(LLVMBuildNeg(this.builder, v.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildNSWNeg(Value v, String name) {
 		return new Value(LLVMBuildNSWNeg(this.builder, v.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildNUWNeg(Value v, String name) {
 		return new Value(LLVMBuildNUWNeg(this.builder, v.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildFNeg(Value v, String name) {
 		return new Value(LLVMBuildFNeg(this.builder, v.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildNot(Value v, String name) {
 		return new Value(LLVMBuildNot(this.builder, v.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildMalloc(TypeRef ty, String name) {
 		return new Value(LLVMBuildMalloc(this.builder, ty.type(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildArrayMalloc(TypeRef ty, Value val, String name) {
 		return new Value(LLVMBuildArrayMalloc(this.builder, ty.type(),
-				val.value(), Pointer.pointerToCString(name)));
+				val.value(), this.name(name)));
 	}
 
 	public Value buildAlloca(TypeRef ty, String name) {
 		return new Value(LLVMBuildAlloca(this.builder, ty.type(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildArrayAlloca(TypeRef ty, Value val, String name) {
 		return new Value(LLVMBuildArrayAlloca(this.builder, ty.type(),
-				val.value(), Pointer.pointerToCString(name)));
+				val.value(), this.name(name)));
 	}
 
 	public Value buildFree(Value pointerVal) {
@@ -338,7 +399,7 @@ public class Builder {
 
 	public Value buildLoad(Value pointerVal, String name) {
 		return new Value(LLVMBuildLoad(this.builder, pointerVal.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildStore(Value val, Value ptr) {
@@ -349,135 +410,145 @@ public class Builder {
 		Pointer ptrIndices = Pointer.allocateTypedPointers(LLVMValueRef.class,
 				indices.size());
 
+		TypeRef i32 = TypeRef.int32Type();
 		int i = 0;
 		for (Integer index : indices) {
-			LLVMValueRef valueRef = TypeRef.int32Type().constInt(index, false)
-					.value();
+			LLVMValueRef valueRef = i32.constInt(index, false).value();
 			ptrIndices.set(i, valueRef);
 			i++;
 		}
 
 		return new Value(LLVMBuildGEP(this.builder, ptr.value(), ptrIndices,
-				indices.size(), Pointer.pointerToCString("")));
+				indices.size(), EMPTY_NAME));
 	}
 
 	public Value buildGEP(Value ptr, Pointer<LLVMValueRef> indices,
 			int numIndices, String name) {
 		return new Value(LLVMBuildGEP(this.builder, ptr.value(), indices,
-				numIndices, Pointer.pointerToCString(name)));
+				numIndices, this.name(name)));
 	}
 
 	public Value buildInBoundsGEP(Value ptr, Pointer<LLVMValueRef> indices,
 			int numIndices, String name) {
 		return new Value(LLVMBuildInBoundsGEP(this.builder, ptr.value(),
-				indices, numIndices, Pointer.pointerToCString(name)));
+				indices, numIndices, this.name(name)));
 	}
 
 	public Value buildInBoundsGEP(Value ptr, String name, Value... indices) {
 		return new Value(LLVMBuildInBoundsGEP(this.builder, ptr.value(),
 				Value.internalize(indices), indices.length,
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildStructGEP(Value ptr, int idx, String name) {
 		return new Value(LLVMBuildStructGEP(this.builder, ptr.value(), idx,
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildGlobalString(String str, String name) {
-		return new Value(LLVMBuildGlobalString(this.builder,
-				Pointer.pointerToCString(str), Pointer.pointerToCString(name)));
+		Value g = new Value(LLVMBuildGlobalString(this.builder,
+				Pointer.pointerToCString(str), this.globalName(name)));
+		if (!SymbolTable.isEmpty()) {
+			SymbolTable.globalCreated(Pointer.getPeer(g.value()));
+		}
+		return g;
 	}
 
 	public Value buildGlobalStringPtr(String str, String name) {
-		return new Value(LLVMBuildGlobalStringPtr(this.builder,
-				Pointer.pointerToCString(str), Pointer.pointerToCString(name)));
+		Value p = new Value(LLVMBuildGlobalStringPtr(this.builder,
+				Pointer.pointerToCString(str), this.globalName(name)));
+		if (!SymbolTable.isEmpty()) {
+			/* A constant GEP to the first character of the global. */
+			SymbolTable.globalCreated(LLVMRaw.LLVMGetOperand(
+					Pointer.getPeer(p.value()), 0));
+		}
+		return p;
 	}
 
 	public Value buildTrunc(Value val, TypeRef destTy, String name) {
 		return new Value(LLVMBuildTrunc(this.builder, val.value(),
-				destTy.type(), Pointer.pointerToCString(name)));
+				destTy.type(), this.name(name)));
 	}
 
 	public Value buildZExt(Value val, TypeRef destTy, String name) {
 		return new Value(LLVMBuildZExt(this.builder, val.value(),
-				destTy.type(), Pointer.pointerToCString(name)));
+				destTy.type(), this.name(name)));
 	}
 
 	public Value buildSExt(Value val, TypeRef destTy, String name) {
 		return new Value(LLVMBuildSExt(this.builder, val.value(),
-				destTy.type(), Pointer.pointerToCString(name)));
+				destTy.type(), this.name(name)));
 	}
 
 	public Value buildFPToUI(Value val, TypeRef destTy, String name) {
 		return new Value(LLVMBuildFPToUI(this.builder, val.value(),
-				destTy.type(), Pointer.pointerToCString(name)));
+				destTy.type(), this.name(name)));
 	}
 
 	public Value buildFPToSI(Value val, TypeRef destTy, String name) {
 		return new Value(LLVMBuildFPToSI(this.builder, val.value(),
-				destTy.type(), Pointer.pointerToCString(name)));
+				destTy.type(), this.name(name)));
 	}
 
 	public Value buildUIToFP(Value val, TypeRef destTy, String name) {
 		return new Value(LLVMBuildUIToFP(this.builder, val.value(),
-				destTy.type(), Pointer.pointerToCString(name)));
+				destTy.type(), this.name(name)));
 	}
 
 	public Value buildSIToFP(Value val, TypeRef destTy, String name) {
 		return new Value(LLVMBuildSIToFP(this.builder, val.value(),
-				destTy.type(), Pointer.pointerToCString(name)));
+				destTy.type(), this.name(name)));
 	}
 
 	public Value buildFPTrunc(Value val, TypeRef destTy, String name) {
 		return new Value(LLVMBuildFPTrunc(this.builder, val.value(),
-				destTy.type(), Pointer.pointerToCString(name)));
+				destTy.type(), this.name(name)));
 	}
 
 	public Value buildFPExt(Value val, TypeRef destTy, String name) {
 		return new Value(LLVMBuildFPExt(this.builder, val.value(),
-				destTy.type(), Pointer.pointerToCString(name)));
+				destTy.type(), this.name(name)));
 	}
 
 	public Value buildPtrToInt(Value val, TypeRef destTy, String name) {
 		return new Value(LLVMBuildPtrToInt(this.builder, val.value(),
-				destTy.type(), Pointer.pointerToCString(name)));
+				destTy.type(), this.name(name)));
 	}
 
 	public Value buildIntToPtr(Value val, TypeRef destTy, String name) {
 		return new Value(LLVMBuildIntToPtr(this.builder, val.value(),
-				destTy.type(), Pointer.pointerToCString(name)));
+				destTy.type(), this.name(name)));
 	}
 
 	public Value buildBitCast(Value val, TypeRef destTy, String name) {
 		return new Value(LLVMBuildBitCast(this.builder, val.value(),
-				destTy.type(), Pointer.pointerToCString(name)));
+				destTy.type(), this.name(name)));
 	}
 
 	public Value buildZExtOrBitCast(Value val, TypeRef destTy, String name) {
 		return new Value(LLVMBuildZExtOrBitCast(this.builder, val.value(),
-				destTy.type(), Pointer.pointerToCString(name)));
+				destTy.type(), this.name(name)));
 	}
 
 	public Value buildSExtOrBitCast(Value val, TypeRef destTy, String name) {
 		return new Value(LLVMBuildSExtOrBitCast(this.builder, val.value(),
-				destTy.type(), Pointer.pointerToCString(name)));
+				destTy.type(), this.name(name)));
 	}
 
 	public Value buildTruncOrBitCast(Value val, TypeRef destTy, String name) {
 		return new Value(LLVMBuildTruncOrBitCast(this.builder, val.value(),
-				destTy.type(), Pointer.pointerToCString(name)));
+				destTy.type(), this.name(name)));
 	}
 
 	public Value buildCast(IntValuedEnum<LLVMOpcode> op, Value val,
 			TypeRef destTy, String name) {
 		return new Value(LLVMBuildCast(this.builder, op, val.value(),
-				destTy.type(), Pointer.pointerToCString(name)));
+				destTy.type(), this.name(name)));
 	}
 
 	public Value buildPointerCast(Value val, TypeRef destTy, String name) {
 		return new Value(LLVMBuildPointerCast(this.builder, val.value(),
-				destTy.type(), Pointer.pointerToCString(name)));
+				destTy.type(), this.name(name)));
 	}
 
 	/**
@@ -485,93 +556,93 @@ public class Builder {
 	 */
 	public Value buildIntCast(Value val, TypeRef destTy, String name) {
 		return new Value(LLVMBuildIntCast(this.builder, val.value(),
-				destTy.type(), Pointer.pointerToCString(name)));
+				destTy.type(), this.name(name)));
 	}
 
 	public Value buildFPCast(Value val, TypeRef destTy, String name) {
 		return new Value(LLVMBuildFPCast(this.builder, val.value(),
-				destTy.type(), Pointer.pointerToCString(name)));
+				destTy.type(), this.name(name)));
 	}
 
 	public Value buildICmp(IntValuedEnum<LLVMIntPredicate> op, Value lhs,
 			Value rhs, String name) {
 		return new Value(LLVMBuildICmp(this.builder, op, lhs.value(),
-				rhs.value(), Pointer.pointerToCString(name)));
+				rhs.value(), this.name(name)));
 	}
 
 	public Value buildFCmp(IntValuedEnum<LLVMRealPredicate> op, Value lhs,
 			Value rhs, String name) {
 		return new Value(LLVMBuildFCmp(this.builder, op, lhs.value(),
-				rhs.value(), Pointer.pointerToCString(name)));
+				rhs.value(), this.name(name)));
 	}
 
 	public Value buildPhi(TypeRef ty, String name) {
 		return new Value(LLVMBuildPhi(this.builder, ty.type(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildCall(Value fn, String name, Value... args) {
 		return new Value(LLVMBuildCall(this.builder, fn.value(),
 				Value.internalize(args), args.length,
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildCall(Value fn, String name, List<Value> args) {
 		return new Value(LLVMBuildCall(this.builder, fn.value(),
 				Value.internalize(args), args.size(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildSelect(Value if_, Value then, Value else_, String name) {
 		return new Value(LLVMBuildSelect(this.builder, if_.value(),
-				then.value(), else_.value(), Pointer.pointerToCString(name)));
+				then.value(), else_.value(), this.name(name)));
 	}
 
 	public Value buildVAArg(Value list, TypeRef ty, String name) {
 		return new Value(LLVMBuildVAArg(this.builder, list.value(), ty.type(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildExtractElement(Value vecVal, Value index, String name) {
 		return new Value(LLVMBuildExtractElement(this.builder, vecVal.value(),
-				index.value(), Pointer.pointerToCString(name)));
+				index.value(), this.name(name)));
 	}
 
 	public Value buildInsertElement(Value vecVal, Value eltVal, Value index,
 			String name) {
 		return new Value(LLVMBuildInsertElement(this.builder, vecVal.value(),
-				eltVal.value(), index.value(), Pointer.pointerToCString(name)));
+				eltVal.value(), index.value(), this.name(name)));
 	}
 
 	public Value buildShuffleVector(Value v1, Value v2, Value mask, String name) {
 		return new Value(LLVMBuildShuffleVector(this.builder, v1.value(),
-				v2.value(), mask.value(), Pointer.pointerToCString(name)));
+				v2.value(), mask.value(), this.name(name)));
 	}
 
 	public Value buildExtractValue(Value aggVal, int index, String name) {
 		return new Value(LLVMBuildExtractValue(this.builder, aggVal.value(),
-				index, Pointer.pointerToCString(name)));
+				index, this.name(name)));
 	}
 
 	public Value buildInsertValue(Value aggVal, Value eltVal, int index,
 			String name) {
 		return new Value(LLVMBuildInsertValue(this.builder, aggVal.value(),
-				eltVal.value(), index, Pointer.pointerToCString(name)));
+				eltVal.value(), index, this.name(name)));
 	}
 
 	public Value buildIsNull(Value val, String name) {
 		return new Value(LLVMBuildIsNull(this.builder, val.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildIsNotNull(Value val, String name) {
 		return new Value(LLVMBuildIsNotNull(this.builder, val.value(),
-				Pointer.pointerToCString(name)));
+				this.name(name)));
 	}
 
 	public Value buildPtrDiff(Value lhs, Value rhs, String name) {
 		return new Value(LLVMBuildPtrDiff(this.builder, lhs.value(),
-				rhs.value(), Pointer.pointerToCString(name)));
+				rhs.value(), this.name(name)));
 	}
 
 	public Value buildLandingPad(TypeRef type, Value personality,
@@ -579,7 +650,7 @@ public class Builder {
 		return new Value(
 				LLVMBuildLandingPad(this.builder, type.type(),
 						personality.value(), numClauses,
-						Pointer.pointerToCString(name)));
+						this.name(name)));
 	}
 
 	public Value buildResume(Value exn) {
@@ -589,4 +660,17 @@ public class Builder {
     public void setCurrentDebugLoc(Value debug) {
         LLVMSetCurrentDebugLocation(this.builder, debug.value());
     }
+
+	private static final class Disposer implements Runnable {
+		private final LLVMBuilderRef builder;
+
+		Disposer(LLVMBuilderRef builder) {
+			this.builder = builder;
+		}
+
+		public void run() {
+			LLVMDisposeBuilder(this.builder);
+		}
+	}
+
 }
@@ -0,0 +1,221 @@
+package org.llvm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles independent modules in parallel.<br>
+ * LLVM contexts are not thread-safe, so each worker thread owns a private<br>
+ * Context and every module, builder and type used by a job must come from<br>
+ * the context handed to it. Jobs must therefore use the *InContext<br>
+ * factories (TypeRef.int32TypeInContext() and so on) rather than the ones<br>
+ * bound to the global context.
+ */
+public class CompilationService {
+
+	/**
+	 * Emits the IR for one module.
+	 */
+	public interface Job {
+		/**
+		 * Build the body of the module and return the function that<br>
+		 * serves as its entry point.
+		 */
+		Value build(Context c, Module m, Builder b) throws LLVMException;
+	}
+
+	/**
+	 * Populates the pass manager run over each module before it is JIT<br>
+	 * compiled.
+	 */
+	public interface Pipeline {
+		void populate(PassManager pm);
+	}
+
+	/**
+	 * A compiled module: its entry point and the engine holding its code.
+	 */
+	public final class Unit<T> implements AutoCloseable {
+
+		private final T function;
+
+		private final ExecutionEngine engine;
+
+		private final Context context;
+
+		Unit(T function, ExecutionEngine engine, Context context) {
+			this.function = function;
+			this.engine = engine;
+			this.context = context;
+		}
+
+		/**
+		 * Returns the entry point, which stays valid until the unit is<br>
+		 * disposed or the service shut down.
+		 */
+		public T get() {
+			return this.function;
+		}
+
+		/**
+		 * Free the code and module of this unit.
+		 */
+		public void dispose() {
+			boolean owned;
+			synchronized (CompilationService.this.engines) {
+				owned = CompilationService.this.engines.remove(this.engine);
+			}
+			if (owned) {
+				/* Other jobs may be using the context of the module. */
+				synchronized (this.context) {
+					this.engine.dispose();
+				}
+			}
+		}
+
+		@Override
+		public void close() {
+			this.dispose();
+		}
+	}
+
+	private final ExecutorService executor;
+
+	private final int optLevel;
+
+	private final Pipeline pipeline;
+
+	private final List<Context> contexts = new ArrayList<Context>();
+
+	private final List<ExecutionEngine> engines = new ArrayList<ExecutionEngine>();
+
+	private final ThreadLocal<Context> context = new ThreadLocal<Context>() {
+		@Override
+		protected Context initialValue() {
+			Context c = Context.create();
+			synchronized (CompilationService.this.contexts) {
+				CompilationService.this.contexts.add(c);
+			}
+			return c;
+		}
+	};
+
+	/**
+	 * @param threads
+	 *        Number of worker threads, and therefore of contexts.
+	 * @param optLevel
+	 *        Code generation optimisation level passed to MCJIT.
+	 * @param pipeline
+	 *        Optional IR optimisation pipeline, may be null.
+	 */
+	public CompilationService(int threads, int optLevel, Pipeline pipeline) {
+		final AtomicInteger count = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(threads,
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "llvm-compiler-"
+								+ count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		this.optLevel = optLevel;
+		this.pipeline = pipeline;
+	}
+
+	/**
+	 * Schedule a module for compilation. The future yields a unit whose<br>
+	 * get() returns an implementation of the given single-method interface<br>
+	 * that calls the compiled entry point directly; it stays valid until<br>
+	 * the unit is disposed or shutdown().
+	 */
+	public <T> Future<Unit<T>> submit(final String moduleID, final Job job,
+			final Class<T> type) {
+		return this.executor.submit(new Callable<Unit<T>>() {
+			public Unit<T> call() throws LLVMException {
+				return CompilationService.this.compile(moduleID, job, type);
+			}
+		});
+	}
+
+	private <T> Unit<T> compile(String moduleID, Job job, Class<T> type)
+			throws LLVMException {
+		Context c = this.context.get();
+		synchronized (c) {
+			Module m = Module.createWithNameInContext(moduleID, c);
+			ExecutionEngine engine = null;
+			boolean compiled = false;
+			try {
+				Value entry;
+				Builder b = Builder.createBuilderInContext(c);
+				try {
+					entry = job.build(c, m, b);
+				} finally {
+					b.dispose();
+				}
+				m.verify();
+
+				if (this.pipeline != null) {
+					PassManager pm = PassManager.create();
+					try {
+						this.pipeline.populate(pm);
+						pm.runForModule(m);
+					} finally {
+						pm.dispose();
+					}
+				}
+
+				/* The engine owns the module from here on. */
+				engine = ExecutionEngine.createMCJITCompilerForModule(m,
+						this.optLevel);
+				Unit<T> unit = new Unit<T>(engine.getFunction(entry, type),
+						engine, c);
+				synchronized (this.engines) {
+					this.engines.add(engine);
+				}
+				compiled = true;
+				return unit;
+			} finally {
+				/* Failed: free whichever of the two owns the module. */
+				if (!compiled) {
+					if (engine != null) {
+						engine.dispose();
+					} else {
+						m.dispose();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stop accepting jobs, wait for running ones and free all compiled code<br>
+	 * and contexts. Functions returned by the service must not be called<br>
+	 * afterwards.
+	 */
+	public void shutdown() throws InterruptedException {
+		this.executor.shutdown();
+		this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+		synchronized (this.engines) {
+			for (ExecutionEngine engine : this.engines) {
+				engine.dispose();
+			}
+			this.engines.clear();
+		}
+		synchronized (this.contexts) {
+			for (Context c : this.contexts) {
+				c.dispose();
+			}
+			this.contexts.clear();
+		}
+	}
+
+}
@@ -0,0 +1,210 @@
+package org.llvm;
+
+import static org.llvm.binding.LLVMLibrary.LLVMGetModuleContext;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bridj.BridJ;
+import org.bridj.ann.Library;
+import org.llvm.binding.LLVMRaw;
+
+/**
+ * An on-disk cache of optimized modules, keyed by a hash of the bitcode of<br>
+ * the unoptimized module, the pass pipeline and the LLVM library.<br>
+ * The LLVM C API cannot load precompiled object files into an execution<br>
+ * engine, so the cache stores the output of the pass pipeline instead: a<br>
+ * hit skips optimization entirely and only code generation remains. The<br>
+ * directory is kept below a size bound by evicting the least recently<br>
+ * used entries. Pipelines and LLVM versions may share a directory.
+ */
+public class CompileCache {
+
+	private static final String SUFFIX = ".bc";
+
+	/* Identifies the LLVM build, whose passes and bitcode may differ. */
+	private static final String LLVM = llvmVersion();
+
+	private final File directory;
+
+	private final long maxBytes;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param directory
+	 *        Directory holding the cached bitcode files, created if needed.
+	 * @param maxBytes
+	 *        Upper bound on the total size of the cached files.
+	 */
+	public CompileCache(File directory, long maxBytes) {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IllegalArgumentException("can't create cache directory "
+					+ directory);
+		}
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the optimized form of a module. On a hit the cached module is<br>
+	 * read into the context of the given module, which is then disposed;<br>
+	 * function values must be looked up again in the returned module. On a<br>
+	 * miss the pass manager is run over the module, the result is stored<br>
+	 * and the same module is returned.
+	 */
+	public Module optimize(Module m, PassManager pm) throws LLVMException {
+		File entry = new File(this.directory, key(m, pm) + SUFFIX);
+
+		if (entry.isFile()) {
+			try {
+				MemoryBuffer buf = MemoryBuffer.createWithContentsOfFile(entry
+						.getPath());
+				Module cached;
+				try {
+					cached = Module.parseBitcode(
+							LLVMGetModuleContext(m.module()), buf,
+							m.keptContext());
+				} finally {
+					buf.dispose();
+				}
+				entry.setLastModified(System.currentTimeMillis());
+				this.hits.incrementAndGet();
+				m.dispose();
+				return cached;
+			} catch (LLVMException e) {
+				/* Unreadable entry, e.g. written by another LLVM version. */
+				entry.delete();
+			}
+		}
+
+		this.misses.incrementAndGet();
+		pm.runForModule(m);
+		this.store(m, entry);
+		return m;
+	}
+
+	public long getHits() {
+		return this.hits.get();
+	}
+
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	public long getEvictions() {
+		return this.evictions.get();
+	}
+
+	/**
+	 * Delete every cached entry.
+	 */
+	public void clear() {
+		for (File f : this.entries()) {
+			f.delete();
+		}
+	}
+
+	private void store(Module m, File entry) {
+		/* Unique across threads and processes sharing the directory. */
+		File tmp;
+		try {
+			tmp = File.createTempFile(entry.getName(), ".tmp", this.directory);
+		} catch (IOException e) {
+			return;
+		}
+		if (m.writeBitcodeToFile(tmp.getPath()) != 0 || !tmp.renameTo(entry)) {
+			/* The cache is best effort; compilation must not fail on it. */
+			tmp.delete();
+			return;
+		}
+		this.evict();
+	}
+
+	private synchronized void evict() {
+		File[] files = this.entries();
+		long total = 0;
+		for (File f : files) {
+			total += f.length();
+		}
+		if (total <= this.maxBytes) {
+			return;
+		}
+
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File a, File b) {
+				long x = a.lastModified(), y = b.lastModified();
+				return x < y ? -1 : (x == y ? 0 : 1);
+			}
+		});
+		for (int i = 0; i < files.length && total > this.maxBytes; i++) {
+			long length = files[i].length();
+			if (files[i].delete()) {
+				total -= length;
+				this.evictions.incrementAndGet();
+			}
+		}
+	}
+
+	private File[] entries() {
+		File[] files = this.directory.listFiles(new FileFilter() {
+			public boolean accept(File f) {
+				return f.isFile() && f.getName().endsWith(SUFFIX);
+			}
+		});
+		return files == null ? new File[0] : files;
+	}
+
+	private static String key(Module m, PassManager pm) {
+		MemoryBuffer bitcode = m.writeBitcodeToMemoryBuffer();
+		byte[] digest;
+		try {
+			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			md.update(LLVM.getBytes(StandardCharsets.UTF_8));
+			md.update((byte) 0);
+			md.update(pm.getPipeline().getBytes(StandardCharsets.UTF_8));
+			md.update((byte) 0);
+			digest = md.digest(bitcode.getBytes());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			bitcode.dispose();
+		}
+
+		StringBuilder sb = new StringBuilder(digest.length * 2);
+		for (byte b : digest) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+			sb.append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	/*
+	 * The C API has no version query: use the library name, and the size
+	 * and date of the library file to tell apart builds of one version.
+	 */
+	private static String llvmVersion() {
+		String name = LLVMRaw.class.getAnnotation(Library.class).value();
+		try {
+			File lib = BridJ.getNativeLibraryFile(name);
+			if (lib != null) {
+				return name + ":" + lib.length() + ":" + lib.lastModified();
+			}
+		} catch (Exception e) {
+			/* Not found by BridJ; the name has to do. */
+		}
+		return name;
+	}
+
+}
@@ -0,0 +1,74 @@
+package org.llvm;
+
+/**
+ * Constants of one canonical type, keyed by the bits of their literal. An<br>
+ * open-addressing table of primitive longs, so a hit allocates nothing and<br>
+ * makes no native call. The pool stops growing at MAX_ENTRIES; further<br>
+ * literals are created by LLVM every time.
+ */
+final class ConstantPool {
+
+	private static final int MAX_ENTRIES = 1 << 16;
+
+	private long[] keys = new long[16];
+
+	private Value[] values = new Value[16];
+
+	private int size;
+
+	synchronized Value get(long key) {
+		int mask = this.keys.length - 1;
+		for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+			Value v = this.values[i];
+			if (v == null || this.keys[i] == key) {
+				return v;
+			}
+		}
+	}
+
+	synchronized void put(long key, Value value) {
+		if (this.size >= MAX_ENTRIES) {
+			return;
+		}
+		if (2 * (this.size + 1) > this.keys.length) {
+			this.rehash(this.keys.length * 2);
+		}
+		if (insert(this.keys, this.values, key, value)) {
+			this.size++;
+		}
+	}
+
+	private void rehash(int capacity) {
+		long[] k = new long[capacity];
+		Value[] v = new Value[capacity];
+		for (int i = 0; i < this.keys.length; i++) {
+			if (this.values[i] != null) {
+				insert(k, v, this.keys[i], this.values[i]);
+			}
+		}
+		this.keys = k;
+		this.values = v;
+	}
+
+	/* Returns false if the key was already present. */
+	private static boolean insert(long[] keys, Value[] values, long key,
+			Value value) {
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+			if (values[i] == null) {
+				keys[i] = key;
+				values[i] = value;
+				return true;
+			}
+			if (keys[i] == key) {
+				return false;
+			}
+		}
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
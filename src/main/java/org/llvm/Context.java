@@ -5,21 +5,77 @@ import static org.llvm.binding.LLVMLibrary.LLVMContextDispose;
 import static org.llvm.binding.LLVMLibrary.LLVMGetGlobalContext;
 import static org.llvm.binding.LLVMLibrary.LLVMGetModuleContext;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.llvm.binding.LLVMLibrary.LLVMContextRef;
 
 /**
  * The top-level container for all LLVM global data.
  */
-public class Context {
+public class Context implements AutoCloseable {
+
+	private static volatile Context global;
 
 	private LLVMContextRef context;
 
+	private final NativeCleaner.Cleanable cleanable;
+
+	private final Disposer disposer;
+
+	private TypeCache types;
+
 	LLVMContextRef context() {
 		return this.context;
 	}
 
+	/**
+	 * Returns the canonical types of this context.
+	 */
+	TypeCache types() {
+		TypeCache t = this.types;
+		if (t == null) {
+			t = TypeCache.of(this.context);
+			this.types = t;
+		}
+		return t;
+	}
+
+	/**
+	 * Wraps a context owned by someone else; dispose() leaves it alone.
+	 */
 	Context(LLVMContextRef context) {
+		this(context, false);
+	}
+
+	private Context(LLVMContextRef context, boolean owned) {
 		this.context = context;
+		this.disposer = owned ? new Disposer(context) : null;
+		this.cleanable = owned ? NativeCleaner.register(this, this.disposer)
+				: null;
+	}
+
+	/**
+	 * Keep the native context alive until the returned action is run, once<br>
+	 * a native module of this context has been freed. LLVMContextDispose()<br>
+	 * frees the modules still in the context, so the context must outlive<br>
+	 * their owners, whatever order the wrappers are cleaned in. Returns null<br>
+	 * for a context owned by someone else.
+	 */
+	Runnable hold() {
+		final Disposer d = this.disposer;
+		if (d == null) {
+			return null;
+		}
+		d.holders.incrementAndGet();
+		final AtomicBoolean released = new AtomicBoolean();
+		return new Runnable() {
+			public void run() {
+				if (released.compareAndSet(false, true)) {
+					d.release();
+				}
+			}
+		};
 	}
 
 	/**
@@ -28,14 +84,19 @@ public class Context {
 	 * LLVMContextDispose() or the context will leak memory.<br>
 	 */
 	public static Context create() {
-		return new Context(LLVMContextCreate());
+		return new Context(LLVMContextCreate(), true);
 	}
 
 	/**
 	 * Obtain the global context instance.
 	 */
 	public static Context getGlobalContext() {
-		return new Context(LLVMGetGlobalContext());
+		Context c = global;
+		if (c == null) {
+			c = new Context(LLVMGetGlobalContext());
+			global = c;
+		}
+		return c;
 	}
 
 	/**
@@ -47,22 +108,48 @@ public class Context {
 		return new Context(LLVMGetModuleContext(m.module()));
 	}
 
-	@Override
-	public void finalize() {
-		this.dispose();
-	}
-
 	/**
 	 * Destroy a context instance.<br>
 	 * This should be called for every call to LLVMContextCreate() or memory<br>
-	 * will be leaked.
+	 * will be leaked. Does nothing for the global context or a context<br>
+	 * obtained from a module. The native context is freed once the modules<br>
+	 * created in it are freed too.
 	 */
 	public void dispose() {
-		if (this.context != null) {
-			LLVMContextDispose(this.context);
+		if (this.cleanable == null) {
+			return;
 		}
 
+		this.cleanable.clean();
 		this.context = null;
+		this.types = null;
+	}
+
+	@Override
+	public void close() {
+		this.dispose();
+	}
+
+	private static final class Disposer implements Runnable {
+		private final LLVMContextRef context;
+
+		/* The wrapper and the owners of the modules created in the context. */
+		final AtomicInteger holders = new AtomicInteger(1);
+
+		Disposer(LLVMContextRef context) {
+			this.context = context;
+		}
+
+		public void run() {
+			this.release();
+		}
+
+		void release() {
+			if (this.holders.decrementAndGet() == 0) {
+				TypeCache.forget(this.context);
+				LLVMContextDispose(this.context);
+			}
+		}
 	}
 
 }
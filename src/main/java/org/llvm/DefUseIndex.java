@@ -0,0 +1,501 @@
+package org.llvm;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bridj.Pointer;
+import org.llvm.binding.LLVMLibrary.LLVMValueRef;
+import org.llvm.binding.LLVMRaw;
+
+/**
+ * The def-use graph of one function, built in a single sweep and kept in<br>
+ * primitive int arrays, so that the operands and users of a value can be<br>
+ * queried repeatedly without going back to native code.
+ * <p>
+ * Each value is a node: the parameters come first, then the instructions<br>
+ * in block order, then every other value used by the function (constants,<br>
+ * globals, blocks, ...) in order of first use. Operands are held in a CSR<br>
+ * (compressed sparse row) layout per instruction, users likewise per node,<br>
+ * one entry per use, so a value used twice by an instruction lists it<br>
+ * twice.
+ * <p>
+ * The index follows the changes made through its replaceAllUsesWith(),<br>
+ * setOperand() and erase(). While it is open, it also follows<br>
+ * Value.replaceAllUsesWith() and Value.setOperand() called on the thread<br>
+ * that built it; changes made in any other way (other threads, passes,<br>
+ * builders, other bindings) make it stale. A followed change the index<br>
+ * cannot represent, like setting an operand a phi gained after the index<br>
+ * was built, is skipped and reported by isStale(). Close it to stop<br>
+ * tracking; an<br>
+ * index that is never closed stops when it becomes unreachable. An index<br>
+ * is not thread-safe.
+ */
+public final class DefUseIndex implements AutoCloseable {
+
+	/** The operand is not set, or the value is not a node. */
+	public static final int NONE = -1;
+
+	/* The indexes open on each thread; weak, in case one is never closed. */
+	private static final ThreadLocal<List<WeakReference<DefUseIndex>>> OPEN = new ThreadLocal<List<WeakReference<DefUseIndex>>>() {
+		@Override
+		protected List<WeakReference<DefUseIndex>> initialValue() {
+			return new ArrayList<WeakReference<DefUseIndex>>();
+		}
+	};
+
+	/* Open indexes on all threads, so that the hooks cost nothing without. */
+	private static final AtomicInteger OPEN_COUNT = new AtomicInteger();
+
+	private volatile boolean closed;
+
+	private boolean stale;
+
+	private final AddressTable nodes;
+
+	private long[] addresses;
+
+	private final int params;
+
+	private final int instructions;
+
+	/* Operands of instruction i are operands[operandStart[i] ...]. */
+	private final int[] operandStart;
+
+	private final int[] operands;
+
+	/* Users of node n, as built: users[userStart[n] ...], userCount[n]. */
+	private final int baseNodes;
+
+	private final int[] userStart;
+
+	private final int[] users;
+
+	private final int[] userCount;
+
+	/* Users added since, per node. */
+	private int[][] extraUsers;
+
+	private int[] extraCount;
+
+	private final boolean[] erased;
+
+	private DefUseIndex(long fn) {
+		this.nodes = new AddressTable(256);
+		this.addresses = new long[256];
+
+		for (long p = LLVMRaw.LLVMGetFirstParam(fn); p != 0; p = LLVMRaw
+				.LLVMGetNextParam(p)) {
+			this.node(p);
+		}
+		this.params = this.nodes.size();
+		for (long bb = LLVMRaw.LLVMGetFirstBasicBlock(fn); bb != 0; bb = LLVMRaw
+				.LLVMGetNextBasicBlock(bb)) {
+			for (long i = LLVMRaw.LLVMGetFirstInstruction(bb); i != 0; i = LLVMRaw
+					.LLVMGetNextInstruction(i)) {
+				this.node(i);
+			}
+		}
+		this.instructions = this.nodes.size() - this.params;
+
+		ModuleSnapshot.IntArray start = new ModuleSnapshot.IntArray();
+		ModuleSnapshot.IntArray ops = new ModuleSnapshot.IntArray();
+		for (int i = 0; i < this.instructions; i++) {
+			long inst = this.addresses[this.params + i];
+			start.add(ops.size());
+			int count = LLVMRaw.LLVMGetNumOperands(inst);
+			for (int k = 0; k < count; k++) {
+				long v = LLVMRaw.LLVMGetOperand(inst, k);
+				ops.add(v == 0 ? NONE : this.node(v));
+			}
+		}
+		start.add(ops.size());
+		this.operandStart = start.toArray();
+		this.operands = ops.toArray();
+
+		/* Count the uses of each node, then fill the user rows. */
+		int n = this.nodes.size();
+		this.baseNodes = n;
+		this.userStart = new int[n + 1];
+		for (int op : this.operands) {
+			if (op != NONE) {
+				this.userStart[op + 1]++;
+			}
+		}
+		for (int v = 0; v < n; v++) {
+			this.userStart[v + 1] += this.userStart[v];
+		}
+		this.users = new int[this.operands.length];
+		this.userCount = new int[n];
+		for (int i = 0; i < this.instructions; i++) {
+			for (int k = this.operandStart[i]; k < this.operandStart[i + 1]; k++) {
+				int op = this.operands[k];
+				if (op != NONE) {
+					this.users[this.userStart[op] + this.userCount[op]++] = this.params
+							+ i;
+				}
+			}
+		}
+
+		this.extraUsers = new int[n][];
+		this.extraCount = new int[n];
+		this.erased = new boolean[this.instructions];
+	}
+
+	/**
+	 * Build the index of a function, which then follows the changes made<br>
+	 * through the Value wrappers until it is closed.
+	 */
+	public static DefUseIndex build(Value function) {
+		DefUseIndex index = new DefUseIndex(Pointer.getPeer(function.value()));
+		OPEN.get().add(new WeakReference<DefUseIndex>(index));
+		OPEN_COUNT.incrementAndGet();
+		return index;
+	}
+
+	/**
+	 * Stop following changes made through the Value wrappers.
+	 */
+	@Override
+	public void close() {
+		this.closed = true;
+		/* Closed elsewhere, the entry goes when its thread next looks. */
+		for (Iterator<WeakReference<DefUseIndex>> it = OPEN.get().iterator(); it
+				.hasNext();) {
+			if (it.next().get() == this) {
+				OPEN_COUNT.decrementAndGet();
+				it.remove();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns whether a change made through the Value wrappers could not be<br>
+	 * followed, so that the index no longer matches the function.
+	 */
+	public boolean isStale() {
+		return this.stale;
+	}
+
+	// Nodes
+
+	/**
+	 * Returns the number of nodes, including values used but not defined<br>
+	 * by the function.
+	 */
+	public int size() {
+		return this.nodes.size();
+	}
+
+	public int getParamCount() {
+		return this.params;
+	}
+
+	public int getInstructionCount() {
+		return this.instructions;
+	}
+
+	/**
+	 * Returns the node of parameter i.
+	 */
+	public int param(int i) {
+		return i;
+	}
+
+	/**
+	 * Returns the node of instruction i, in block order.
+	 */
+	public int instruction(int i) {
+		return this.params + i;
+	}
+
+	public boolean isParam(int node) {
+		return node < this.params;
+	}
+
+	public boolean isInstruction(int node) {
+		return node >= this.params && node < this.params + this.instructions;
+	}
+
+	/**
+	 * Returns whether an instruction was erased through the index.
+	 */
+	public boolean isErased(int node) {
+		return this.isInstruction(node) && this.erased[node - this.params];
+	}
+
+	/**
+	 * Returns the node of a value, or NONE if the function does not define<br>
+	 * or use it.
+	 */
+	public int nodeOf(Value v) {
+		return this.nodes.get(Pointer.getPeer(v.value()));
+	}
+
+	public Value valueOf(int node) {
+		return new Value(new LLVMValueRef(this.addresses[node]));
+	}
+
+	// Operands
+
+	public int getOperandCount(int node) {
+		if (!this.isInstruction(node)) {
+			return 0;
+		}
+		int i = node - this.params;
+		return this.operandStart[i + 1] - this.operandStart[i];
+	}
+
+	/**
+	 * Returns the node of operand k of an instruction, or NONE.
+	 */
+	public int getOperand(int node, int k) {
+		return this.operands[this.slot(node, k)];
+	}
+
+	/* Returns where operand k of a live instruction node is stored. */
+	private int slot(int node, int k) {
+		if (!this.isInstruction(node) || this.isErased(node)) {
+			throw new IllegalArgumentException("not a live instruction: "
+					+ node);
+		}
+		int i = node - this.params;
+		int start = this.operandStart[i];
+		if (!this.hasSlot(node, k)) {
+			/* E.g. an operand added to a phi after the index was built. */
+			throw new IndexOutOfBoundsException("operand " + k
+					+ " of instruction " + node + ", which had "
+					+ (this.operandStart[i + 1] - start) + " when indexed");
+		}
+		return start + k;
+	}
+
+	private boolean hasSlot(int node, int k) {
+		int i = node - this.params;
+		return k >= 0 && k < this.operandStart[i + 1] - this.operandStart[i];
+	}
+
+	// Users
+
+	/**
+	 * Returns the number of uses of a node within the function.
+	 */
+	public int getUserCount(int node) {
+		int base = node < this.baseNodes ? this.userCount[node] : 0;
+		return base + this.extraCount[node];
+	}
+
+	/**
+	 * Returns the instruction node of use k of a node.
+	 */
+	public int getUser(int node, int k) {
+		int base = node < this.baseNodes ? this.userCount[node] : 0;
+		if (k < base) {
+			return this.users[this.userStart[node] + k];
+		}
+		return this.extraUsers[node][k - base];
+	}
+
+	public boolean hasUsers(int node) {
+		return this.getUserCount(node) > 0;
+	}
+
+	// Changes
+
+	/**
+	 * Replace all uses of a node with a value, in LLVM and in the index.
+	 */
+	public void replaceAllUsesWith(int node, Value newVal) {
+		long to = Pointer.getPeer(newVal.value());
+		LLVMRaw.LLVMReplaceAllUsesWith(this.addresses[node], to);
+		this.replaced(node, this.node(to));
+	}
+
+	/**
+	 * Set operand k of an instruction node, in LLVM and in the index.
+	 */
+	public void setOperand(int node, int k, Value val) {
+		long v = Pointer.getPeer(val.value());
+		this.slot(node, k);
+		LLVMRaw.LLVMSetOperand(this.addresses[node], k, v);
+		this.operandSet(node, k, this.node(v));
+	}
+
+	/**
+	 * Erase an instruction without users from its function.
+	 */
+	public void erase(int node) {
+		if (!this.isInstruction(node) || this.isErased(node)) {
+			throw new IllegalArgumentException("not a live instruction: "
+					+ node);
+		}
+		if (this.hasUsers(node)) {
+			throw new IllegalStateException("instruction " + node
+					+ " still has users");
+		}
+		LLVMRaw.LLVMInstructionEraseFromParent(this.addresses[node]);
+		int i = node - this.params;
+		for (int k = this.operandStart[i]; k < this.operandStart[i + 1]; k++) {
+			if (this.operands[k] != NONE) {
+				this.removeUser(this.operands[k], node);
+				this.operands[k] = NONE;
+			}
+		}
+		this.erased[i] = true;
+		/* The address may be reused by a new instruction. */
+		this.nodes.remove(this.addresses[node]);
+	}
+
+	/* Called by Value after a change made through the wrapper. */
+	static void replacedAll(long from, long to) {
+		for (DefUseIndex index : open()) {
+			int node = index.nodes.get(from);
+			if (node != NONE && index.hasUsers(node)) {
+				index.replaced(node, index.node(to));
+			}
+		}
+	}
+
+	/* Never throws: the change is already made in LLVM. */
+	static void operandSet(long user, int k, long v) {
+		for (DefUseIndex index : open()) {
+			int node = index.nodes.get(user);
+			if (!index.isInstruction(node) || index.isErased(node)) {
+				continue;
+			}
+			if (!index.hasSlot(node, k)) {
+				/* E.g. an incoming value a phi gained since the build. */
+				index.stale = true;
+				continue;
+			}
+			index.operandSet(node, k, v == 0 ? NONE : index.node(v));
+		}
+	}
+
+	static boolean isTracking() {
+		return OPEN_COUNT.get() > 0;
+	}
+
+	/* Returns the indexes open on this thread, dropping the others. */
+	private static List<DefUseIndex> open() {
+		List<WeakReference<DefUseIndex>> refs = OPEN.get();
+		List<DefUseIndex> open = new ArrayList<DefUseIndex>(refs.size());
+		for (Iterator<WeakReference<DefUseIndex>> it = refs.iterator(); it
+				.hasNext();) {
+			DefUseIndex index = it.next().get();
+			if (index == null || index.closed) {
+				OPEN_COUNT.decrementAndGet();
+				it.remove();
+			} else {
+				open.add(index);
+			}
+		}
+		return open;
+	}
+
+	private void replaced(int node, int to) {
+		if (node == to) {
+			return;
+		}
+		int count = this.getUserCount(node);
+		int[] list = new int[count];
+		for (int k = 0; k < count; k++) {
+			list[k] = this.getUser(node, k);
+		}
+
+		/* A user appears once per use; rewrite all its slots at once. */
+		int previous = NONE;
+		Arrays.sort(list);
+		for (int user : list) {
+			if (user == previous) {
+				continue;
+			}
+			previous = user;
+			int i = user - this.params;
+			for (int k = this.operandStart[i]; k < this.operandStart[i + 1]; k++) {
+				if (this.operands[k] == node) {
+					this.operands[k] = to;
+					this.addUser(to, user);
+				}
+			}
+		}
+
+		if (node < this.baseNodes) {
+			this.userCount[node] = 0;
+		}
+		this.extraCount[node] = 0;
+	}
+
+	private void operandSet(int node, int k, int to) {
+		int slot = this.slot(node, k);
+		int from = this.operands[slot];
+		if (from == to) {
+			return;
+		}
+		if (from != NONE) {
+			this.removeUser(from, node);
+		}
+		this.operands[slot] = to;
+		if (to != NONE) {
+			this.addUser(to, node);
+		}
+	}
+
+	private void addUser(int node, int user) {
+		int[] extra = this.extraUsers[node];
+		int n = this.extraCount[node];
+		if (extra == null) {
+			extra = new int[4];
+		} else if (n == extra.length) {
+			extra = Arrays.copyOf(extra, n * 2);
+		}
+		extra[n] = user;
+		this.extraUsers[node] = extra;
+		this.extraCount[node] = n + 1;
+	}
+
+	private void removeUser(int node, int user) {
+		if (node < this.baseNodes) {
+			int start = this.userStart[node];
+			int last = start + this.userCount[node] - 1;
+			for (int j = start; j <= last; j++) {
+				if (this.users[j] == user) {
+					this.users[j] = this.users[last];
+					this.userCount[node]--;
+					return;
+				}
+			}
+		}
+		int[] extra = this.extraUsers[node];
+		int last = this.extraCount[node] - 1;
+		for (int j = 0; j <= last; j++) {
+			if (extra[j] == user) {
+				extra[j] = extra[last];
+				this.extraCount[node]--;
+				return;
+			}
+		}
+	}
+
+	/* Returns the node of an address, adding a node for a new value. */
+	private int node(long address) {
+		int size = this.nodes.size();
+		int node = this.nodes.add(address);
+		if (node == size) {
+			if (node == this.addresses.length) {
+				this.addresses = Arrays.copyOf(this.addresses, node * 2);
+			}
+			this.addresses[node] = address;
+			if (this.extraCount != null && node >= this.extraCount.length) {
+				this.extraUsers = Arrays.copyOf(this.extraUsers, node * 2);
+				this.extraCount = Arrays.copyOf(this.extraCount, node * 2);
+			}
+		}
+		return node;
+	}
+
+}
@@ -18,7 +18,14 @@ import static org.llvm.binding.LLVMLibrary.LLVMRunFunctionAsMain;
 import static org.llvm.binding.LLVMLibrary.LLVMRunStaticConstructors;
 import static org.llvm.binding.LLVMLibrary.LLVMRunStaticDestructors;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.bridj.BridJ;
 import org.bridj.Pointer;
+import org.llvm.binding.LLVMMCJITCompilerOptions;
 import org.llvm.binding.LLVMLibrary.*;
 
 import static org.llvm.binding.LLVMLibrary.*;
@@ -26,24 +33,63 @@ import static org.llvm.binding.LLVMLibrary.*;
 /**
  * Implements various analyses of the LLVM IR.
  */
-public class ExecutionEngine {
+public class ExecutionEngine implements AutoCloseable {
+
+	private LLVMExecutionEngineRef engine;
+
+	private final NativeCleaner.Cleanable cleanable;
 
-	private final LLVMExecutionEngineRef engine;
+	/* The modules owned by the engine, kept reachable with their context. */
+	private final List<Module> modules = new ArrayList<Module>();
+
+	/*
+	 * Functions resolved by name. Replaced rather than cleared when code is
+	 * removed or recompiled, so that a lookup racing with the change fills
+	 * the discarded table.
+	 */
+	private volatile ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	/*
+	 * Set when modules or functions were added whose machine code is not
+	 * generated yet; the next lookup generates it and counts as compilation.
+	 */
+	private volatile boolean codePending;
 
 	LLVMExecutionEngineRef engine() {
 		return this.engine;
 	}
 
-	ExecutionEngine(LLVMExecutionEngineRef engine) {
+	ExecutionEngine(LLVMExecutionEngineRef engine, Module m) {
 		this.engine = engine;
+		this.cleanable = NativeCleaner.register(this, new Disposer(engine,
+				this.modules));
+		this.own(m);
 	}
 
-	public void finalise() {
+	/**
+	 * Destroy the engine together with the modules it owns.
+	 */
+	public void dispose() {
+		this.cleanable.clean();
+		this.engine = null;
+		this.invalidate();
+		synchronized (this.modules) {
+			this.modules.clear();
+		}
+	}
+
+	@Override
+	public void close() {
 		this.dispose();
 	}
 
-	public void dispose() {
-		LLVMDisposeExecutionEngine(this.engine);
+	private void own(Module m) {
+		m.transferOwnership();
+		synchronized (this.modules) {
+			this.modules.add(m);
+		}
+		this.codePending = true;
+		LLVMStatistics.engineModules(1);
 	}
 
 	public static ExecutionEngine createForModule(Module m) {
@@ -59,13 +105,64 @@ public class ExecutionEngine {
 			throw new RuntimeException("can't create execution engine: " + msg);
 		}
 
-		return new ExecutionEngine(pEE.get());
+		return new ExecutionEngine(pEE.get(), m);
 	}
 
-	/* public static native int LLVMCreateInterpreterForModule(
-	 * Pointer<Pointer<LLVMOpaqueExecutionEngine>> outInterp,
-	 * LLVMModuleRef m, Pointer<Pointer<Byte>> outError);
-	 * public static native int LLVMCreateJITCompilerForModule(
+	/**
+	 * Create an MCJIT execution engine for a module. The engine takes<br>
+	 * ownership of the module. Machine code for the whole module is<br>
+	 * generated when the first function address is requested; use OrcJIT<br>
+	 * to compile functions lazily instead.
+	 */
+	public static ExecutionEngine createMCJITCompilerForModule(Module m,
+			int optLevel) throws LLVMException {
+		LLVMLinkInMCJIT();
+
+		long size = BridJ.sizeOf(LLVMMCJITCompilerOptions.class);
+		Pointer<LLVMMCJITCompilerOptions> options = Pointer
+				.allocate(LLVMMCJITCompilerOptions.class);
+		LLVMInitializeMCJITCompilerOptions(options, size);
+		options.get().OptLevel(optLevel);
+
+		Pointer<Pointer<Byte>> ppByte = Pointer.pointerToCStrings("");
+		Pointer<LLVMExecutionEngineRef> pEE = Pointer
+				.allocateTypedPointer(LLVMExecutionEngineRef.class);
+		int retval = LLVMCreateMCJITCompilerForModule(pEE, m.module(),
+				options, size, ppByte);
+		if (retval != 0) {
+			Pointer<Byte> pByte = ppByte.getPointer(Byte.class);
+			final String message = pByte.getCString();
+			LLVMDisposeMessage(pByte);
+			throw new LLVMException(message);
+		}
+
+		return new ExecutionEngine(pEE.get(), m);
+	}
+
+	/**
+	 * Create an execution engine which interprets the IR of a module<br>
+	 * instead of compiling it. Creation is cheap, execution is slow. The<br>
+	 * engine takes ownership of the module.
+	 */
+	public static ExecutionEngine createInterpreterForModule(Module m)
+			throws LLVMException {
+		LLVMLinkInInterpreter();
+
+		Pointer<Pointer<Byte>> ppByte = Pointer.pointerToCStrings("");
+		Pointer<LLVMExecutionEngineRef> pEE = Pointer
+				.allocateTypedPointer(LLVMExecutionEngineRef.class);
+		int retval = LLVMCreateInterpreterForModule(pEE, m.module(), ppByte);
+		if (retval != 0) {
+			Pointer<Byte> pByte = ppByte.getPointer(Byte.class);
+			final String message = pByte.getCString();
+			LLVMDisposeMessage(pByte);
+			throw new LLVMException(message);
+		}
+
+		return new ExecutionEngine(pEE.get(), m);
+	}
+
+	/* public static native int LLVMCreateJITCompilerForModule(
 	 * Pointer<Pointer<LLVMOpaqueExecutionEngine>> outJIT,
 	 * LLVMModuleRef m, int optLevel, Pointer<Pointer<Byte>> outError);
 	 * public static native int LLVMCreateExecutionEngine(
@@ -111,18 +208,29 @@ public class ExecutionEngine {
 	public GenericValue runFunction(Value f, GenericValue... args) {
 		// Pointer<Pointer<LLVMOpaqueGenericValue>> args) {
 
+		LLVMStatistics.interpretedCall();
 		return new GenericValue(LLVMRunFunction(this.engine, f.value(),
 				args.length, internalize(args)));
 	}
 
 	public void freeMachineCodeForFunction(Value f) {
 		LLVMFreeMachineCodeForFunction(this.engine, f.value());
+		this.invalidate();
 	}
 
+	/**
+	 * Add a module to the engine, which takes ownership of it.
+	 */
 	public void addModule(Module m) {
 		LLVMAddModule(this.engine, m.module());
+		this.own(m);
 	}
 
+	/**
+	 * Remove a module from the engine. The caller becomes responsible for<br>
+	 * disposing the returned module.
+	 */
+
 	public Module removeModule(Module m) {
 		Pointer<Pointer<Byte>> outError = Pointer.allocateBytes(1, 1024);
 		Pointer<LLVMModuleRef> outMod = Pointer
@@ -133,23 +241,106 @@ public class ExecutionEngine {
 			String msg = outError.get().getCString();
 			throw new RuntimeException("can't remove module: " + msg);
 		}
-		return new Module(outMod.get());
+		synchronized (this.modules) {
+			if (this.modules.remove(m)) {
+				LLVMStatistics.engineModules(-1);
+			}
+		}
+		this.invalidate();
+		return Module.returned(outMod.get(), m);
 	}
 
-	public Value findFunction(String name) { // Pointer<Pointer<LLVMOpaqueValue>> outFn) {
-		Pointer<Byte> cstr = Pointer.pointerToCString(name);
+	/**
+	 * Returns the named function of any module of the engine. The function<br>
+	 * is searched for once; later calls are served from a table.
+	 */
+	public Value findFunction(String name) {
+		Entry e = this.entry(name);
+		if (e == null) {
+			throw new RuntimeException("LLVMFindFunction can't find " + name);
+		}
+		return e.function;
+	}
+
+	/**
+	 * Returns the address of the machine code of the named function, or 0<br>
+	 * if no module of the engine defines it. The address is resolved on the<br>
+	 * first call and cached until a module is removed or code is<br>
+	 * recompiled; reads of the cache do not lock.
+	 */
+	public long getFunctionAddress(String name) {
+		Entry e = this.entry(name);
+		return e == null ? 0 : Pointer.getPeer(this.address(e));
+	}
+
+	/**
+	 * Returns an implementation of the given interface that calls the<br>
+	 * named function. The implementation is created once per function and<br>
+	 * interface and cached like the address.
+	 *
+	 * @see #getFunction(Value, Class)
+	 */
+	public <T> T getFunction(String name, Class<T> type) {
+		Entry e = this.entry(name);
+		if (e == null) {
+			throw new RuntimeException("LLVMFindFunction can't find " + name);
+		}
+		Object stub = e.stubs.get(type);
+		if (stub == null) {
+			checkParams(e.function, type);
+			stub = JITFunction.bind(this.address(e), name, type);
+			Object raced = e.stubs.putIfAbsent(type, stub);
+			if (raced != null) {
+				stub = raced;
+			}
+		}
+		return type.cast(stub);
+	}
+
+	private Entry entry(String name) {
+		ConcurrentMap<String, Entry> table = this.entries;
+		Entry e = table.get(name);
+		if (e != null) {
+			return e;
+		}
+
+		/* Misses are not cached: a module added later may define the name. */
 		Pointer<LLVMValueRef> outFn = Pointer
 				.allocateTypedPointer(LLVMValueRef.class);
-		boolean err = LLVMFindFunction(this.engine, cstr, outFn) != 0;
-		if (err) {
-			throw new RuntimeException("LLVMFindFunction can't find " + name);
+		if (LLVMFindFunction(this.engine, Pointer.pointerToCString(name),
+				outFn) != 0) {
+			return null;
 		}
-		return new Value(outFn.get());
+		e = new Entry(new Value(outFn.get()));
+		Entry raced = table.putIfAbsent(name, e);
+		return raced != null ? raced : e;
+	}
+
+	private Pointer<?> address(Entry e) {
+		Pointer<?> address = e.address;
+		if (address == null) {
+			address = this.getPointerToGlobal(e.function);
+			if (address == null) {
+				throw new RuntimeException("no machine code for function "
+						+ e.function.getValueName());
+			}
+			e.address = address;
+		}
+		return address;
+	}
+
+	/* Drop the resolved functions after code was removed or replaced. */
+	private void invalidate() {
+		this.entries = new ConcurrentHashMap<String, Entry>();
 	}
 
 	// TODO: this probably is returning a ValueRef for the recompiled Fn
 	public Pointer<?> recompileAndRelinkFunction(Value fn) {
-		return LLVMRecompileAndRelinkFunction(this.engine, fn.value());
+		this.codePending = true;
+		Pointer<?> address = LLVMRecompileAndRelinkFunction(this.engine,
+				fn.value());
+		this.invalidate();
+		return address;
 	}
 
 	public LLVMTargetDataRef getExecutionEngineTargetData() {
@@ -163,10 +354,54 @@ public class ExecutionEngine {
 
 	public void addGlobalMapping(Value global, Pointer<?> addr) {
 		LLVMAddGlobalMapping(this.engine, global.value(), addr);
+		this.invalidate();
 	}
 
+	/**
+	 * Returns the address of a global. MCJIT generates the machine code of<br>
+	 * the modules added since the previous lookup on the first call, which<br>
+	 * is accounted to LLVMStatistics as one compilation; later lookups<br>
+	 * are not.
+	 */
 	public Pointer<?> getPointerToGlobal(Value global) {
-		return LLVMGetPointerToGlobal(this.engine, global.value());
+		if (!this.codePending) {
+			return LLVMGetPointerToGlobal(this.engine, global.value());
+		}
+		this.codePending = false;
+		long start = System.nanoTime();
+		Pointer<?> address = LLVMGetPointerToGlobal(this.engine,
+				global.value());
+		LLVMStatistics.compiled(System.nanoTime() - start);
+		return address;
+	}
+
+	/**
+	 * Returns an implementation of the given interface that calls the<br>
+	 * machine code of a JIT-compiled function. The interface must declare a<br>
+	 * single abstract method (e.g. LongBinaryOperator) whose parameters<br>
+	 * match the parameters of the function. Unlike runFunction(), no<br>
+	 * GenericValue is allocated per call; the arguments are still boxed<br>
+	 * into an Object[] for a reflective call, see InvocationBenchmark.
+	 */
+	public <T> T getFunction(Value f, Class<T> type) {
+		checkParams(f, type);
+
+		Pointer<?> address = this.getPointerToGlobal(f);
+		if (address == null) {
+			throw new RuntimeException("no machine code for function "
+					+ f.getValueName());
+		}
+		return JITFunction.bind(address, f.getValueName(), type);
+	}
+
+	private static void checkParams(Value f, Class<?> type) {
+		int expected = JITFunction.functionalMethod(type)
+				.getParameterTypes().length;
+		if (f.countParams() != expected) {
+			throw new IllegalArgumentException("function "
+					+ f.getValueName() + " takes " + f.countParams()
+					+ " parameters, " + type.getName() + " passes " + expected);
+		}
 	}
 
 	static Pointer<LLVMGenericValueRef> internalize(GenericValue[] values) {
@@ -186,4 +421,43 @@ public class ExecutionEngine {
 		return array;
 	}
 
+	private static final class Entry {
+		final Value function;
+
+		/* Resolved on first use; a racing resolution gets the same code. */
+		volatile Pointer<?> address;
+
+		final ConcurrentMap<Class<?>, Object> stubs = new ConcurrentHashMap<Class<?>, Object>();
+
+		Entry(Value function) {
+			this.function = function;
+		}
+	}
+
+	private static final class Disposer implements Runnable {
+		private final LLVMExecutionEngineRef engine;
+
+		private final List<Module> modules;
+
+		Disposer(LLVMExecutionEngineRef engine, List<Module> modules) {
+			this.engine = engine;
+			this.modules = modules;
+		}
+
+		public void run() {
+			synchronized (this.modules) {
+				LLVMStatistics.engineModules(-this.modules.size());
+				for (Module m : this.modules) {
+					SymbolTable.forget(Pointer.getPeer(m.module()));
+				}
+			}
+			LLVMDisposeExecutionEngine(this.engine);
+			synchronized (this.modules) {
+				for (Module m : this.modules) {
+					m.nativeFreed();
+				}
+			}
+		}
+	}
+
 }
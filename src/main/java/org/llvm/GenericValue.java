@@ -11,26 +11,27 @@ import static org.llvm.binding.LLVMLibrary.LLVMGenericValueToPointer;
 import org.bridj.Pointer;
 import org.llvm.binding.LLVMLibrary;
 
-public class GenericValue {
+public class GenericValue implements AutoCloseable {
 	private LLVMLibrary.LLVMGenericValueRef ref;
 
+	private final NativeCleaner.Cleanable cleanable;
+
 	public LLVMLibrary.LLVMGenericValueRef ref() {
 		return this.ref;
 	}
 
 	public GenericValue(LLVMLibrary.LLVMGenericValueRef ref) {
 		this.ref = ref;
+		this.cleanable = NativeCleaner.register(this, new Disposer(ref));
 	}
 
 	public void dispose() {
-		if (this.ref != null) {
-			LLVMLibrary.LLVMDisposeGenericValue(this.ref);
-			this.ref = null;
-		}
+		this.cleanable.clean();
+		this.ref = null;
 	}
 
 	@Override
-	public void finalize() {
+	public void close() {
 		this.dispose();
 	}
 
@@ -63,4 +64,16 @@ public class GenericValue {
 		return LLVMGenericValueToFloat(ty.type(), this.ref);
 	}
 
+	private static final class Disposer implements Runnable {
+		private final LLVMLibrary.LLVMGenericValueRef ref;
+
+		Disposer(LLVMLibrary.LLVMGenericValueRef ref) {
+			this.ref = ref;
+		}
+
+		public void run() {
+			LLVMLibrary.LLVMDisposeGenericValue(this.ref);
+		}
+	}
+
 }
@@ -0,0 +1,418 @@
+package org.llvm;
+
+import static org.llvm.binding.LLVMRaw.*;
+
+import java.util.Arrays;
+
+import org.bridj.IntValuedEnum;
+import org.bridj.Pointer;
+import org.llvm.binding.LLVMLibrary.LLVMIntPredicate;
+import org.llvm.binding.LLVMLibrary.LLVMOpcode;
+import org.llvm.binding.LLVMLibrary.LLVMRealPredicate;
+import org.llvm.binding.LLVMLibrary.LLVMValueRef;
+
+/**
+ * A list of instructions recorded on the Java heap and emitted through a<br>
+ * Builder in one pass. Recording only appends ints to an array; emission is<br>
+ * a single loop calling the C API with raw addresses, so no Value or typed<br>
+ * pointer is allocated per instruction:
+ *
+ * <pre>
+ * InstructionBatch batch = new InstructionBatch();
+ * int a = batch.value(f.getParam(0));
+ * int b = batch.value(f.getParam(1));
+ * int sum = batch.binOp(LLVMOpcode.LLVMAdd, a, b);
+ * batch.ret(sum);
+ * batch.emit(builder);
+ * </pre>
+ *
+ * Every recorded entry, including existing values and constants, gets the<br>
+ * next index; instructions refer to their operands by index. Emitted<br>
+ * instructions are unnamed. A batch may be cleared and reused; it is not<br>
+ * thread-safe.
+ */
+public final class InstructionBatch {
+
+	/* Record tags, each followed by a fixed number of ints except GEP and CALL. */
+	private static final int VALUE = 0;
+	private static final int CONST_INT = 1;
+	private static final int CONST_REAL = 2;
+	private static final int BINOP = 3;
+	private static final int CAST = 4;
+	private static final int ICMP = 5;
+	private static final int FCMP = 6;
+	private static final int ALLOCA = 7;
+	private static final int LOAD = 8;
+	private static final int STORE = 9;
+	private static final int GEP = 10;
+	private static final int SELECT = 11;
+	private static final int CALL = 12;
+	private static final int BR = 13;
+	private static final int COND_BR = 14;
+	private static final int RET = 15;
+	private static final int RET_VOID = 16;
+
+	private int[] code = new int[256];
+
+	private int codeSize;
+
+	/* Values, types and blocks from outside the batch, and constant bits. */
+	private long[] handles = new long[64];
+
+	private int handleCount;
+
+	/* Addresses of the emitted values, by index. */
+	private long[] results = new long[0];
+
+	private int count;
+
+	/* Entries and code words already emitted. */
+	private int emitted;
+
+	private int emittedCode;
+
+	/* Reused native array for GEP indices and call arguments. */
+	private Pointer<Byte> operands;
+
+	private int operandCapacity;
+
+	/**
+	 * Number of entries recorded so far.
+	 */
+	public int size() {
+		return this.count;
+	}
+
+	/**
+	 * Forget every recorded entry, keeping the allocated arrays.
+	 */
+	public void clear() {
+		this.codeSize = 0;
+		this.handleCount = 0;
+		this.count = 0;
+		this.emitted = 0;
+		this.emittedCode = 0;
+	}
+
+	/* Recording */
+
+	/**
+	 * Record an existing value, e.g. a function parameter or global.
+	 */
+	public int value(Value v) {
+		return this.record(VALUE, this.handle(Pointer.getPeer(v.value())));
+	}
+
+	public int constInt(TypeRef ty, long n, boolean signExtend) {
+		return this.record(CONST_INT, this.type(ty), this.handle(n),
+				signExtend ? 1 : 0);
+	}
+
+	public int constReal(TypeRef ty, double n) {
+		return this.record(CONST_REAL, this.type(ty),
+				this.handle(Double.doubleToRawLongBits(n)));
+	}
+
+	/**
+	 * Record a binary operator such as LLVMAdd, LLVMFMul or LLVMXor.
+	 */
+	public int binOp(IntValuedEnum<LLVMOpcode> op, int lhs, int rhs) {
+		return this.record(BINOP, (int) op.value(), this.operand(lhs),
+				this.operand(rhs));
+	}
+
+	/**
+	 * Record a cast such as LLVMTrunc, LLVMZExt or LLVMBitCast.
+	 */
+	public int cast(IntValuedEnum<LLVMOpcode> op, int val, TypeRef destTy) {
+		return this.record(CAST, (int) op.value(), this.operand(val),
+				this.type(destTy));
+	}
+
+	public int icmp(IntValuedEnum<LLVMIntPredicate> op, int lhs, int rhs) {
+		return this.record(ICMP, (int) op.value(), this.operand(lhs),
+				this.operand(rhs));
+	}
+
+	public int fcmp(IntValuedEnum<LLVMRealPredicate> op, int lhs, int rhs) {
+		return this.record(FCMP, (int) op.value(), this.operand(lhs),
+				this.operand(rhs));
+	}
+
+	public int alloca(TypeRef ty) {
+		return this.record(ALLOCA, this.type(ty));
+	}
+
+	public int load(int pointer) {
+		return this.record(LOAD, this.operand(pointer));
+	}
+
+	public int store(int val, int pointer) {
+		return this.record(STORE, this.operand(val), this.operand(pointer));
+	}
+
+	public int gep(int pointer, int... indices) {
+		return this.recordVariadic(GEP, pointer, indices);
+	}
+
+	public int select(int cond, int then, int otherwise) {
+		return this.record(SELECT, this.operand(cond), this.operand(then),
+				this.operand(otherwise));
+	}
+
+	public int call(int fn, int... args) {
+		return this.recordVariadic(CALL, fn, args);
+	}
+
+	public int br(BasicBlock dest) {
+		return this.record(BR, this.block(dest));
+	}
+
+	public int condBr(int cond, BasicBlock then, BasicBlock otherwise) {
+		return this.record(COND_BR, this.operand(cond), this.block(then),
+				this.block(otherwise));
+	}
+
+	public int ret(int val) {
+		return this.record(RET, this.operand(val));
+	}
+
+	public int retVoid() {
+		return this.record(RET_VOID);
+	}
+
+	/* Emission */
+
+	/**
+	 * Emit the entries recorded since the last call at the position of the<br>
+	 * builder.
+	 */
+	public void emit(Builder builder) {
+		if (this.results.length < this.count) {
+			this.results = Arrays.copyOf(this.results,
+					Math.max(this.count, this.results.length * 2));
+		}
+
+		final long b = Pointer.getPeer(builder.builder());
+		final long name = Pointer.getPeer(Builder.EMPTY_NAME);
+		final int[] c = this.code;
+		final long[] h = this.handles;
+		final long[] r = this.results;
+
+		int pc = this.emittedCode;
+		for (int i = this.emitted; i < this.count; i++) {
+			switch (c[pc]) {
+			case VALUE:
+				r[i] = h[c[pc + 1]];
+				pc += 2;
+				break;
+			case CONST_INT:
+				r[i] = LLVMConstInt(h[c[pc + 1]], h[c[pc + 2]], c[pc + 3]);
+				pc += 4;
+				break;
+			case CONST_REAL:
+				r[i] = LLVMConstReal(h[c[pc + 1]],
+						Double.longBitsToDouble(h[c[pc + 2]]));
+				pc += 3;
+				break;
+			case BINOP:
+				r[i] = LLVMBuildBinOp(b, c[pc + 1], r[c[pc + 2]], r[c[pc + 3]],
+						name);
+				pc += 4;
+				break;
+			case CAST:
+				r[i] = LLVMBuildCast(b, c[pc + 1], r[c[pc + 2]], h[c[pc + 3]],
+						name);
+				pc += 4;
+				break;
+			case ICMP:
+				r[i] = LLVMBuildICmp(b, c[pc + 1], r[c[pc + 2]], r[c[pc + 3]],
+						name);
+				pc += 4;
+				break;
+			case FCMP:
+				r[i] = LLVMBuildFCmp(b, c[pc + 1], r[c[pc + 2]], r[c[pc + 3]],
+						name);
+				pc += 4;
+				break;
+			case ALLOCA:
+				r[i] = LLVMBuildAlloca(b, h[c[pc + 1]], name);
+				pc += 2;
+				break;
+			case LOAD:
+				r[i] = LLVMBuildLoad(b, r[c[pc + 1]], name);
+				pc += 2;
+				break;
+			case STORE:
+				r[i] = LLVMBuildStore(b, r[c[pc + 1]], r[c[pc + 2]]);
+				pc += 3;
+				break;
+			case GEP: {
+				int n = c[pc + 2];
+				r[i] = LLVMBuildGEP(b, r[c[pc + 1]],
+						this.operands(c, pc + 3, n), n, name);
+				pc += 3 + n;
+				break;
+			}
+			case SELECT:
+				r[i] = LLVMBuildSelect(b, r[c[pc + 1]], r[c[pc + 2]],
+						r[c[pc + 3]], name);
+				pc += 4;
+				break;
+			case CALL: {
+				int n = c[pc + 2];
+				r[i] = LLVMBuildCall(b, r[c[pc + 1]],
+						this.operands(c, pc + 3, n), n, name);
+				pc += 3 + n;
+				break;
+			}
+			case BR:
+				r[i] = LLVMBuildBr(b, h[c[pc + 1]]);
+				pc += 2;
+				break;
+			case COND_BR:
+				r[i] = LLVMBuildCondBr(b, r[c[pc + 1]], h[c[pc + 2]],
+						h[c[pc + 3]]);
+				pc += 4;
+				break;
+			case RET:
+				r[i] = LLVMBuildRet(b, r[c[pc + 1]]);
+				pc += 2;
+				break;
+			case RET_VOID:
+				r[i] = LLVMBuildRetVoid(b);
+				pc += 1;
+				break;
+			default:
+				throw new IllegalStateException("corrupt batch at " + pc);
+			}
+		}
+		this.emitted = this.count;
+		this.emittedCode = pc;
+	}
+
+	/**
+	 * Obtain the value emitted for an entry.
+	 */
+	public Value get(int index) {
+		return new Value(new LLVMValueRef(this.address(index)));
+	}
+
+	/**
+	 * Obtain the address of the value emitted for an entry, without<br>
+	 * allocating a wrapper.
+	 */
+	long address(int index) {
+		if (index < 0 || index >= this.emitted) {
+			throw new IndexOutOfBoundsException("entry " + index
+					+ " has not been emitted");
+		}
+		return this.results[index];
+	}
+
+	/* Internals */
+
+	/* One overload per record length, so that recording allocates nothing. */
+	private int record(int tag) {
+		this.reserve(1);
+		this.code[this.codeSize++] = tag;
+		return this.count++;
+	}
+
+	private int record(int tag, int a) {
+		this.reserve(2);
+		int[] c = this.code;
+		int pc = this.codeSize;
+		c[pc] = tag;
+		c[pc + 1] = a;
+		this.codeSize = pc + 2;
+		return this.count++;
+	}
+
+	private int record(int tag, int a, int b) {
+		this.reserve(3);
+		int[] c = this.code;
+		int pc = this.codeSize;
+		c[pc] = tag;
+		c[pc + 1] = a;
+		c[pc + 2] = b;
+		this.codeSize = pc + 3;
+		return this.count++;
+	}
+
+	private int record(int tag, int a, int b, int d) {
+		this.reserve(4);
+		int[] c = this.code;
+		int pc = this.codeSize;
+		c[pc] = tag;
+		c[pc + 1] = a;
+		c[pc + 2] = b;
+		c[pc + 3] = d;
+		this.codeSize = pc + 4;
+		return this.count++;
+	}
+
+	private int recordVariadic(int tag, int target, int[] args) {
+		this.operand(target);
+		for (int a : args) {
+			this.operand(a);
+		}
+		this.reserve(3 + args.length);
+		int[] c = this.code;
+		int pc = this.codeSize;
+		c[pc] = tag;
+		c[pc + 1] = target;
+		c[pc + 2] = args.length;
+		System.arraycopy(args, 0, c, pc + 3, args.length);
+		this.codeSize = pc + 3 + args.length;
+		return this.count++;
+	}
+
+	private void reserve(int n) {
+		if (this.codeSize + n > this.code.length) {
+			this.code = Arrays.copyOf(this.code,
+					Math.max(this.codeSize + n, this.code.length * 2));
+		}
+	}
+
+	private int operand(int index) {
+		if (index < 0 || index >= this.count) {
+			throw new IllegalArgumentException("no entry " + index);
+		}
+		return index;
+	}
+
+	private int handle(long h) {
+		if (this.handleCount == this.handles.length) {
+			this.handles = Arrays.copyOf(this.handles, this.handleCount * 2);
+		}
+		this.handles[this.handleCount] = h;
+		return this.handleCount++;
+	}
+
+	private int type(TypeRef ty) {
+		return this.handle(Pointer.getPeer(ty.type()));
+	}
+
+	private int block(BasicBlock bb) {
+		return this.handle(Pointer.getPeer(bb.bb()));
+	}
+
+	/* Copies the addresses of n operands into the reused native array. */
+	private long operands(int[] c, int from, int n) {
+		if (n > this.operandCapacity) {
+			this.operandCapacity = Math.max(n, this.operandCapacity * 2);
+			this.operands = Pointer.allocateBytes(this.operandCapacity
+					* (long) Pointer.SIZE);
+		}
+		if (n == 0) {
+			return 0;
+		}
+		for (int k = 0; k < n; k++) {
+			this.operands.setSizeTAtOffset(k * (long) Pointer.SIZE,
+					this.results[c[from + k]]);
+		}
+		return Pointer.getPeer(this.operands);
+	}
+
+}
@@ -0,0 +1,143 @@
+package org.llvm;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+
+import org.bridj.DynamicFunction;
+import org.bridj.Pointer;
+
+/**
+ * Binds the machine code of a JIT-compiled function to a Java interface.<br>
+ * The interface is implemented by a java.lang.reflect.Proxy, so each call<br>
+ * boxes its arguments into an Object[] and goes through a reflective<br>
+ * DynamicFunction.apply(), which unboxes them for the native call. No<br>
+ * GenericValue is created for the arguments or the result and the call<br>
+ * runs without the interpreter's lock, unlike runFunction(); callers that<br>
+ * must avoid the boxing can call the address from getFunctionAddress()<br>
+ * through a typed BridJ binding of their own.
+ */
+final class JITFunction implements InvocationHandler {
+
+	private static final Object[] NO_ARGS = new Object[0];
+
+	private final String name;
+
+	private final Method method;
+
+	private final DynamicFunction<?> function;
+
+	private JITFunction(String name, Method method, DynamicFunction<?> function) {
+		this.name = name;
+		this.method = method;
+		this.function = function;
+	}
+
+	/**
+	 * Creates an implementation of the given interface which calls the<br>
+	 * function at the specified address. The interface must declare exactly<br>
+	 * one abstract method, whose parameter and return types are primitives,<br>
+	 * void or BridJ pointers.
+	 */
+	static <T> T bind(Pointer<?> address, String name, Class<T> type) {
+		Method method = functionalMethod(type);
+		DynamicFunction<?> function = function(address, type, method);
+		LLVMStatistics.boundFunction();
+
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(),
+				new Class<?>[] { type }, new JITFunction(name, method,
+						function)));
+	}
+
+	/**
+	 * Creates the native call stub for the functional method of an<br>
+	 * interface.
+	 */
+	static DynamicFunction<?> function(Pointer<?> address, Class<?> type,
+			Method method) {
+		for (Class<?> param : method.getParameterTypes()) {
+			checkType(type, param);
+		}
+		checkType(type, method.getReturnType());
+
+		return address.asDynamicFunction(null, method.getReturnType(),
+				method.getParameterTypes());
+	}
+
+	static Method functionalMethod(Class<?> type) {
+		if (!type.isInterface()) {
+			throw new IllegalArgumentException(type.getName()
+					+ " is not an interface");
+		}
+
+		Method found = null;
+		for (Method m : type.getMethods()) {
+			if (!Modifier.isAbstract(m.getModifiers()) || isObjectMethod(m)) {
+				continue;
+			}
+			if (found != null) {
+				throw new IllegalArgumentException(type.getName()
+						+ " declares more than one abstract method");
+			}
+			found = m;
+		}
+
+		if (found == null) {
+			throw new IllegalArgumentException(type.getName()
+					+ " does not declare an abstract method");
+		}
+		return found;
+	}
+
+	private static void checkType(Class<?> iface, Class<?> t) {
+		if (t.isPrimitive() && t != char.class) {
+			return;
+		}
+		if (Pointer.class.isAssignableFrom(t)) {
+			return;
+		}
+		throw new IllegalArgumentException("unsupported type " + t.getName()
+				+ " in " + iface.getName());
+	}
+
+	private static boolean isObjectMethod(Method m) {
+		try {
+			Object.class.getMethod(m.getName(), m.getParameterTypes());
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	public Object invoke(Object proxy, Method m, Object[] args)
+			throws Throwable {
+		if (m.equals(this.method)) {
+			LLVMStatistics.compiledCall();
+			return this.function.apply(args == null ? NO_ARGS : args);
+		}
+
+		return invokeObjectMethod(proxy, m, args, "JITFunction[" + this.name
+				+ "]");
+	}
+
+	/**
+	 * Implements the methods of Object on a function proxy: identity<br>
+	 * equality and hash code, and the given description as toString().
+	 */
+	static Object invokeObjectMethod(Object proxy, Method m, Object[] args,
+			String description) {
+		String methodName = m.getName();
+		if (methodName.equals("equals") && args != null && args.length == 1) {
+			return proxy == args[0];
+		}
+		if (methodName.equals("hashCode") && args == null) {
+			return System.identityHashCode(proxy);
+		}
+		if (methodName.equals("toString") && args == null) {
+			return description;
+		}
+		throw new UnsupportedOperationException(m.toString());
+	}
+
+}
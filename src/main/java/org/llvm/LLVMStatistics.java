@@ -0,0 +1,210 @@
+package org.llvm;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide counters of the bindings: live native objects, time spent<br>
+ * compiling and optimizing, and function calls. Live objects are always<br>
+ * counted; times and calls only while enabled, so that calls into<br>
+ * machine code stay free of shared writes by default. register() enables<br>
+ * them and publishes the statistics on the platform MBean server under<br>
+ * the name org.llvm:type=Statistics, for monitoring of code-cache growth<br>
+ * and compile storms.
+ */
+public final class LLVMStatistics implements LLVMStatisticsMXBean {
+
+	public static final String OBJECT_NAME = "org.llvm:type=Statistics";
+
+	private static final LLVMStatistics INSTANCE = new LLVMStatistics();
+
+	private static final AtomicLong ENGINE_MODULES = new AtomicLong();
+
+	private static final AtomicLong COMPILATIONS = new AtomicLong();
+
+	private static final AtomicLong COMPILE_NANOS = new AtomicLong();
+
+	private static final AtomicLong OPTIMIZATIONS = new AtomicLong();
+
+	private static final AtomicLong OPTIMIZE_NANOS = new AtomicLong();
+
+	private static final AtomicLong INTERPRETED_CALLS = new AtomicLong();
+
+	private static final AtomicLong COMPILED_CALLS = new AtomicLong();
+
+	private static final AtomicLong BOUND_FUNCTIONS = new AtomicLong();
+
+	private static volatile boolean enabled;
+
+	private LLVMStatistics() {
+	}
+
+	public static LLVMStatistics getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Publish the statistics on the platform MBean server. Does nothing if<br>
+	 * they are already registered.
+	 */
+	public static void register() throws JMException {
+		enabled = true;
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.registerMBean(INSTANCE, objectName());
+		} catch (InstanceAlreadyExistsException e) {
+			/* Registered before. */
+		}
+	}
+
+	/**
+	 * Remove the statistics from the platform MBean server.
+	 */
+	public static void unregister() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			server.unregisterMBean(objectName());
+		} catch (InstanceNotFoundException e) {
+			/* Not registered. */
+		}
+	}
+
+	/**
+	 * Start or stop counting times and calls. Live objects and engine<br>
+	 * modules are counted regardless.
+	 */
+	public static void setEnabled(boolean enable) {
+		enabled = enable;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	private static ObjectName objectName() throws MalformedObjectNameException {
+		return new ObjectName(OBJECT_NAME);
+	}
+
+	static void engineModules(int delta) {
+		ENGINE_MODULES.addAndGet(delta);
+	}
+
+	static void compiled(long nanos) {
+		if (enabled) {
+			COMPILATIONS.incrementAndGet();
+			COMPILE_NANOS.addAndGet(nanos);
+		}
+	}
+
+	static void optimized(long nanos) {
+		if (enabled) {
+			OPTIMIZATIONS.incrementAndGet();
+			OPTIMIZE_NANOS.addAndGet(nanos);
+		}
+	}
+
+	static void interpretedCall() {
+		if (enabled) {
+			INTERPRETED_CALLS.incrementAndGet();
+		}
+	}
+
+	static void compiledCall() {
+		if (enabled) {
+			COMPILED_CALLS.incrementAndGet();
+		}
+	}
+
+	static void boundFunction() {
+		if (enabled) {
+			BOUND_FUNCTIONS.incrementAndGet();
+		}
+	}
+
+	public long getLiveContexts() {
+		return NativeCleaner.liveCount(Context.class);
+	}
+
+	public long getLiveModules() {
+		return NativeCleaner.liveCount(Module.class);
+	}
+
+	public long getEngineModules() {
+		return ENGINE_MODULES.get();
+	}
+
+	public long getLiveExecutionEngines() {
+		return NativeCleaner.liveCount(ExecutionEngine.class);
+	}
+
+	public long getLiveOrcJITs() {
+		return NativeCleaner.liveCount(OrcJIT.class);
+	}
+
+	public long getLivePassManagers() {
+		return NativeCleaner.liveCount(PassManager.class);
+	}
+
+	public long getLiveBuilders() {
+		return NativeCleaner.liveCount(Builder.class);
+	}
+
+	public long getLiveGenericValues() {
+		return NativeCleaner.liveCount(GenericValue.class);
+	}
+
+	public long getLiveMemoryBuffers() {
+		return NativeCleaner.liveCount(MemoryBuffer.class);
+	}
+
+	public long getEstimatedNativeBytes() {
+		return NativeCleaner.liveBytes();
+	}
+
+	public long getCompilations() {
+		return COMPILATIONS.get();
+	}
+
+	public long getCompileTimeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(COMPILE_NANOS.get());
+	}
+
+	public long getOptimizations() {
+		return OPTIMIZATIONS.get();
+	}
+
+	public long getOptimizeTimeMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(OPTIMIZE_NANOS.get());
+	}
+
+	public long getInterpretedCalls() {
+		return INTERPRETED_CALLS.get();
+	}
+
+	public long getCompiledCalls() {
+		return COMPILED_CALLS.get();
+	}
+
+	public long getBoundFunctions() {
+		return BOUND_FUNCTIONS.get();
+	}
+
+	public void reset() {
+		COMPILATIONS.set(0);
+		COMPILE_NANOS.set(0);
+		OPTIMIZATIONS.set(0);
+		OPTIMIZE_NANOS.set(0);
+		INTERPRETED_CALLS.set(0);
+		COMPILED_CALLS.set(0);
+		BOUND_FUNCTIONS.set(0);
+	}
+
+}
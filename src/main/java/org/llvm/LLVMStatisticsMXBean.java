@@ -0,0 +1,76 @@
+package org.llvm;
+
+/**
+ * Management interface of LLVMStatistics. Counts of live objects cover<br>
+ * wrappers which own their native object and have not been disposed yet.
+ */
+public interface LLVMStatisticsMXBean {
+
+	long getLiveContexts();
+
+	/**
+	 * Modules owned by Java code, not counting those held by engines.
+	 */
+	long getLiveModules();
+
+	/**
+	 * Modules owned by execution engines.
+	 */
+	long getEngineModules();
+
+	long getLiveExecutionEngines();
+
+	long getLiveOrcJITs();
+
+	long getLivePassManagers();
+
+	long getLiveBuilders();
+
+	long getLiveGenericValues();
+
+	long getLiveMemoryBuffers();
+
+	/**
+	 * Estimated native memory held by live objects, in bytes. Only memory<br>
+	 * buffers are accounted for; LLVM does not report the size of modules<br>
+	 * or machine code through its C API.
+	 */
+	long getEstimatedNativeBytes();
+
+	/**
+	 * Number of code generations: the first ExecutionEngine lookup after<br>
+	 * modules were added, and OrcJIT.addModuleEagerly(). Counted only while<br>
+	 * LLVMStatistics is enabled.
+	 */
+	long getCompilations();
+
+	long getCompileTimeMillis();
+
+	/**
+	 * Number of pass pipeline runs over a module or a function.
+	 */
+	long getOptimizations();
+
+	long getOptimizeTimeMillis();
+
+	/**
+	 * Number of calls through ExecutionEngine.runFunction().
+	 */
+	long getInterpretedCalls();
+
+	/**
+	 * Number of calls through interfaces bound to machine code.
+	 */
+	long getCompiledCalls();
+
+	/**
+	 * Number of interfaces bound to machine code.
+	 */
+	long getBoundFunctions();
+
+	/**
+	 * Reset the cumulative times and call counts to zero.
+	 */
+	void reset();
+
+}
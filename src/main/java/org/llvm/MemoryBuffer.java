@@ -0,0 +1,184 @@
+package org.llvm;
+
+import static org.llvm.binding.LLVMLibrary.LLVMCreateMemoryBufferWithContentsOfFile;
+import static org.llvm.binding.LLVMLibrary.LLVMCreateMemoryBufferWithMemoryRange;
+import static org.llvm.binding.LLVMLibrary.LLVMCreateMemoryBufferWithMemoryRangeCopy;
+import static org.llvm.binding.LLVMLibrary.LLVMDisposeMemoryBuffer;
+import static org.llvm.binding.LLVMLibrary.LLVMDisposeMessage;
+import static org.llvm.binding.LLVMLibrary.LLVMGetBufferSize;
+import static org.llvm.binding.LLVMLibrary.LLVMGetBufferStart;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.bridj.Pointer;
+import org.llvm.binding.LLVMLibrary.LLVMMemoryBufferRef;
+
+/**
+ * A block of native memory owned by LLVM, such as the contents of a file or<br>
+ * a serialized module.
+ */
+public class MemoryBuffer implements AutoCloseable {
+
+	private LLVMMemoryBufferRef buffer;
+
+	private final NativeCleaner.Cleanable cleanable;
+
+	/* Java memory the buffer points into, such as a file mapping. */
+	private final Object data;
+
+	LLVMMemoryBufferRef buffer() {
+		return this.buffer;
+	}
+
+	MemoryBuffer(LLVMMemoryBufferRef buffer) {
+		this(buffer, null);
+	}
+
+	private MemoryBuffer(LLVMMemoryBufferRef buffer, Object data) {
+		this.buffer = buffer;
+		this.data = data;
+		this.cleanable = NativeCleaner.register(this, new Disposer(buffer),
+				LLVMGetBufferSize(buffer));
+	}
+
+	/**
+	 * Read the contents of a file into a new memory buffer.
+	 */
+	public static MemoryBuffer createWithContentsOfFile(String path)
+			throws LLVMException {
+		Pointer<Pointer<Byte>> ppByte = Pointer.pointerToCStrings("");
+		Pointer<LLVMMemoryBufferRef> pBuf = Pointer
+				.allocateTypedPointer(LLVMMemoryBufferRef.class);
+		int retval = LLVMCreateMemoryBufferWithContentsOfFile(
+				Pointer.pointerToCString(path), pBuf, ppByte);
+		if (retval != 0) {
+			Pointer<Byte> pByte = ppByte.getPointer(Byte.class);
+			final String message = pByte.getCString();
+			LLVMDisposeMessage(pByte);
+			throw new LLVMException(message);
+		}
+		return new MemoryBuffer(pBuf.get());
+	}
+
+	/**
+	 * Map a file into memory and wrap the mapping without copying it. Pages<br>
+	 * are read by the OS as LLVM touches them. The mapping stays valid for<br>
+	 * as long as this object, or a module loaded lazily from it, is<br>
+	 * reachable. Files over 2 GB cannot be mapped.
+	 */
+	public static MemoryBuffer map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			MappedByteBuffer mapped = channel.map(
+					FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			LLVMMemoryBufferRef ref = LLVMCreateMemoryBufferWithMemoryRange(
+					Pointer.pointerToBuffer(mapped).as(Byte.class),
+					mapped.capacity(),
+					Pointer.pointerToCString(file.getPath()), 0);
+			return new MemoryBuffer(ref, mapped);
+		} finally {
+			/* The mapping outlives the channel. */
+			raf.close();
+		}
+	}
+
+	/**
+	 * Wrap the remaining bytes of a buffer. A direct buffer is used in place<br>
+	 * and kept reachable by the returned object, so it must not be modified<br>
+	 * while LLVM reads it; a heap buffer is copied into native memory.
+	 */
+	public static MemoryBuffer createWithBytes(ByteBuffer bytes, String name) {
+		ByteBuffer b = bytes.slice();
+		Pointer<Byte> cname = Pointer.pointerToCString(name);
+		if (b.isDirect()) {
+			return new MemoryBuffer(LLVMCreateMemoryBufferWithMemoryRange(
+					Pointer.pointerToBuffer(b).as(Byte.class), b.remaining(),
+					cname, 0), b);
+		}
+		byte[] copy = new byte[b.remaining()];
+		b.get(copy);
+		return new MemoryBuffer(LLVMCreateMemoryBufferWithMemoryRangeCopy(
+				Pointer.pointerToBytes(copy), copy.length, cname));
+	}
+
+	/**
+	 * Free the buffer and its contents.
+	 */
+	public void dispose() {
+		this.cleanable.clean();
+		this.buffer = null;
+	}
+
+	@Override
+	public void close() {
+		this.dispose();
+	}
+
+	/**
+	 * Hand the buffer over to LLVM, typically a lazily loaded module, which<br>
+	 * becomes responsible for freeing it.
+	 */
+	void transferOwnership() {
+		this.cleanable.release();
+	}
+
+	/**
+	 * Obtain a pointer to the first byte of the buffer.
+	 */
+	public Pointer<Byte> getBufferStart() {
+		return LLVMGetBufferStart(this.buffer);
+	}
+
+	/**
+	 * Obtain the size of the buffer in bytes.
+	 */
+	public long getBufferSize() {
+		return LLVMGetBufferSize(this.buffer);
+	}
+
+	/**
+	 * Returns a read-only view of the buffer contents, without copying. The<br>
+	 * view must not be used once the buffer is disposed.
+	 */
+	public ByteBuffer asByteBuffer() {
+		return this.getBufferStart().getByteBuffer(this.getBufferSize())
+				.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Write the whole buffer to a channel, straight from native memory.
+	 */
+	public void writeTo(WritableByteChannel channel) throws IOException {
+		ByteBuffer view = this.asByteBuffer();
+		while (view.hasRemaining()) {
+			channel.write(view);
+		}
+	}
+
+	/**
+	 * Copy the contents of the buffer onto the Java heap.
+	 */
+	public byte[] getBytes() {
+		return this.getBufferStart().getBytes((int) this.getBufferSize());
+	}
+
+	private static final class Disposer implements Runnable {
+		private final LLVMMemoryBufferRef buffer;
+
+		Disposer(LLVMMemoryBufferRef buffer) {
+			this.buffer = buffer;
+		}
+
+		public void run() {
+			LLVMDisposeMemoryBuffer(this.buffer);
+		}
+	}
+
+}
@@ -1,23 +1,92 @@
 package org.llvm;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.WritableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Spliterator;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.bridj.Pointer;
+import org.llvm.binding.LLVMRaw;
 import static org.llvm.binding.LLVMLibrary.*;
 
 /**
  * The main container class for the LLVM Intermediate Representation.
  */
-public class Module {
+public class Module implements AutoCloseable {
 
 	private LLVMModuleRef module;
 
+	private final NativeCleaner.Cleanable cleanable;
+
+	/* Keeps an owned context alive for as long as its modules. */
+	private final Context context;
+
+	/* Lets the native context go once the native module is freed. */
+	private final Runnable contextHold;
+
+	/* Handed to a new owner, which still refers to it through this handle. */
+	private boolean transferred;
+
+	/* The bitcode a lazily loaded module materializes functions from. */
+	private MemoryBuffer source;
+
 	public LLVMModuleRef module() {
 		return this.module;
 	}
 
+	/**
+	 * The owned context this module keeps alive, or null.
+	 */
+	Context keptContext() {
+		return this.context;
+	}
+
+	/**
+	 * Wraps a module owned by someone else; dispose() leaves it alone.
+	 */
 	public Module(LLVMModuleRef module) {
+		this(module, false, null);
+	}
+
+	private Module(LLVMModuleRef module, boolean owned, Context context) {
+		this(module, owned, context, owned && context != null ? context
+				.hold() : null);
+	}
+
+	private Module(LLVMModuleRef module, boolean owned, Context context,
+			Runnable contextHold) {
 		this.module = module;
+		this.context = context;
+		this.contextHold = contextHold;
+		if (owned) {
+			/* The address may be that of a module freed natively. */
+			SymbolTable.forget(Pointer.getPeer(module));
+		}
+		this.cleanable = owned ? NativeCleaner.register(this, new Disposer(
+				module, contextHold)) : null;
+	}
+
+	/**
+	 * Wraps a module which is disposed together with the wrapper.
+	 */
+	static Module owned(LLVMModuleRef module) {
+		return new Module(module, true, null);
+	}
+
+	/**
+	 * Wraps a module handed back by the owner it was transferred to, e.g.<br>
+	 * removed from an execution engine. The new wrapper takes over the<br>
+	 * context of the previous one.
+	 */
+	static Module returned(LLVMModuleRef module, Module previous) {
+		return new Module(module, true, previous.context,
+				previous.contextHold);
 	}
 
 	/**
@@ -29,7 +98,7 @@ public class Module {
 	 */
 	public static Module createWithName(String moduleID) {
 		Pointer<Byte> cstr = Pointer.pointerToCString(moduleID);
-		return new Module(LLVMModuleCreateWithName(cstr));
+		return new Module(LLVMModuleCreateWithName(cstr), true, null);
 	}
 
 	/**
@@ -39,22 +108,50 @@ public class Module {
 	 */
 	public static Module createWithNameInContext(String moduleID, Context c) {
 		Pointer<Byte> cstr = Pointer.pointerToCString(moduleID);
-		return new Module(LLVMModuleCreateWithNameInContext(cstr, c.context()));
+		return new Module(LLVMModuleCreateWithNameInContext(cstr, c.context()),
+				true, c);
+	}
+
+	/**
+	 * Destroy a module instance.<br>
+	 * This must be called for every created module or memory will be<br>
+	 * leaked. Does nothing for a module owned by an execution engine or<br>
+	 * obtained from another object; the wrapper remains usable.
+	 */
+	public void dispose() {
+		if (this.cleanable != null) {
+			this.cleanable.clean();
+			if (!this.transferred) {
+				this.module = null;
+			}
+		}
 	}
 
 	@Override
-	public void finalize() {
+	public void close() {
 		this.dispose();
 	}
 
 	/**
-	 * Destroy a module instance.<br>
-	 * This must be called for every created module or memory will be<br>
-	 * leaked.
+	 * Hand the module over to a new owner, typically an execution engine,<br>
+	 * which becomes responsible for disposing it and then calling<br>
+	 * nativeFreed().
 	 */
-	public void dispose() {
-		LLVMDisposeModule(this.module);
-		this.module = null;
+	void transferOwnership() {
+		if (this.cleanable != null) {
+			this.cleanable.release();
+			this.transferred = true;
+		}
+	}
+
+	/**
+	 * Called by the owner the module was transferred to once it freed the<br>
+	 * native module, so that its context may be freed.
+	 */
+	void nativeFreed() {
+		if (this.contextHold != null) {
+			this.contextHold.run();
+		}
 	}
 
 	/**
@@ -155,6 +252,176 @@ public class Module {
 				Pointer.pointerToCString(path));
 	}
 
+	/**
+	 * Writes a module to a new memory buffer.
+	 */
+	public MemoryBuffer writeBitcodeToMemoryBuffer() {
+		return new MemoryBuffer(LLVMWriteBitcodeToMemoryBuffer(this.module));
+	}
+
+	/**
+	 * Writes the bitcode of a module to a channel, such as a socket or a<br>
+	 * file, without going through a temporary file or the Java heap.
+	 */
+	public void writeBitcode(WritableByteChannel channel) throws IOException {
+		MemoryBuffer buf = this.writeBitcodeToMemoryBuffer();
+		try {
+			buf.writeTo(channel);
+		} finally {
+			buf.dispose();
+		}
+	}
+
+	/**
+	 * Reads a module from the remaining bitcode bytes of a buffer, e.g. one<br>
+	 * received from another process. A direct buffer is read in place.
+	 */
+	public static Module parseBitcodeInContext(Context c, ByteBuffer bitcode)
+			throws LLVMException {
+		MemoryBuffer buf = MemoryBuffer.createWithBytes(bitcode, "");
+		try {
+			return parseBitcodeInContext(c, buf);
+		} finally {
+			buf.dispose();
+		}
+	}
+
+	/**
+	 * Reads a module from bitcode held in a memory buffer. The buffer is<br>
+	 * not consumed and may be disposed once this returns.
+	 */
+	public static Module parseBitcodeInContext(Context c, MemoryBuffer buf)
+			throws LLVMException {
+		return parseBitcode(c.context(), buf, c);
+	}
+
+	static Module parseBitcodeInContext(LLVMContextRef c, MemoryBuffer buf)
+			throws LLVMException {
+		return parseBitcode(c, buf, null);
+	}
+
+	static Module parseBitcode(LLVMContextRef c, MemoryBuffer buf,
+			Context keep) throws LLVMException {
+		Pointer<Pointer<Byte>> ppByte = Pointer.pointerToCStrings("");
+		Pointer<LLVMModuleRef> pMod = Pointer
+				.allocateTypedPointer(LLVMModuleRef.class);
+		int retval = LLVMParseBitcodeInContext(c, buf.buffer(),
+				pMod, ppByte);
+		if (retval != 0) {
+			Pointer<Byte> pByte = ppByte.getPointer(Byte.class);
+			final String message = pByte.getCString();
+			LLVMDisposeMessage(pByte);
+			throw new LLVMException(message);
+		}
+		return new Module(pMod.get(), true, keep);
+	}
+
+	/**
+	 * Reads a module from a bitcode file, mapped into memory rather than<br>
+	 * copied onto the heap. Every function is materialized up front, after<br>
+	 * which the file is no longer needed.
+	 */
+	public static Module parseBitcodeInContext(Context c, File file)
+			throws IOException, LLVMException {
+		MemoryBuffer buf = MemoryBuffer.map(file);
+		try {
+			return parseBitcodeInContext(c, buf);
+		} finally {
+			buf.dispose();
+		}
+	}
+
+	/**
+	 * Reads a module from bitcode held in a memory buffer, deferring the<br>
+	 * materialization of function bodies until they are needed, e.g. by<br>
+	 * an execution engine. The module takes ownership of the buffer.
+	 */
+	public static Module getBitcodeModuleInContext(Context c, MemoryBuffer buf)
+			throws LLVMException {
+		Pointer<Pointer<Byte>> ppByte = Pointer.pointerToCStrings("");
+		Pointer<LLVMModuleRef> pMod = Pointer
+				.allocateTypedPointer(LLVMModuleRef.class);
+		int retval = LLVMGetBitcodeModuleInContext(c.context(), buf.buffer(),
+				pMod, ppByte);
+		if (retval != 0) {
+			/* On failure the buffer still belongs to the caller. */
+			Pointer<Byte> pByte = ppByte.getPointer(Byte.class);
+			final String message = pByte.getCString();
+			LLVMDisposeMessage(pByte);
+			throw new LLVMException(message);
+		}
+		buf.transferOwnership();
+		Module m = new Module(pMod.get(), true, c);
+		m.source = buf;
+		return m;
+	}
+
+	/**
+	 * Loads a module lazily from a bitcode file mapped into memory. Only the<br>
+	 * module header and symbol table are read now; function bodies are<br>
+	 * paged in and parsed when first materialized. The file stays mapped<br>
+	 * for as long as the module is reachable.
+	 */
+	public static Module getBitcodeModuleInContext(Context c, File file)
+			throws IOException, LLVMException {
+		MemoryBuffer buf = MemoryBuffer.map(file);
+		try {
+			return getBitcodeModuleInContext(c, buf);
+		} catch (LLVMException e) {
+			buf.dispose();
+			throw e;
+		}
+	}
+
+	/**
+	 * Parses a module from textual IR (the .ll format) in one native call.<br>
+	 * Parse errors are reported with their line and column.
+	 */
+	public static Module parseIRInContext(Context c, CharSequence ir)
+			throws LLVMException {
+		byte[] text = ir.toString().getBytes(StandardCharsets.UTF_8);
+		/* The parser needs a terminating NUL just past the end. */
+		Pointer<Byte> data = Pointer.allocateBytes(text.length + 1);
+		data.setBytes(text);
+		data.setByteAtOffset(text.length, (byte) 0);
+		try {
+			return parseIRInContext(c, new MemoryBuffer(
+					LLVMCreateMemoryBufferWithMemoryRange(data, text.length,
+							Pointer.pointerToCString(""), 1)));
+		} finally {
+			/* The buffer only borrows the text; free it once parsed. */
+			data.release();
+		}
+	}
+
+	/**
+	 * Parses a module from a textual IR file. Large files are mapped into<br>
+	 * memory by LLVM instead of being read.
+	 */
+	public static Module parseIRInContext(Context c, File file)
+			throws LLVMException {
+		return parseIRInContext(c,
+				MemoryBuffer.createWithContentsOfFile(file.getPath()));
+	}
+
+	/* Consumes the buffer, whether or not parsing succeeds. */
+	private static Module parseIRInContext(Context c, MemoryBuffer buf)
+			throws LLVMException {
+		buf.transferOwnership();
+		Pointer<Pointer<Byte>> ppByte = Pointer.pointerToCStrings("");
+		Pointer<LLVMModuleRef> pMod = Pointer
+				.allocateTypedPointer(LLVMModuleRef.class);
+		int retval = LLVMParseIRInContext(c.context(), buf.buffer(), pMod,
+				ppByte);
+		if (retval != 0) {
+			Pointer<Byte> pByte = ppByte.getPointer(Byte.class);
+			final String message = pByte.getCString();
+			LLVMDisposeMessage(pByte);
+			throw new LLVMException(message);
+		}
+		return new Module(pMod.get(), true, c);
+	}
+
 	/**
 	 * Set inline assembly for a module.<br>
 	 * 
@@ -170,14 +437,58 @@ public class Module {
 	}
 
 	public Value addGlobal(TypeRef ty, String name) {
-		return new Value(LLVMAddGlobal(this.module(), ty.type(),
-				Pointer.pointerToCString(name)));
+		return this.addedGlobal(new Value(LLVMAddGlobal(this.module(),
+				ty.type(), Pointer.pointerToCString(name))));
 	}
 
 	public Value addGlobalInAddressSpace(TypeRef ty, String name,
 			int AddressSpace) {
-		return new Value(LLVMAddGlobalInAddressSpace(this.module(), ty.type(),
-				Pointer.pointerToCString(name), AddressSpace));
+		return this.addedGlobal(new Value(LLVMAddGlobalInAddressSpace(
+				this.module(), ty.type(), Pointer.pointerToCString(name),
+				AddressSpace)));
+	}
+
+	private Value addedGlobal(Value g) {
+		SymbolTable t = this.symbolsIfBuilt();
+		if (t != null) {
+			t.addedGlobal(Pointer.getPeer(g.value()));
+		}
+		return g;
+	}
+
+	/**
+	 * Returns the named global variable, if the module has one. Lookups go<br>
+	 * through a table of the module's symbols, built on the first call and<br>
+	 * kept current by the wrappers, so a lookup makes no native call and a<br>
+	 * miss no exception. A global created, deleted or renamed other than<br>
+	 * through the wrappers, e.g. by raw LLVMLibrary calls, leaves the table<br>
+	 * stale; use getNamedFunction() or getNamedGlobal() for an<br>
+	 * authoritative answer.
+	 */
+	public Optional<Value> lookupGlobal(String name) {
+		long g = this.symbols().global(name);
+		return g == 0 ? Optional.<Value> empty() : Optional.of(new Value(
+				new LLVMValueRef(g)));
+	}
+
+	/**
+	 * Returns the named function, if the module has one.
+	 *
+	 * @see #lookupGlobal(String)
+	 */
+	public Optional<Value> lookupFunction(String name) {
+		long f = this.symbols().function(name);
+		return f == 0 ? Optional.<Value> empty() : Optional.of(new Value(
+				new LLVMValueRef(f)));
+	}
+
+	SymbolTable symbols() {
+		return SymbolTable.of(Pointer.getPeer(this.module));
+	}
+
+	private SymbolTable symbolsIfBuilt() {
+		return SymbolTable.isEmpty() ? null : SymbolTable.peek(Pointer
+				.getPeer(this.module));
 	}
 
 	public Value getNamedGlobal(String name) {
@@ -204,21 +515,44 @@ public class Module {
 	 * @see llvm::Function::Create()
 	 */
 	public Value addFunction(String name, TypeRef functionTy) {
-		return new Value(LLVMAddFunction(this.module,
-				Pointer.pointerToCString(name), functionTy.type()));
+		return this.addFunction(name, functionTy.type());
 	}
 
+	/**
+	 * Returns the named function, adding a declaration of the given type if<br>
+	 * the module has none.
+	 */
 	public Value addOrInsertFunction(String name, TypeRef functionTy) {
-		try {
-			return this.getNamedFunction(name);
-		} catch (LLVMException e) {
-			return this.addFunction(name, functionTy);
+		long f = this.symbols().function(name);
+		if (f != 0) {
+			return new Value(new LLVMValueRef(f));
+		}
+		return this.addFunction(name, functionTy);
+	}
+
+	/**
+	 * Declare every function of a map of names to function types that the<br>
+	 * module lacks, e.g. the prototypes of runtime helpers. Returns the<br>
+	 * functions, existing or new, in the order of the map.
+	 */
+	public Map<String, Value> addOrInsertFunctions(
+			Map<String, TypeRef> prototypes) {
+		Map<String, Value> functions = new LinkedHashMap<String, Value>();
+		for (Map.Entry<String, TypeRef> e : prototypes.entrySet()) {
+			functions.put(e.getKey(),
+					this.addOrInsertFunction(e.getKey(), e.getValue()));
 		}
+		return functions;
 	}
 
 	public Value addFunction(String name, LLVMTypeRef functionTy) {
-		return new Value(LLVMAddFunction(this.module,
+		Value f = new Value(LLVMAddFunction(this.module,
 				Pointer.pointerToCString(name), functionTy));
+		SymbolTable t = this.symbolsIfBuilt();
+		if (t != null) {
+			t.addedFunction(Pointer.getPeer(f.value()));
+		}
+		return f;
 	}
 
 	/**
@@ -250,6 +584,41 @@ public class Module {
 		}
 	}
 
+	/**
+	 * Returns a view of the functions of the module, declarations included.<br>
+	 * Its spliterator splits evenly over a snapshot of the function list,<br>
+	 * for read-only analyses on parallel streams:
+	 *
+	 * <pre>
+	 * StreamSupport.stream(m.functions().spliterator(), true)
+	 * </pre>
+	 */
+	public Iterable<Value> functions() {
+		final long m = Pointer.getPeer(this.module);
+		return new NativeList<Value>() {
+			@Override
+			long first() {
+				return LLVMRaw.LLVMGetFirstFunction(m);
+			}
+
+			@Override
+			long next(long f) {
+				return LLVMRaw.LLVMGetNextFunction(f);
+			}
+
+			@Override
+			Value wrap(long f) {
+				return new Value(new LLVMValueRef(f));
+			}
+
+			@Override
+			public Spliterator<Value> spliterator() {
+				long[] handles = this.toHandles();
+				return new SnapshotSpliterator(handles, 0, handles.length);
+			}
+		};
+	}
+
 	/**
 	 * Obtain an iterator to the last Function in a Module.
 	 * 
@@ -268,4 +637,24 @@ public class Module {
         LLVMAddNamedMetadataOperand(this.module, Pointer.pointerToCString(name), 
             metadata.value());
     }
+
+	private static final class Disposer implements Runnable {
+		private final LLVMModuleRef module;
+
+		private final Runnable contextHold;
+
+		Disposer(LLVMModuleRef module, Runnable contextHold) {
+			this.module = module;
+			this.contextHold = contextHold;
+		}
+
+		public void run() {
+			SymbolTable.forget(Pointer.getPeer(this.module));
+			LLVMDisposeModule(this.module);
+			if (this.contextHold != null) {
+				this.contextHold.run();
+			}
+		}
+	}
+
 }
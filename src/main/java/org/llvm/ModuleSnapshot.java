@@ -0,0 +1,524 @@
+package org.llvm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bridj.Pointer;
+import org.llvm.binding.LLVMLibrary.LLVMTypeKind;
+import org.llvm.binding.LLVMLibrary.LLVMValueRef;
+import org.llvm.binding.LLVMRaw;
+
+/**
+ * An immutable copy of the structure of a module in primitive arrays:<br>
+ * functions, their parameters and basic blocks, the instructions of each<br>
+ * block with their opcode, type and operands. It is taken in one walk over<br>
+ * the module; afterwards no query makes a native call, so analyses can run<br>
+ * on any thread, in parallel, without holding the context, and stay valid<br>
+ * after the module is changed or disposed.
+ * <p>
+ * Every entity is numbered densely in module order: functions, globals,<br>
+ * parameters, blocks, instructions, constants and types each have their<br>
+ * own index space. The blocks of function f are getBlockBegin(f) to<br>
+ * getBlockEnd(f) - 1, the instructions of block b getInstructionBegin(b)<br>
+ * to getInstructionEnd(b) - 1, and so on. Operands are encoded as refs,<br>
+ * whose kind (REF_INSTRUCTION, REF_CONSTANT, ...) is given by refKind()<br>
+ * and whose index in the space of that kind by refIndex().
+ * <p>
+ * Incoming blocks of phi nodes are not operands in LLVM and are not<br>
+ * recorded.
+ */
+public final class ModuleSnapshot {
+
+	public static final int REF_INSTRUCTION = 0;
+
+	public static final int REF_PARAM = 1;
+
+	public static final int REF_BLOCK = 2;
+
+	public static final int REF_FUNCTION = 3;
+
+	public static final int REF_GLOBAL = 4;
+
+	public static final int REF_CONSTANT = 5;
+
+	/** Inline assembly, metadata and other values without an index. */
+	public static final int REF_OTHER = 6;
+
+	/** An operand which is not set. */
+	public static final int NO_REF = -1;
+
+	private static final int KIND_SHIFT = 28;
+
+	private static final int INDEX_MASK = (1 << KIND_SHIFT) - 1;
+
+	private final String[] functionNames;
+
+	private final Map<String, Integer> functionIndex;
+
+	private final int[] functionTypes;
+
+	private final int[] paramStart;
+
+	private final int[] blockStart;
+
+	private final String[] globalNames;
+
+	private final int[] blockFunction;
+
+	private final int[] instructionStart;
+
+	private final int[] instructionBlock;
+
+	private final int[] opcodes;
+
+	private final int[] instructionTypes;
+
+	private final int[] operandStart;
+
+	private final int[] operands;
+
+	private final long[] instructionAddresses;
+
+	private final int[] constantTypes;
+
+	private final boolean[] constantIsInt;
+
+	private final long[] constantValues;
+
+	private final int[] typeKinds;
+
+	private final int[] typeWidths;
+
+	private ModuleSnapshot(Walk w) {
+		int f = w.functions.size();
+		this.functionNames = Arrays.copyOf(w.functionNames, f);
+		this.functionTypes = w.functionTypes.toArray();
+		this.paramStart = w.paramStart.toArray();
+		this.blockStart = w.blockStart.toArray();
+		this.globalNames = Arrays.copyOf(w.globalNames, w.globals.size());
+		this.blockFunction = w.blockFunction.toArray();
+		this.instructionStart = w.instructionStart.toArray();
+		this.instructionBlock = w.instructionBlock.toArray();
+		this.opcodes = w.opcodes.toArray();
+		this.instructionTypes = w.instructionTypes.toArray();
+		this.operandStart = w.operandStart.toArray();
+		this.operands = w.operands.toArray();
+		this.instructionAddresses = Arrays.copyOf(w.instructionAddresses,
+				w.instructions.size());
+		int c = w.constants.size();
+		this.constantTypes = w.constantTypes.toArray();
+		this.constantIsInt = Arrays.copyOf(w.constantIsInt, c);
+		this.constantValues = Arrays.copyOf(w.constantValues, c);
+		this.typeKinds = w.typeKinds.toArray();
+		this.typeWidths = w.typeWidths.toArray();
+
+		this.functionIndex = new HashMap<String, Integer>(f * 2);
+		for (int i = 0; i < f; i++) {
+			this.functionIndex.put(this.functionNames[i], i);
+		}
+	}
+
+	/**
+	 * Take a snapshot of a module. The module must not be changed by<br>
+	 * another thread meanwhile.
+	 */
+	public static ModuleSnapshot of(Module m) {
+		Walk w = new Walk();
+		w.walk(Pointer.getPeer(m.module()));
+		return new ModuleSnapshot(w);
+	}
+
+	public static int refKind(int ref) {
+		return ref >>> KIND_SHIFT;
+	}
+
+	public static int refIndex(int ref) {
+		return ref & INDEX_MASK;
+	}
+
+	static int ref(int kind, int index) {
+		if (index > INDEX_MASK) {
+			throw new IllegalStateException("module too large to snapshot");
+		}
+		return (kind << KIND_SHIFT) | index;
+	}
+
+	// Functions
+
+	public int getFunctionCount() {
+		return this.functionNames.length;
+	}
+
+	public String getFunctionName(int f) {
+		return this.functionNames[f];
+	}
+
+	/**
+	 * Returns the index of the named function, or -1.
+	 */
+	public int findFunction(String name) {
+		Integer f = this.functionIndex.get(name);
+		return f == null ? -1 : f;
+	}
+
+	/**
+	 * Returns the type of the function value, a pointer to its function<br>
+	 * type.
+	 */
+	public int getFunctionType(int f) {
+		return this.functionTypes[f];
+	}
+
+	public boolean isDeclaration(int f) {
+		return this.blockStart[f] == this.blockStart[f + 1];
+	}
+
+	public int getParamBegin(int f) {
+		return this.paramStart[f];
+	}
+
+	public int getParamEnd(int f) {
+		return this.paramStart[f + 1];
+	}
+
+	public int getBlockBegin(int f) {
+		return this.blockStart[f];
+	}
+
+	public int getBlockEnd(int f) {
+		return this.blockStart[f + 1];
+	}
+
+	// Globals
+
+	public int getGlobalCount() {
+		return this.globalNames.length;
+	}
+
+	public String getGlobalName(int g) {
+		return this.globalNames[g];
+	}
+
+	// Basic blocks
+
+	public int getBlockCount() {
+		return this.blockFunction.length;
+	}
+
+	public int getBlockFunction(int b) {
+		return this.blockFunction[b];
+	}
+
+	public int getInstructionBegin(int b) {
+		return this.instructionStart[b];
+	}
+
+	public int getInstructionEnd(int b) {
+		return this.instructionStart[b + 1];
+	}
+
+	// Instructions
+
+	public int getInstructionCount() {
+		return this.opcodes.length;
+	}
+
+	public int getInstructionBlock(int i) {
+		return this.instructionBlock[i];
+	}
+
+	public int getInstructionFunction(int i) {
+		return this.blockFunction[this.instructionBlock[i]];
+	}
+
+	/**
+	 * Returns the opcode, the value of an LLVMOpcode constant.
+	 */
+	public int getOpcode(int i) {
+		return this.opcodes[i];
+	}
+
+	public int getType(int i) {
+		return this.instructionTypes[i];
+	}
+
+	public int getOperandCount(int i) {
+		return this.operandStart[i + 1] - this.operandStart[i];
+	}
+
+	/**
+	 * Returns the ref of operand k of instruction i, or NO_REF.
+	 */
+	public int getOperand(int i, int k) {
+		return this.operands[this.operandStart[i] + k];
+	}
+
+	/**
+	 * Returns the live instruction the snapshot was taken from. Valid only<br>
+	 * while that instruction exists.
+	 */
+	public Value getInstructionValue(int i) {
+		return new Value(new LLVMValueRef(this.instructionAddresses[i]));
+	}
+
+	// Constants
+
+	public int getConstantCount() {
+		return this.constantTypes.length;
+	}
+
+	public int getConstantType(int c) {
+		return this.constantTypes[c];
+	}
+
+	public boolean isConstantInt(int c) {
+		return this.constantIsInt[c];
+	}
+
+	/**
+	 * Returns the sign-extended value of an integer constant.
+	 */
+	public long getConstantIntValue(int c) {
+		if (!this.constantIsInt[c]) {
+			throw new IllegalArgumentException("constant " + c
+					+ " is not an integer");
+		}
+		return this.constantValues[c];
+	}
+
+	// Types
+
+	public int getTypeCount() {
+		return this.typeKinds.length;
+	}
+
+	/**
+	 * Returns the kind of a type, the value of an LLVMTypeKind constant.
+	 */
+	public int getTypeKind(int t) {
+		return this.typeKinds[t];
+	}
+
+	/**
+	 * Returns the width of an integer type, 0 for other types.
+	 */
+	public int getIntTypeWidth(int t) {
+		return this.typeWidths[t];
+	}
+
+	/* The walk over the module; discarded once the arrays are built. */
+	private static final class Walk {
+
+		private static final int INTEGER_TYPE_KIND = (int) LLVMTypeKind.LLVMIntegerTypeKind
+				.value();
+
+		final AddressTable functions = new AddressTable(64);
+
+		final AddressTable globals = new AddressTable(64);
+
+		final AddressTable params = new AddressTable(256);
+
+		final AddressTable blocks = new AddressTable(256);
+
+		final AddressTable instructions = new AddressTable(4096);
+
+		final AddressTable constants = new AddressTable(1024);
+
+		final AddressTable types = new AddressTable(64);
+
+		final AddressTable others = new AddressTable(16);
+
+		String[] functionNames = new String[16];
+
+		final IntArray functionTypes = new IntArray();
+
+		final IntArray paramStart = new IntArray();
+
+		final IntArray blockStart = new IntArray();
+
+		String[] globalNames = new String[16];
+
+		final IntArray blockFunction = new IntArray();
+
+		final IntArray instructionStart = new IntArray();
+
+		final IntArray instructionBlock = new IntArray();
+
+		final IntArray opcodes = new IntArray();
+
+		final IntArray instructionTypes = new IntArray();
+
+		final IntArray operandStart = new IntArray();
+
+		final IntArray operands = new IntArray();
+
+		long[] instructionAddresses = new long[256];
+
+		final IntArray constantTypes = new IntArray();
+
+		boolean[] constantIsInt = new boolean[64];
+
+		long[] constantValues = new long[64];
+
+		final IntArray typeKinds = new IntArray();
+
+		final IntArray typeWidths = new IntArray();
+
+		void walk(long module) {
+			for (long g = LLVMRaw.LLVMGetFirstGlobal(module); g != 0; g = LLVMRaw
+					.LLVMGetNextGlobal(g)) {
+				int index = this.globals.add(g);
+				if (index == this.globalNames.length) {
+					this.globalNames = Arrays.copyOf(this.globalNames,
+							index * 2);
+				}
+				this.globalNames[index] = name(g);
+			}
+
+			/* Number everything first; operands may refer forward. */
+			for (long f = LLVMRaw.LLVMGetFirstFunction(module); f != 0; f = LLVMRaw
+					.LLVMGetNextFunction(f)) {
+				int fn = this.functions.add(f);
+				if (fn == this.functionNames.length) {
+					this.functionNames = Arrays.copyOf(this.functionNames,
+							fn * 2);
+				}
+				this.functionNames[fn] = name(f);
+				this.functionTypes.add(this.type(LLVMRaw.LLVMTypeOf(f)));
+
+				this.paramStart.add(this.params.size());
+				for (long p = LLVMRaw.LLVMGetFirstParam(f); p != 0; p = LLVMRaw
+						.LLVMGetNextParam(p)) {
+					this.params.add(p);
+				}
+
+				this.blockStart.add(this.blocks.size());
+				for (long bb = LLVMRaw.LLVMGetFirstBasicBlock(f); bb != 0; bb = LLVMRaw
+						.LLVMGetNextBasicBlock(bb)) {
+					int b = this.blocks.add(bb);
+					this.blockFunction.add(fn);
+					this.instructionStart.add(this.instructions.size());
+					for (long i = LLVMRaw.LLVMGetFirstInstruction(bb); i != 0; i = LLVMRaw
+							.LLVMGetNextInstruction(i)) {
+						int inst = this.instructions.add(i);
+						if (inst == this.instructionAddresses.length) {
+							this.instructionAddresses = Arrays.copyOf(
+									this.instructionAddresses, inst * 2);
+						}
+						this.instructionAddresses[inst] = i;
+						this.instructionBlock.add(b);
+						this.opcodes.add(LLVMRaw.LLVMGetInstructionOpcode(i));
+						this.instructionTypes.add(this
+								.type(LLVMRaw.LLVMTypeOf(i)));
+					}
+				}
+			}
+			this.paramStart.add(this.params.size());
+			this.blockStart.add(this.blocks.size());
+			this.instructionStart.add(this.instructions.size());
+
+			int n = this.instructions.size();
+			for (int inst = 0; inst < n; inst++) {
+				long i = this.instructionAddresses[inst];
+				this.operandStart.add(this.operands.size());
+				int count = LLVMRaw.LLVMGetNumOperands(i);
+				for (int k = 0; k < count; k++) {
+					this.operands.add(this.ref(LLVMRaw.LLVMGetOperand(i, k)));
+				}
+			}
+			this.operandStart.add(this.operands.size());
+		}
+
+		private int ref(long v) {
+			if (v == 0) {
+				return NO_REF;
+			}
+			int index = this.instructions.get(v);
+			if (index >= 0) {
+				return ModuleSnapshot.ref(REF_INSTRUCTION, index);
+			}
+			if ((index = this.constants.get(v)) >= 0) {
+				return ModuleSnapshot.ref(REF_CONSTANT, index);
+			}
+			if ((index = this.params.get(v)) >= 0) {
+				return ModuleSnapshot.ref(REF_PARAM, index);
+			}
+			if ((index = this.blocks.get(v)) >= 0) {
+				return ModuleSnapshot.ref(REF_BLOCK, index);
+			}
+			if ((index = this.functions.get(v)) >= 0) {
+				return ModuleSnapshot.ref(REF_FUNCTION, index);
+			}
+			if ((index = this.globals.get(v)) >= 0) {
+				return ModuleSnapshot.ref(REF_GLOBAL, index);
+			}
+			if (LLVMRaw.LLVMIsAConstant(v) != 0) {
+				return ModuleSnapshot.ref(REF_CONSTANT, this.constant(v));
+			}
+			return ModuleSnapshot.ref(REF_OTHER, this.others.add(v));
+		}
+
+		private int constant(long v) {
+			int c = this.constants.add(v);
+			if (c == this.constantValues.length) {
+				this.constantValues = Arrays.copyOf(this.constantValues, c * 2);
+				this.constantIsInt = Arrays.copyOf(this.constantIsInt, c * 2);
+			}
+			int t = this.type(LLVMRaw.LLVMTypeOf(v));
+			this.constantTypes.add(t);
+			/* Wider integers do not fit the long. */
+			if (LLVMRaw.LLVMIsAConstantInt(v) != 0
+					&& this.typeWidths.get(t) <= 64) {
+				this.constantIsInt[c] = true;
+				this.constantValues[c] = LLVMRaw.LLVMConstIntGetSExtValue(v);
+			}
+			return c;
+		}
+
+		private int type(long ty) {
+			int size = this.types.size();
+			int t = this.types.add(ty);
+			if (t == size) {
+				int kind = LLVMRaw.LLVMGetTypeKind(ty);
+				this.typeKinds.add(kind);
+				this.typeWidths.add(kind == INTEGER_TYPE_KIND ? LLVMRaw
+						.LLVMGetIntTypeWidth(ty) : 0);
+			}
+			return t;
+		}
+
+		private static String name(long v) {
+			return Pointer.pointerToAddress(LLVMRaw.LLVMGetValueName(v),
+					Byte.class).getCString();
+		}
+	}
+
+	/* A growable int array. */
+	static final class IntArray {
+
+		private int[] data = new int[64];
+
+		private int size;
+
+		void add(int value) {
+			if (this.size == this.data.length) {
+				this.data = Arrays.copyOf(this.data, this.size * 2);
+			}
+			this.data[this.size++] = value;
+		}
+
+		int get(int index) {
+			return this.data[index];
+		}
+
+		int size() {
+			return this.size;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(this.data, this.size);
+		}
+	}
+
+}
@@ -0,0 +1,212 @@
+package org.llvm;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Frees native objects whose wrappers are no longer reachable.<br>
+ * Wrappers register the dispose function of the object they own and call<br>
+ * Cleanable.clean() from dispose(). Unlike finalize(), this keeps the<br>
+ * wrappers off the finalizer queue; the background thread only handles<br>
+ * objects that were neither disposed nor freed by a NativeScope.
+ */
+final class NativeCleaner {
+
+	private static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<Object>();
+
+	/* Keeps the phantom references reachable until they are cleaned. */
+	private static final Set<Cleanable> LIVE = Collections
+			.newSetFromMap(new ConcurrentHashMap<Cleanable, Boolean>());
+
+	/* Live objects per wrapper class, for LLVMStatistics. */
+	private static final ConcurrentMap<Class<?>, AtomicLong> COUNTS = new ConcurrentHashMap<Class<?>, AtomicLong>();
+
+	/* Estimated native bytes held by the live objects. */
+	private static final AtomicLong BYTES = new AtomicLong();
+
+	/* Objects freed by the background thread, i.e. never disposed. */
+	private static final AtomicLong RECLAIMED = new AtomicLong();
+
+	/* Objects registered while sampling, to pick every n-th of them. */
+	private static final AtomicLong REGISTERED = new AtomicLong();
+
+	/* Record the allocation site of every n-th object; 0 records none. */
+	private static volatile int sampleRate;
+
+	static {
+		Thread t = new Thread("llvm-cleaner") {
+			@Override
+			public void run() {
+				while (true) {
+					try {
+						if (((Cleanable) QUEUE.remove()).clean()) {
+							RECLAIMED.incrementAndGet();
+						}
+					} catch (InterruptedException e) {
+						/* Keep going; the thread lives as long as the VM. */
+					}
+				}
+			}
+		};
+		t.setDaemon(true);
+		t.start();
+	}
+
+	private NativeCleaner() {
+	}
+
+	/**
+	 * Register the action freeing the native object owned by a wrapper. The<br>
+	 * action must not refer to the wrapper itself. If a NativeScope is open<br>
+	 * on the current thread, the object is also freed when it closes.
+	 */
+	static Cleanable register(Object owner, Runnable action) {
+		return register(owner, action, 0);
+	}
+
+	/**
+	 * Register the action freeing a native object which holds about the<br>
+	 * given number of bytes.
+	 */
+	static Cleanable register(Object owner, Runnable action, long bytes) {
+		Class<?> kind = owner.getClass();
+		NativeScope scope = NativeScope.current();
+		int rate = sampleRate;
+		StackTraceElement[] site = null;
+		if ((scope != null && scope.isStrict())
+				|| (rate > 0 && REGISTERED.incrementAndGet() % rate == 0)) {
+			site = new Throwable().getStackTrace();
+		}
+
+		Cleanable c = new Cleanable(owner, action, kind, counter(kind), bytes,
+				site);
+		LIVE.add(c);
+		c.count.incrementAndGet();
+		BYTES.addAndGet(bytes);
+		if (scope != null) {
+			scope.add(c);
+		}
+		return c;
+	}
+
+	static void setSampleRate(int rate) {
+		if (rate < 0) {
+			throw new IllegalArgumentException("negative sample rate " + rate);
+		}
+		sampleRate = rate;
+	}
+
+	static int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * Returns the objects which are neither freed nor released.
+	 */
+	static List<Cleanable> live() {
+		return new ArrayList<Cleanable>(LIVE);
+	}
+
+	static long reclaimed() {
+		return RECLAIMED.get();
+	}
+
+	/**
+	 * Returns the number of objects of a wrapper class which are neither<br>
+	 * freed nor released.
+	 */
+	static long liveCount(Class<?> kind) {
+		AtomicLong n = COUNTS.get(kind);
+		return n == null ? 0 : n.get();
+	}
+
+	/**
+	 * Returns the estimated native bytes held by the live objects.
+	 */
+	static long liveBytes() {
+		return BYTES.get();
+	}
+
+	private static AtomicLong counter(Class<?> kind) {
+		AtomicLong n = COUNTS.get(kind);
+		if (n == null) {
+			AtomicLong created = new AtomicLong();
+			n = COUNTS.putIfAbsent(kind, created);
+			if (n == null) {
+				n = created;
+			}
+		}
+		return n;
+	}
+
+	static final class Cleanable extends PhantomReference<Object> {
+
+		private Runnable action;
+
+		final Class<?> kind;
+
+		private final AtomicLong count;
+
+		private final long bytes;
+
+		/* Where the object was created, if sampled. */
+		final StackTraceElement[] site;
+
+		final long created = System.currentTimeMillis();
+
+		Cleanable(Object owner, Runnable action, Class<?> kind,
+				AtomicLong count, long bytes, StackTraceElement[] site) {
+			super(owner, QUEUE);
+			this.action = action;
+			this.kind = kind;
+			this.count = count;
+			this.bytes = bytes;
+			this.site = site;
+		}
+
+		/**
+		 * Free the native object. Does nothing if it was already freed or<br>
+		 * released. Returns true if the object was freed by this call.
+		 */
+		boolean clean() {
+			Runnable a = this.take();
+			if (a != null) {
+				a.run();
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Give up ownership without freeing the native object, e.g. when a<br>
+		 * module is handed over to an execution engine.
+		 */
+		void release() {
+			this.take();
+		}
+
+		private Runnable take() {
+			Runnable a;
+			synchronized (this) {
+				a = this.action;
+				this.action = null;
+			}
+			if (a != null) {
+				LIVE.remove(this);
+				this.count.decrementAndGet();
+				BYTES.addAndGet(-this.bytes);
+				this.clear();
+			}
+			return a;
+		}
+
+	}
+
+}
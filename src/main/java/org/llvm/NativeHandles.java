@@ -0,0 +1,207 @@
+package org.llvm;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the native objects owned by the wrappers (contexts, modules,<br>
+ * builders, generic values, ...) to find leaks. Every object is tracked<br>
+ * from creation until it is disposed, freed by a NativeScope, handed over<br>
+ * to another owner or reclaimed after its wrapper became unreachable.<br>
+ * Objects reclaimed that way were leaked by the program; only the garbage<br>
+ * collector freed them, possibly much later.
+ * <p>
+ * Recording where each object was created costs a stack walk, so it is<br>
+ * off by default; setSampleRate(n) records the site of every n-th object.<br>
+ * Objects created in a strict NativeScope are always recorded.
+ */
+public final class NativeHandles {
+
+	private static ScheduledExecutorService reporter;
+
+	private NativeHandles() {
+	}
+
+	/**
+	 * A native object which is still owned by its wrapper.
+	 */
+	public static final class Handle {
+
+		private final Class<?> type;
+
+		private final StackTraceElement[] site;
+
+		private final long created;
+
+		Handle(Class<?> type, StackTraceElement[] site, long created) {
+			this.type = type;
+			this.site = site;
+			this.created = created;
+		}
+
+		/**
+		 * The class of the wrapper, e.g. Module.
+		 */
+		public Class<?> getType() {
+			return this.type;
+		}
+
+		/**
+		 * The stack at creation, or null if the object was not sampled.
+		 */
+		public StackTraceElement[] getSite() {
+			return this.site == null ? null : this.site.clone();
+		}
+
+		/**
+		 * Creation time in milliseconds since the epoch.
+		 */
+		public long getCreated() {
+			return this.created;
+		}
+
+		@Override
+		public String toString() {
+			return this.type.getSimpleName() + " created at "
+					+ NativeHandles.site(this.site);
+		}
+	}
+
+	/**
+	 * Record the creation site of every n-th native object; 1 records all<br>
+	 * of them, 0 none.
+	 */
+	public static void setSampleRate(int n) {
+		NativeCleaner.setSampleRate(n);
+	}
+
+	public static int getSampleRate() {
+		return NativeCleaner.getSampleRate();
+	}
+
+	/**
+	 * Returns the native objects which are still owned, oldest first.
+	 */
+	public static List<Handle> outstanding() {
+		List<NativeCleaner.Cleanable> live = NativeCleaner.live();
+		List<Handle> handles = new ArrayList<Handle>(live.size());
+		for (NativeCleaner.Cleanable c : live) {
+			handles.add(new Handle(c.kind, c.site, c.created));
+		}
+		Collections.sort(handles, new Comparator<Handle>() {
+			public int compare(Handle a, Handle b) {
+				return a.created < b.created ? -1 : a.created == b.created ? 0
+						: 1;
+			}
+		});
+		return handles;
+	}
+
+	/**
+	 * Returns the number of native objects still owned per wrapper class.
+	 */
+	public static Map<Class<?>, Integer> countByType() {
+		Map<Class<?>, Integer> counts = new HashMap<Class<?>, Integer>();
+		for (NativeCleaner.Cleanable c : NativeCleaner.live()) {
+			Integer n = counts.get(c.kind);
+			counts.put(c.kind, n == null ? 1 : n + 1);
+		}
+		return counts;
+	}
+
+	/**
+	 * Returns the number of native objects freed only because their<br>
+	 * wrapper became unreachable, i.e. leaked by the program.
+	 */
+	public static long getReclaimedCount() {
+		return NativeCleaner.reclaimed();
+	}
+
+	/**
+	 * Describes the outstanding native objects grouped by type and, for<br>
+	 * sampled objects, by creation site, largest groups first.
+	 */
+	public static String report() {
+		final Map<String, Integer> groups = new HashMap<String, Integer>();
+		int total = 0;
+		for (NativeCleaner.Cleanable c : NativeCleaner.live()) {
+			String key = c.kind.getSimpleName() + " created at "
+					+ site(c.site);
+			Integer n = groups.get(key);
+			groups.put(key, n == null ? 1 : n + 1);
+			total++;
+		}
+
+		List<String> keys = new ArrayList<String>(groups.keySet());
+		Collections.sort(keys, new Comparator<String>() {
+			public int compare(String a, String b) {
+				int d = groups.get(b) - groups.get(a);
+				return d != 0 ? d : a.compareTo(b);
+			}
+		});
+
+		StringBuilder sb = new StringBuilder();
+		sb.append(total).append(" outstanding native objects, ")
+				.append(getReclaimedCount())
+				.append(" reclaimed without dispose");
+		for (String key : keys) {
+			sb.append("\n  ").append(groups.get(key)).append(" x ")
+					.append(key);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Print report() to a stream at a fixed rate, from a daemon thread.<br>
+	 * Cancel the returned future to stop.
+	 */
+	public static synchronized ScheduledFuture<?> startReporting(long period,
+			TimeUnit unit, final PrintStream out) {
+		if (reporter == null) {
+			reporter = Executors
+					.newSingleThreadScheduledExecutor(new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "llvm-handle-report");
+							t.setDaemon(true);
+							return t;
+						}
+					});
+		}
+		return reporter.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				out.println(report());
+			}
+		}, period, period, unit);
+	}
+
+	/**
+	 * Returns the first frame of a creation stack outside the bindings.
+	 */
+	static String site(StackTraceElement[] stack) {
+		if (stack == null) {
+			return "<not sampled>";
+		}
+		for (StackTraceElement e : stack) {
+			String cls = e.getClassName();
+			boolean bindings = cls.startsWith("org.llvm.binding.")
+					|| (cls.startsWith("org.llvm.") && cls.indexOf('.',
+							"org.llvm.".length()) < 0);
+			if (!bindings) {
+				return e.toString();
+			}
+		}
+		return stack.length > 0 ? stack[stack.length - 1].toString()
+				: "<unknown>";
+	}
+
+}
@@ -0,0 +1,145 @@
+package org.llvm;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * A view of one of LLVM's intrusive lists (functions of a module, blocks of<br>
+ * a function, instructions of a block, uses of a value), walked with the<br>
+ * raw bindings so that the end of the list is a null address rather than<br>
+ * an exception. A wrapper is created only for the elements returned.
+ * <p>
+ * Iterators fetch the next element before returning the current one, so<br>
+ * the element just returned may be erased from its parent. Spliterators<br>
+ * split by buffering a batch of elements; lists which can be split evenly<br>
+ * override spliterator().
+ */
+abstract class NativeList<T> implements Iterable<T> {
+
+	abstract long first();
+
+	abstract long next(long current);
+
+	abstract T wrap(long handle);
+
+	@Override
+	public Iterator<T> iterator() {
+		return new Iterator<T>() {
+			private long current = NativeList.this.first();
+
+			public boolean hasNext() {
+				return this.current != 0;
+			}
+
+			public T next() {
+				long h = this.current;
+				if (h == 0) {
+					throw new NoSuchElementException();
+				}
+				this.current = NativeList.this.next(h);
+				return NativeList.this.wrap(h);
+			}
+		};
+	}
+
+	@Override
+	public Spliterator<T> spliterator() {
+		return new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+				Spliterator.ORDERED | Spliterator.NONNULL) {
+			private boolean started;
+
+			private long current;
+
+			public boolean tryAdvance(Consumer<? super T> action) {
+				if (!this.started) {
+					this.current = NativeList.this.first();
+					this.started = true;
+				}
+				long h = this.current;
+				if (h == 0) {
+					return false;
+				}
+				this.current = NativeList.this.next(h);
+				action.accept(NativeList.this.wrap(h));
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Returns the addresses of all elements, in order.
+	 */
+	long[] toHandles() {
+		long[] handles = new long[16];
+		int n = 0;
+		for (long h = this.first(); h != 0; h = this.next(h)) {
+			if (n == handles.length) {
+				long[] grown = new long[n * 2];
+				System.arraycopy(handles, 0, grown, 0, n);
+				handles = grown;
+			}
+			handles[n++] = h;
+		}
+		long[] result = new long[n];
+		System.arraycopy(handles, 0, result, 0, n);
+		return result;
+	}
+
+	/**
+	 * A spliterator over a snapshot of the element addresses, which splits<br>
+	 * into halves of known size.
+	 */
+	final class SnapshotSpliterator implements Spliterator<T> {
+
+		private final long[] handles;
+
+		private int index;
+
+		private final int end;
+
+		SnapshotSpliterator(long[] handles, int index, int end) {
+			this.handles = handles;
+			this.index = index;
+			this.end = end;
+		}
+
+		public boolean tryAdvance(Consumer<? super T> action) {
+			if (this.index >= this.end) {
+				return false;
+			}
+			action.accept(NativeList.this.wrap(this.handles[this.index++]));
+			return true;
+		}
+
+		@Override
+		public void forEachRemaining(Consumer<? super T> action) {
+			while (this.index < this.end) {
+				action.accept(NativeList.this.wrap(this.handles[this.index++]));
+			}
+		}
+
+		public Spliterator<T> trySplit() {
+			int mid = (this.index + this.end) >>> 1;
+			if (mid <= this.index) {
+				return null;
+			}
+			SnapshotSpliterator prefix = new SnapshotSpliterator(this.handles,
+					this.index, mid);
+			this.index = mid;
+			return prefix;
+		}
+
+		public long estimateSize() {
+			return this.end - this.index;
+		}
+
+		public int characteristics() {
+			return Spliterator.ORDERED | Spliterator.NONNULL
+					| Spliterator.SIZED | Spliterator.SUBSIZED;
+		}
+	}
+
+}
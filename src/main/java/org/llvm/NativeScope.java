@@ -0,0 +1,127 @@
+package org.llvm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Frees, in one go, every native object created on the current thread while<br>
+ * the scope is open:
+ *
+ * <pre>
+ * try (NativeScope scope = NativeScope.open()) {
+ * 	Module m = Module.createWithName(&quot;tmp&quot;);
+ * 	Builder b = Builder.createBuilder();
+ * 	...
+ * } // b and m are disposed here, in reverse order of creation
+ * </pre>
+ *
+ * Objects disposed explicitly, or handed over to another owner (a module<br>
+ * added to an execution engine), are skipped. Scopes nest and must be<br>
+ * closed in reverse order of opening.
+ * <p>
+ * A strict scope, meant for tests, expects every object created inside it<br>
+ * to be disposed or handed over before it closes. It still frees the<br>
+ * others, then fails with an IllegalStateException naming their types<br>
+ * and creation sites.
+ */
+public final class NativeScope implements AutoCloseable {
+
+	private static final ThreadLocal<NativeScope> CURRENT = new ThreadLocal<NativeScope>();
+
+	private final NativeScope parent;
+
+	private final Thread owner;
+
+	private final boolean strict;
+
+	private List<NativeCleaner.Cleanable> resources = new ArrayList<NativeCleaner.Cleanable>();
+
+	private NativeScope(NativeScope parent, boolean strict) {
+		this.parent = parent;
+		this.owner = Thread.currentThread();
+		this.strict = strict;
+	}
+
+	/**
+	 * Open a new scope on the current thread.
+	 */
+	public static NativeScope open() {
+		return open(false);
+	}
+
+	/**
+	 * Open a new scope on the current thread which fails on close if any<br>
+	 * object created inside it is still owned.
+	 */
+	public static NativeScope openStrict() {
+		return open(true);
+	}
+
+	private static NativeScope open(boolean strict) {
+		NativeScope scope = new NativeScope(CURRENT.get(), strict);
+		CURRENT.set(scope);
+		return scope;
+	}
+
+	boolean isStrict() {
+		return this.strict;
+	}
+
+	static NativeScope current() {
+		return CURRENT.get();
+	}
+
+	void add(NativeCleaner.Cleanable c) {
+		this.resources.add(c);
+	}
+
+	/**
+	 * Dispose every object created inside the scope which is still owned.
+	 */
+	@Override
+	public void close() {
+		if (this.resources == null) {
+			return;
+		}
+		if (Thread.currentThread() != this.owner || CURRENT.get() != this) {
+			throw new IllegalStateException(
+					"scopes must be closed by their thread in reverse order");
+		}
+
+		CURRENT.set(this.parent);
+		List<NativeCleaner.Cleanable> list = this.resources;
+		this.resources = null;
+		List<NativeCleaner.Cleanable> leaked = new ArrayList<NativeCleaner.Cleanable>();
+		for (int i = list.size() - 1; i >= 0; i--) {
+			NativeCleaner.Cleanable c = list.get(i);
+			if (c.clean() && this.strict) {
+				leaked.add(c);
+			}
+		}
+
+		if (!leaked.isEmpty()) {
+			throw new IllegalStateException(leaked.size()
+					+ " native objects outlived a strict scope:"
+					+ describe(leaked));
+		}
+	}
+
+	private static String describe(List<NativeCleaner.Cleanable> leaked) {
+		Map<String, Integer> sites = new TreeMap<String, Integer>();
+		for (NativeCleaner.Cleanable c : leaked) {
+			String key = c.kind.getSimpleName() + " created at "
+					+ NativeHandles.site(c.site);
+			Integer n = sites.get(key);
+			sites.put(key, n == null ? 1 : n + 1);
+		}
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, Integer> e : sites.entrySet()) {
+			sb.append("\n  ").append(e.getValue()).append(" x ")
+					.append(e.getKey());
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,53 @@
+package org.llvm;
+
+/**
+ * The optimization presets of clang and opt.
+ */
+public enum OptimizationLevel {
+	O0(0, 0), O1(1, 0), O2(2, 0), O3(3, 0),
+	/** Like O2, but favouring small code. */
+	Os(2, 1),
+	/** Like Os, but reducing code size further at the expense of speed. */
+	Oz(2, 2);
+
+	private final int optLevel;
+
+	private final int sizeLevel;
+
+	private OptimizationLevel(int optLevel, int sizeLevel) {
+		this.optLevel = optLevel;
+		this.sizeLevel = sizeLevel;
+	}
+
+	/**
+	 * The speed level, 0 to 3.
+	 */
+	public int getOptLevel() {
+		return this.optLevel;
+	}
+
+	/**
+	 * The size level: 0 for none, 1 for Os, 2 for Oz.
+	 */
+	public int getSizeLevel() {
+		return this.sizeLevel;
+	}
+
+	/**
+	 * The inliner threshold clang uses at this level, or -1 for no inliner.
+	 */
+	public int getDefaultInlinerThreshold() {
+		if (this.optLevel == 0) {
+			return -1;
+		}
+		switch (this.sizeLevel) {
+		case 1:
+			return 75;
+		case 2:
+			return 25;
+		default:
+			return this.optLevel > 2 ? 250 : 225;
+		}
+	}
+
+}
@@ -0,0 +1,248 @@
+package org.llvm;
+
+import static org.llvm.binding.LLVMLibrary.*;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bridj.Pointer;
+import org.llvm.binding.LLVMLibrary.LLVMCodeGenOptLevel;
+import org.llvm.binding.LLVMLibrary.LLVMCodeModel;
+import org.llvm.binding.LLVMLibrary.LLVMOrcJITStackRef;
+import org.llvm.binding.LLVMLibrary.LLVMOrcSymbolResolverFn;
+import org.llvm.binding.LLVMLibrary.LLVMRelocMode;
+import org.llvm.binding.LLVMLibrary.LLVMTargetMachineRef;
+import org.llvm.binding.LLVMLibrary.LLVMTargetRef;
+import org.llvm.binding.LLVMRaw;
+
+/**
+ * A JIT built on the ORC layers of LLVM. Modules added with<br>
+ * addModuleLazily() are not compiled up front: each function is compiled<br>
+ * the first time it is called, so a large module only pays code generation<br>
+ * for the functions that are actually used. Resolved addresses are cached.
+ * <p>
+ * Symbols are resolved from addSymbol(), then from the modules of the JIT,<br>
+ * then from the process itself, e.g. libc's malloc or printf.
+ */
+public class OrcJIT implements AutoCloseable {
+
+	static {
+		/* Makes the symbols of the process searchable. */
+		LLVMRaw.LLVMLoadLibraryPermanently(0);
+	}
+
+	private volatile LLVMOrcJITStackRef stack;
+
+	/* What the target prepends to global names, e.g. "_" on Darwin. */
+	private final String prefix;
+
+	private final NativeCleaner.Cleanable cleanable;
+
+	/* Modules handed to the stack, kept reachable with their context. */
+	private final Map<Integer, Module> modules = new ConcurrentHashMap<Integer, Module>();
+
+	private final Map<String, Long> addresses = new ConcurrentHashMap<String, Long>();
+
+	private final Map<String, Long> symbols = new ConcurrentHashMap<String, Long>();
+
+	/* Must stay reachable for as long as the stack may call back into it. */
+	private final LLVMOrcSymbolResolverFn resolver = new LLVMOrcSymbolResolverFn() {
+		@Override
+		public long apply(Pointer<Byte> name, Pointer<?> lookupCtx) {
+			return OrcJIT.this.resolve(name.getCString());
+		}
+	};
+
+	OrcJIT(LLVMOrcJITStackRef stack) {
+		this.stack = stack;
+		this.cleanable = NativeCleaner.register(this, new Disposer(stack,
+				this.modules));
+		this.prefix = this.mangle("");
+	}
+
+	/**
+	 * Create a JIT for the host target. The native target must have been<br>
+	 * initialised beforehand.
+	 *
+	 * @param optLevel
+	 *        Code generation optimisation level, 0 to 3.
+	 */
+	public static OrcJIT createForHost(int optLevel) throws LLVMException {
+		if (optLevel < 0 || optLevel > 3) {
+			throw new IllegalArgumentException("invalid optLevel " + optLevel);
+		}
+
+		Pointer<Byte> triple = LLVMGetDefaultTargetTriple();
+		try {
+			Pointer<Pointer<Byte>> ppByte = Pointer.pointerToCStrings("");
+			Pointer<LLVMTargetRef> pTarget = Pointer
+					.allocateTypedPointer(LLVMTargetRef.class);
+			if (LLVMGetTargetFromTriple(triple, pTarget, ppByte) != 0) {
+				Pointer<Byte> pByte = ppByte.getPointer(Byte.class);
+				final String message = pByte.getCString();
+				LLVMDisposeMessage(pByte);
+				throw new LLVMException(message);
+			}
+
+			/* The stack takes ownership of the target machine. */
+			LLVMTargetMachineRef tm = LLVMCreateTargetMachine(pTarget.get(),
+					triple, Pointer.pointerToCString(""),
+					Pointer.pointerToCString(""),
+					LLVMCodeGenOptLevel.values()[optLevel],
+					LLVMRelocMode.LLVMRelocDefault,
+					LLVMCodeModel.LLVMCodeModelJITDefault);
+			return new OrcJIT(LLVMOrcCreateInstance(tm));
+		} finally {
+			LLVMDisposeMessage(triple);
+		}
+	}
+
+	/**
+	 * Destroy the JIT and all code compiled by it.
+	 */
+	public void dispose() {
+		this.cleanable.clean();
+		this.stack = null;
+		this.addresses.clear();
+		this.modules.clear();
+	}
+
+	@Override
+	public void close() {
+		this.dispose();
+	}
+
+	/**
+	 * Add a module whose functions are compiled on their first call. The<br>
+	 * JIT takes ownership of the module. Returns a handle for<br>
+	 * removeModule().
+	 */
+	public int addModuleLazily(Module m) {
+		int handle = LLVMOrcAddLazilyCompiledIR(this.stack, m.module(),
+				Pointer.pointerTo(this.resolver), null);
+		this.own(handle, m);
+		return handle;
+	}
+
+	/**
+	 * Add a module which is compiled immediately. The JIT takes ownership<br>
+	 * of the module. Returns a handle for removeModule().
+	 */
+	public int addModuleEagerly(Module m) {
+		long start = System.nanoTime();
+		int handle = LLVMOrcAddEagerlyCompiledIR(this.stack, m.module(),
+				Pointer.pointerTo(this.resolver), null);
+		LLVMStatistics.compiled(System.nanoTime() - start);
+		this.own(handle, m);
+		return handle;
+	}
+
+	private void own(int handle, Module m) {
+		m.transferOwnership();
+		this.modules.put(handle, m);
+		LLVMStatistics.engineModules(1);
+	}
+
+	/**
+	 * Remove a module and free the code compiled for it.
+	 */
+	public void removeModule(int handle) {
+		LLVMOrcRemoveModule(this.stack, handle);
+		Module m = this.modules.remove(handle);
+		if (m != null) {
+			LLVMStatistics.engineModules(-1);
+			SymbolTable.forget(Pointer.getPeer(m.module()));
+			m.nativeFreed();
+		}
+		this.addresses.clear();
+	}
+
+	/**
+	 * Make a native symbol (e.g. a runtime helper) visible to JIT-compiled<br>
+	 * code under the given name.
+	 */
+	public void addSymbol(String name, Pointer<?> address) {
+		this.symbols.put(this.mangle(name), Pointer.getPeer(address));
+	}
+
+	/**
+	 * Obtain the address of a function, compiling a stub for it if it lives<br>
+	 * in a lazily added module. Returns 0 if the symbol is unknown.
+	 */
+	public long getFunctionAddress(String name) {
+		Long cached = this.addresses.get(name);
+		if (cached != null) {
+			return cached;
+		}
+
+		long address = LLVMOrcGetSymbolAddress(this.stack,
+				Pointer.pointerToCString(this.mangle(name)));
+		if (address != 0) {
+			this.addresses.put(name, address);
+		}
+		return address;
+	}
+
+	/**
+	 * Returns an implementation of the given single-method interface that<br>
+	 * calls the named function directly.
+	 *
+	 * @see ExecutionEngine#getFunction(Value, Class)
+	 */
+	public <T> T getFunction(String name, Class<T> type) throws LLVMException {
+		long address = this.getFunctionAddress(name);
+		if (address == 0) {
+			throw new LLVMException("Function '" + name + "' not found.");
+		}
+		return JITFunction.bind(Pointer.pointerToAddress(address), name, type);
+	}
+
+	private String mangle(String name) {
+		Pointer<Pointer<Byte>> ppByte = Pointer.pointerToCStrings("");
+		LLVMOrcGetMangledSymbol(this.stack, ppByte,
+				Pointer.pointerToCString(name));
+		Pointer<Byte> pByte = ppByte.getPointer(Byte.class);
+		final String mangled = pByte.getCString();
+		LLVMOrcDisposeMangledSymbol(pByte);
+		return mangled;
+	}
+
+	private long resolve(String mangled) {
+		Long symbol = this.symbols.get(mangled);
+		if (symbol != null) {
+			return symbol;
+		}
+		long address = LLVMOrcGetSymbolAddress(this.stack,
+				Pointer.pointerToCString(mangled));
+		if (address != 0) {
+			return address;
+		}
+		Pointer<Byte> name = Pointer.pointerToCString(mangled
+				.startsWith(this.prefix) ? mangled.substring(this.prefix
+				.length()) : mangled);
+		return LLVMRaw.LLVMSearchForAddressOfSymbol(Pointer.getPeer(name));
+	}
+
+	private static final class Disposer implements Runnable {
+		private final LLVMOrcJITStackRef stack;
+
+		private final Map<Integer, Module> modules;
+
+		Disposer(LLVMOrcJITStackRef stack, Map<Integer, Module> modules) {
+			this.stack = stack;
+			this.modules = modules;
+		}
+
+		public void run() {
+			LLVMStatistics.engineModules(-this.modules.size());
+			for (Module m : this.modules.values()) {
+				SymbolTable.forget(Pointer.getPeer(m.module()));
+			}
+			LLVMOrcDisposeInstance(this.stack);
+			for (Module m : this.modules.values()) {
+				m.nativeFreed();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,546 @@
+package org.llvm;
+
+import static org.llvm.binding.LLVMLibrary.LLVMGetModuleContext;
+import static org.llvm.binding.LLVMLibrary.LLVMLinkModules2;
+import static org.llvm.binding.LLVMRaw.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bridj.Pointer;
+import org.llvm.binding.LLVMLibrary.LLVMLinkage;
+
+/**
+ * Optimizes a module on several threads by splitting it into partitions.<br>
+ * A function referenced by a single other function is kept in the<br>
+ * partition of its user, so that inlining still sees it. An external<br>
+ * function referenced by several, like a runtime helper, is placed on its<br>
+ * own instead, and if it is small, each partition using it gets a copy<br>
+ * with available_externally linkage to inline. The groups are then<br>
+ * balanced over the partitions by instruction count. Each partition is<br>
+ * optimized in its own Context, and the results are linked back into a<br>
+ * single module in the context of the input.
+ * <p>
+ * Functions chained by single references, or shared functions with<br>
+ * discardable linkage such as linkonce_odr, still join their users in one<br>
+ * group; a module made of one such group is optimized on one thread.<br>
+ * plan() shows the partitions a module is split into.
+ * <p>
+ * Internal symbols are made external while partitioned and restored<br>
+ * afterwards, so interprocedural passes cannot remove or specialise them;<br>
+ * run a cheap module pipeline (globaldce, globalopt) over the result if<br>
+ * that matters. Aliases and comdats are not supported.
+ */
+public class PartitionedOptimizer {
+
+	private static final int EXTERNAL = (int) LLVMLinkage.LLVMExternalLinkage
+			.value();
+	private static final int AVAILABLE_EXTERNALLY = (int) LLVMLinkage.LLVMAvailableExternallyLinkage
+			.value();
+	private static final int APPENDING = (int) LLVMLinkage.LLVMAppendingLinkage
+			.value();
+	private static final int INTERNAL = (int) LLVMLinkage.LLVMInternalLinkage
+			.value();
+	private static final int PRIVATE = (int) LLVMLinkage.LLVMPrivateLinkage
+			.value();
+
+	/* Shared functions up to this many instructions are copied. */
+	private static final int SMALL_FUNCTION = 64;
+
+	/* Prefix of the names given to unnamed internal symbols. */
+	private static final String UNNAMED = "__partition.";
+
+	private final ExecutorService executor;
+
+	private final PassManagerBuilder pipeline;
+
+	/**
+	 * @param threads
+	 *        Number of worker threads.
+	 * @param pipeline
+	 *        The module pipeline run over each partition.
+	 */
+	public PartitionedOptimizer(int threads, PassManagerBuilder pipeline) {
+		final AtomicInteger count = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool(threads,
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "llvm-optimizer-"
+								+ count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		this.pipeline = pipeline;
+	}
+
+	/**
+	 * Returns an optimized copy of a module, in the same context. The input<br>
+	 * is left untouched.
+	 *
+	 * @param partitions
+	 *        Upper bound on the number of partitions; fewer are used if<br>
+	 *        the module has fewer independent groups of functions.
+	 */
+	public Module optimize(Module m, int partitions) throws LLVMException {
+		Map<String, Integer> functionLinkages = new HashMap<String, Integer>();
+		Map<String, Integer> globalLinkages = new HashMap<String, Integer>();
+		List<Set<String>> parts = new ArrayList<Set<String>>();
+		List<Set<String>> copies = new ArrayList<Set<String>>();
+		MemoryBuffer prepared = prepare(m, partitions, functionLinkages,
+				globalLinkages, parts, copies);
+
+		List<MemoryBuffer> optimized = new ArrayList<MemoryBuffer>();
+		try {
+			try {
+				List<Future<MemoryBuffer>> futures = new ArrayList<Future<MemoryBuffer>>();
+				for (int i = 0; i < parts.size(); i++) {
+					final ByteBuffer bitcode = prepared.asByteBuffer();
+					final Set<String> functions = parts.get(i);
+					final Set<String> copied = copies.get(i);
+					final boolean first = i == 0;
+					futures.add(this.executor.submit(new Callable<MemoryBuffer>() {
+						public MemoryBuffer call() throws LLVMException {
+							return PartitionedOptimizer.this.optimizePartition(
+									bitcode, functions, copied, first);
+						}
+					}));
+				}
+				/* Wait for every worker before the shared bitcode is freed. */
+				LLVMException failure = null;
+				for (Future<MemoryBuffer> f : futures) {
+					try {
+						optimized.add(f.get());
+					} catch (ExecutionException e) {
+						if (failure == null) {
+							failure = unwrap(e);
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						if (failure == null) {
+							failure = new LLVMException("interrupted");
+						}
+					}
+				}
+				if (failure != null) {
+					throw failure;
+				}
+			} finally {
+				prepared.dispose();
+			}
+
+			Module result = null;
+			boolean linked = false;
+			try {
+				for (MemoryBuffer buf : optimized) {
+					Module part = Module.parseBitcode(
+							LLVMGetModuleContext(m.module()), buf,
+							m.keptContext());
+					if (result == null) {
+						result = part;
+					} else {
+						/* The linker consumes the source module, even on failure. */
+						part.transferOwnership();
+						try {
+							if (LLVMLinkModules2(result.module(), part.module()) != 0) {
+								throw new LLVMException(
+										"cannot link the partitions");
+							}
+						} finally {
+							part.nativeFreed();
+						}
+					}
+				}
+				linked = true;
+			} finally {
+				if (!linked && result != null) {
+					result.dispose();
+				}
+			}
+
+			long mod = Pointer.getPeer(result.module());
+			restore(mod, true, functionLinkages);
+			restore(mod, false, globalLinkages);
+			return result;
+		} finally {
+			/* Also frees the partitions finished before a worker failed. */
+			for (MemoryBuffer buf : optimized) {
+				buf.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Returns the names of the functions defined by each partition that<br>
+	 * optimize() would use for a module, the first holding the global<br>
+	 * definitions. Unnamed internal functions appear under generated names.
+	 */
+	public static List<Set<String>> plan(Module m, int partitions)
+			throws LLVMException {
+		List<Set<String>> parts = new ArrayList<Set<String>>();
+		prepare(m, partitions, new HashMap<String, Integer>(),
+				new HashMap<String, Integer>(), parts,
+				new ArrayList<Set<String>>()).dispose();
+		return parts;
+	}
+
+	/*
+	 * Externalizes a private copy of a module and partitions it. Returns the
+	 * bitcode of the copy, which every partition starts from.
+	 */
+	private static MemoryBuffer prepare(Module m, int partitions,
+			Map<String, Integer> functionLinkages,
+			Map<String, Integer> globalLinkages, List<Set<String>> parts,
+			List<Set<String>> copies) throws LLVMException {
+		MemoryBuffer original = m.writeBitcodeToMemoryBuffer();
+		Context planning = Context.create();
+		try {
+			Module copy = Module.parseBitcodeInContext(planning, original);
+			try {
+				long mod = Pointer.getPeer(copy.module());
+				externalize(LLVMGetFirstFunction(mod), true, functionLinkages);
+				externalize(LLVMGetFirstGlobal(mod), false, globalLinkages);
+				partition(mod, Math.max(1, partitions), parts, copies);
+				return copy.writeBitcodeToMemoryBuffer();
+			} finally {
+				copy.dispose();
+			}
+		} finally {
+			original.dispose();
+			planning.dispose();
+		}
+	}
+
+	/**
+	 * Stop the worker threads.
+	 */
+	public void shutdown() {
+		this.executor.shutdown();
+	}
+
+	private MemoryBuffer optimizePartition(ByteBuffer bitcode,
+			Set<String> functions, Set<String> copies, boolean first)
+			throws LLVMException {
+		Context c = Context.create();
+		try {
+			Module part = Module.parseBitcodeInContext(c, bitcode);
+			try {
+				long mod = Pointer.getPeer(part.module());
+				long f = LLVMGetFirstFunction(mod);
+				while (f != 0) {
+					long next = LLVMGetNextFunction(f);
+					String name = name(f);
+					if (LLVMIsDeclaration(f) == 0 && !functions.contains(name)) {
+						if (copies.contains(name)) {
+							LLVMSetLinkage(f, AVAILABLE_EXTERNALLY);
+						} else {
+							makeDeclaration(mod, f);
+						}
+					}
+					f = next;
+				}
+
+				/* Global definitions are kept by the first partition only. */
+				if (!first) {
+					long g = LLVMGetFirstGlobal(mod);
+					while (g != 0) {
+						long next = LLVMGetNextGlobal(g);
+						if (LLVMIsDeclaration(g) == 0) {
+							if (LLVMGetLinkage(g) == APPENDING) {
+								LLVMDeleteGlobal(g);
+							} else {
+								LLVMSetLinkage(g, AVAILABLE_EXTERNALLY);
+							}
+						}
+						g = next;
+					}
+				}
+
+				PassManager pm = PassManager.create();
+				try {
+					this.pipeline.populateModulePassManager(pm);
+					pm.runForModule(part);
+				} finally {
+					pm.dispose();
+				}
+				return part.writeBitcodeToMemoryBuffer();
+			} finally {
+				part.dispose();
+			}
+		} finally {
+			c.dispose();
+		}
+	}
+
+	/* Replaces a function by a declaration of the same name and type. */
+	private static void makeDeclaration(long mod, long f) {
+		Pointer<Byte> name = Pointer.pointerToCString(name(f));
+		LLVMSetValueName(f, Pointer.getPeer(Builder.EMPTY_NAME));
+		long decl = LLVMAddFunction(mod, Pointer.getPeer(name),
+				LLVMGetElementType(LLVMTypeOf(f)));
+		LLVMSetFunctionCallConv(decl, LLVMGetFunctionCallConv(f));
+		LLVMReplaceAllUsesWith(f, decl);
+		LLVMDeleteFunction(f);
+	}
+
+	/*
+	 * Groups the defined functions of a module with the functions they
+	 * reference, directly or through constant expressions, except for
+	 * shared ones: external functions referenced by several. Then spreads
+	 * the groups over at most n partitions, largest first into the lightest
+	 * partition, and lists the small shared functions each partition uses
+	 * but does not define. Functions referenced by global initializers go
+	 * with the global definitions into the first partition.
+	 */
+	private static void partition(long mod, int n, List<Set<String>> parts,
+			List<Set<String>> copies) {
+		Map<Long, Integer> index = new HashMap<Long, Integer>();
+		List<String> names = new ArrayList<String>();
+		List<Long> functions = new ArrayList<Long>();
+		for (long f = LLVMGetFirstFunction(mod); f != 0; f = LLVMGetNextFunction(f)) {
+			if (LLVMIsDeclaration(f) == 0) {
+				index.put(f, names.size());
+				names.add(name(f));
+				functions.add(f);
+			}
+		}
+
+		/* One more node stands for the global definitions. */
+		int count = names.size();
+		int globals = count;
+		int[] parent = new int[count + 1];
+		long[] size = new long[count + 1];
+		List<Set<Integer>> refs = new ArrayList<Set<Integer>>(count + 1);
+		for (int k = 0; k <= count; k++) {
+			parent[k] = k;
+			refs.add(new HashSet<Integer>());
+		}
+
+		Set<Long> visited = new HashSet<Long>();
+		for (int k = 0; k < count; k++) {
+			visited.clear();
+			for (long bb = LLVMGetFirstBasicBlock(functions.get(k)); bb != 0; bb = LLVMGetNextBasicBlock(bb)) {
+				for (long i = LLVMGetFirstInstruction(bb); i != 0; i = LLVMGetNextInstruction(i)) {
+					size[k]++;
+					int operands = LLVMGetNumOperands(i);
+					for (int o = 0; o < operands; o++) {
+						reference(LLVMGetOperand(i, o), index, refs.get(k),
+								visited);
+					}
+				}
+			}
+		}
+		visited.clear();
+		for (long g = LLVMGetFirstGlobal(mod); g != 0; g = LLVMGetNextGlobal(g)) {
+			reference(LLVMGetInitializer(g), index, refs.get(globals),
+					visited);
+		}
+
+		/*
+		 * A shared function is not pulled into the group of its users. Only
+		 * external ones qualify: a discardable one would be dropped from a
+		 * partition where nothing refers to it.
+		 */
+		int[] users = new int[count];
+		for (int k = 0; k <= count; k++) {
+			for (int callee : refs.get(k)) {
+				if (callee != k) {
+					users[callee]++;
+				}
+			}
+		}
+		boolean[] shared = new boolean[count];
+		for (int k = 0; k < count; k++) {
+			shared[k] = users[k] > 1
+					&& LLVMGetLinkage(functions.get(k)) == EXTERNAL;
+		}
+		for (int k = 0; k <= count; k++) {
+			for (int callee : refs.get(k)) {
+				if (!shared[callee]) {
+					union(parent, k, callee);
+				}
+			}
+		}
+
+		Map<Integer, List<Integer>> groups = new HashMap<Integer, List<Integer>>();
+		final Map<List<Integer>, Long> weights = new IdentityHashMap<List<Integer>, Long>();
+		for (int k = 0; k <= count; k++) {
+			int root = find(parent, k);
+			List<Integer> group = groups.get(root);
+			if (group == null) {
+				group = new ArrayList<Integer>();
+				groups.put(root, group);
+			}
+			group.add(k);
+		}
+		List<List<Integer>> sorted = new ArrayList<List<Integer>>(
+				groups.values());
+		for (List<Integer> group : sorted) {
+			long w = 0;
+			for (int k : group) {
+				w += size[k] + 1;
+			}
+			weights.put(group, w);
+		}
+		final List<Integer> first = groups.get(find(parent, globals));
+		if (first.size() == 1) {
+			/* No function to pin; do not spend a partition on it. */
+			sorted.remove(first);
+		}
+		Collections.sort(sorted, new Comparator<List<Integer>>() {
+			public int compare(List<Integer> a, List<Integer> b) {
+				/* The group of the globals is placed first, in partition 0. */
+				if (a == first || b == first) {
+					return a == first ? (b == first ? 0 : -1) : 1;
+				}
+				return weights.get(b).compareTo(weights.get(a));
+			}
+		});
+
+		int bins = Math.max(1, Math.min(n, sorted.size()));
+		long[] load = new long[bins];
+		int[] bin = new int[count + 1];
+		for (int b = 0; b < bins; b++) {
+			parts.add(new HashSet<String>());
+			copies.add(new HashSet<String>());
+		}
+		for (List<Integer> group : sorted) {
+			int lightest = 0;
+			for (int b = 1; b < bins; b++) {
+				if (load[b] < load[lightest]) {
+					lightest = b;
+				}
+			}
+			load[lightest] += weights.get(group);
+			for (int k : group) {
+				bin[k] = lightest;
+				if (k != globals) {
+					parts.get(lightest).add(names.get(k));
+				}
+			}
+		}
+
+		/* Initializers are not inlined into; they need no copies. */
+		for (int k = 0; k < count; k++) {
+			for (int callee : refs.get(k)) {
+				if (shared[callee] && bin[callee] != bin[k]
+						&& size[callee] <= SMALL_FUNCTION) {
+					copies.get(bin[k]).add(names.get(callee));
+				}
+			}
+		}
+	}
+
+	/*
+	 * Collects the defined functions a value refers to, looking through
+	 * constant expressions and aggregates but not into globals.
+	 */
+	private static void reference(long v, Map<Long, Integer> index,
+			Set<Integer> refs, Set<Long> visited) {
+		if (v == 0 || LLVMIsAConstant(v) == 0 || !visited.add(v)) {
+			return;
+		}
+		if (LLVMIsAGlobalValue(v) != 0) {
+			Integer callee = index.get(v);
+			if (callee != null) {
+				refs.add(callee);
+			}
+			return;
+		}
+		int operands = LLVMGetNumOperands(v);
+		for (int o = 0; o < operands; o++) {
+			reference(LLVMGetOperand(v, o), index, refs, visited);
+		}
+	}
+
+	private static int find(int[] parent, int k) {
+		while (parent[k] != k) {
+			parent[k] = parent[parent[k]];
+			k = parent[k];
+		}
+		return k;
+	}
+
+	private static void union(int[] parent, int a, int b) {
+		int ra = find(parent, a);
+		int rb = find(parent, b);
+		if (ra != rb) {
+			parent[ra] = rb;
+		}
+	}
+
+	/*
+	 * Makes the local symbols of a list external, naming the unnamed ones,
+	 * and records their original linkage.
+	 */
+	private static void externalize(long first, boolean functions,
+			Map<String, Integer> linkages) {
+		for (long v = first; v != 0; v = functions ? LLVMGetNextFunction(v)
+				: LLVMGetNextGlobal(v)) {
+			int linkage = LLVMGetLinkage(v);
+			if (linkage != INTERNAL && linkage != PRIVATE) {
+				continue;
+			}
+			String name = name(v);
+			if (name.isEmpty()) {
+				name = UNNAMED + (functions ? "f" : "g") + linkages.size();
+				Pointer<Byte> cname = Pointer.pointerToCString(name);
+				LLVMSetValueName(v, Pointer.getPeer(cname));
+			}
+			linkages.put(name, linkage);
+			LLVMSetLinkage(v, EXTERNAL);
+		}
+	}
+
+	private static void restore(long mod, boolean functions,
+			Map<String, Integer> linkages) {
+		for (Map.Entry<String, Integer> e : linkages.entrySet()) {
+			Pointer<Byte> cname = Pointer.pointerToCString(e.getKey());
+			long v = functions ? LLVMGetNamedFunction(mod,
+					Pointer.getPeer(cname)) : LLVMGetNamedGlobal(mod,
+					Pointer.getPeer(cname));
+			if (v == 0) {
+				continue;
+			}
+			LLVMSetLinkage(v, e.getValue());
+			if (e.getKey().startsWith(UNNAMED)) {
+				LLVMSetValueName(v, Pointer.getPeer(Builder.EMPTY_NAME));
+			}
+		}
+	}
+
+	private static String name(long v) {
+		return Pointer.pointerToAddress(LLVMGetValueName(v), Byte.class)
+				.getCString();
+	}
+
+	private static LLVMException unwrap(ExecutionException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof LLVMException) {
+			return (LLVMException) cause;
+		}
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return new LLVMException(String.valueOf(cause));
+	}
+
+}
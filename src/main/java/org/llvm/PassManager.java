@@ -24,11 +24,13 @@ import static org.llvm.binding.LLVMLibrary.LLVMAddLoopDeletionPass;
 import static org.llvm.binding.LLVMLibrary.LLVMAddLoopRotatePass;
 import static org.llvm.binding.LLVMLibrary.LLVMAddLoopUnrollPass;
 import static org.llvm.binding.LLVMLibrary.LLVMAddLoopUnswitchPass;
+import static org.llvm.binding.LLVMLibrary.LLVMAddLoopVectorizePass;
 import static org.llvm.binding.LLVMLibrary.LLVMAddMemCpyOptPass;
 import static org.llvm.binding.LLVMLibrary.LLVMAddPromoteMemoryToRegisterPass;
 import static org.llvm.binding.LLVMLibrary.LLVMAddPruneEHPass;
 import static org.llvm.binding.LLVMLibrary.LLVMAddReassociatePass;
 import static org.llvm.binding.LLVMLibrary.LLVMAddSCCPPass;
+import static org.llvm.binding.LLVMLibrary.LLVMAddSLPVectorizePass;
 import static org.llvm.binding.LLVMLibrary.LLVMAddScalarReplAggregatesPass;
 import static org.llvm.binding.LLVMLibrary.LLVMAddScalarReplAggregatesPassWithThreshold;
 import static org.llvm.binding.LLVMLibrary.LLVMAddSimplifyLibCallsPass;
@@ -45,19 +47,91 @@ import static org.llvm.binding.LLVMLibrary.LLVMInitializeFunctionPassManager;
 import static org.llvm.binding.LLVMLibrary.LLVMRunFunctionPassManager;
 import static org.llvm.binding.LLVMLibrary.LLVMRunPassManager;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bridj.Pointer;
 import org.llvm.binding.LLVMLibrary.LLVMModuleProviderRef;
 import org.llvm.binding.LLVMLibrary.LLVMPassManagerRef;
 
-public class PassManager {
+public class PassManager implements AutoCloseable {
 
 	private LLVMPassManagerRef manager;
 
+	private final NativeCleaner.Cleanable cleanable;
+
+	/* Function pipelines are finalized before they are freed. */
+	private final boolean function;
+
+	/*
+	 * In instrumented pipelines every pass gets a pass manager of its own,
+	 * so that it can be timed; null otherwise.
+	 */
+	private final List<LLVMPassManagerRef> stages;
+
+	private final List<String> stageNames;
+
+	private volatile PipelineReport.Sink sink;
+
+	/* The passes added so far with their parameters, e.g. for CompileCache. */
+	private final StringBuilder pipeline = new StringBuilder();
+
 	LLVMPassManagerRef manager() {
 		return this.manager;
 	}
 
 	PassManager(LLVMPassManagerRef manager) {
+		this(manager, false);
+	}
+
+	PassManager(LLVMPassManagerRef manager, boolean function) {
+		this(manager, function, false);
+	}
+
+	private PassManager(LLVMPassManagerRef manager, boolean function,
+			boolean instrumented) {
 		this.manager = manager;
+		this.function = function;
+		this.stages = instrumented ? new ArrayList<LLVMPassManagerRef>() : null;
+		this.stageNames = instrumented ? new ArrayList<String>() : null;
+		this.cleanable = NativeCleaner.register(this, new Disposer(manager,
+				this.stages));
+	}
+
+	/**
+	 * Returns the pass manager the passes of a stage are added to: the<br>
+	 * pipeline itself, or a new stage if the pipeline is instrumented.
+	 */
+	LLVMPassManagerRef stage(String name) {
+		return this.stage(name, name);
+	}
+
+	/**
+	 * Returns the pass manager for a stage whose passes depend on more<br>
+	 * than its name, such as parameters, which the description records.
+	 */
+	LLVMPassManagerRef stage(String name, String description) {
+		synchronized (this.pipeline) {
+			this.pipeline.append(description).append(';');
+		}
+		if (this.stages == null) {
+			return this.manager;
+		}
+		LLVMPassManagerRef pm = LLVMCreatePassManager();
+		this.stages.add(pm);
+		this.stageNames.add(name);
+		return pm;
+	}
+
+	/**
+	 * Returns the passes added through this class, in order, with their<br>
+	 * parameters. Two pass managers with the same pipeline transform a<br>
+	 * module the same way.
+	 */
+	String getPipeline() {
+		synchronized (this.pipeline) {
+			return this.pipeline.toString();
+		}
 	}
 
 	/**
@@ -68,6 +142,23 @@ public class PassManager {
 		return new PassManager(LLVMCreatePassManager());
 	}
 
+	/**
+	 * Constructs a whole-module pass pipeline which measures every pass it<br>
+	 * runs. Each pass added becomes a stage with a pass manager of its own,<br>
+	 * and runInstrumented() runs the stages one after the other, recording<br>
+	 * the wall time of each and the basic block and instruction counts of<br>
+	 * the module before and after it. Passes populated by a<br>
+	 * PassManagerBuilder form a single stage, since the C API does not<br>
+	 * expose the passes it schedules.
+	 * <p>
+	 * Analyses are not shared between stages, so the pipeline as a whole<br>
+	 * runs slower than an uninstrumented one; use it to find the passes<br>
+	 * worth trimming, not in production.
+	 */
+	public static PassManager createInstrumented() {
+		return new PassManager(LLVMCreatePassManager(), false, true);
+	}
+
 	/**
 	 * Constructs a new function-by-function pass pipeline over the module<br>
 	 * provider. It does not take ownership of the module provider. This type of<br>
@@ -75,35 +166,38 @@ public class PassManager {
 	 */
 	public static PassManager createForModule(Module m) {
 		return new PassManager(
-				LLVMCreateFunctionPassManagerForModule(m.module()));
+				LLVMCreateFunctionPassManagerForModule(m.module()), true);
 	}
 
 	/**
 	 * Deprecated: Use LLVMCreateFunctionPassManagerForModule instead.
 	 */
 	public static PassManager createFPM(LLVMModuleProviderRef mp) {
-		return new PassManager(LLVMCreateFunctionPassManager(mp));
-	}
-
-	@Override
-	public void finalize() {
-		this.dispose();
+		return new PassManager(LLVMCreateFunctionPassManager(mp), true);
 	}
 
 	/**
-	 * Finalizes all of the function passes scheduled in in the function pass<br>
-	 * manager. Returns 1 if any of the passes modified the module, 0 otherwise.<br>
-	 * Frees the memory of a pass pipeline. For function pipelines, does not
-	 * free<br>
-	 * the module provider.
+	 * Frees the memory of a pass pipeline. Function pipelines are finalized<br>
+	 * first; returns true if any of their passes modified the module. Module<br>
+	 * pipelines have nothing to finalize and return false. Does not free<br>
+	 * the module provider of function pipelines.
 	 */
 	public boolean dispose() {
-		boolean res = LLVMFinalizeFunctionPassManager(this.manager) == 1;
-		LLVMDisposePassManager(this.manager);
+		if (this.manager == null) {
+			return false;
+		}
+		boolean res = this.function
+				&& LLVMFinalizeFunctionPassManager(this.manager) == 1;
+		this.cleanable.clean();
 		this.manager = null;
 		return res;
 	}
 
+	@Override
+	public void close() {
+		this.dispose();
+	}
+
 	/* PassManager */
 	// public static native int LLVMRunPassManager(LLVMPassManagerRef pm, LLVMModuleRef m);
 
@@ -121,7 +215,65 @@ public class PassManager {
 	 * modified the module, false otherwise.
 	 */
 	public boolean runForModule(Module m) {
-		return LLVMRunPassManager(this.manager, m.module()) == 1;
+		if (this.stages != null) {
+			return this.runInstrumented(m).isModified();
+		}
+		long start = System.nanoTime();
+		boolean modified = LLVMRunPassManager(this.manager, m.module()) == 1;
+		LLVMStatistics.optimized(System.nanoTime() - start);
+		if (modified) {
+			SymbolTable.forget(Pointer.getPeer(m.module()));
+		}
+		return modified;
+	}
+
+	/**
+	 * Runs the stages of an instrumented pipeline on the module, and returns<br>
+	 * their statistics after passing them to the sink, if one is set.
+	 */
+	public PipelineReport runInstrumented(Module m) {
+		if (this.stages == null) {
+			throw new IllegalStateException(
+					"the pass manager was not created instrumented");
+		}
+
+		long module = Pointer.getPeer(m.module());
+		int n = this.stages.size();
+		PipelineReport.Stage[] results = new PipelineReport.Stage[n];
+		int[] counts = new int[2];
+		PipelineReport.measure(module, counts);
+		for (int i = 0; i < n; i++) {
+			int blocks = counts[0];
+			int instructions = counts[1];
+
+			long start = System.nanoTime();
+			boolean modified = LLVMRunPassManager(this.stages.get(i),
+					m.module()) == 1;
+			long nanos = System.nanoTime() - start;
+
+			PipelineReport.measure(module, counts);
+			results[i] = new PipelineReport.Stage(this.stageNames.get(i), nanos,
+					modified, blocks, counts[0], instructions, counts[1]);
+		}
+
+		PipelineReport report = new PipelineReport(results);
+		if (report.isModified()) {
+			SymbolTable.forget(module);
+		}
+		LLVMStatistics.optimized(report.getTotalNanos());
+		PipelineReport.Sink s = this.sink;
+		if (s != null) {
+			s.report(report);
+		}
+		return report;
+	}
+
+	/**
+	 * Set the receiver of the report of every run of an instrumented<br>
+	 * pipeline, or null for none.
+	 */
+	public void setSink(PipelineReport.Sink sink) {
+		this.sink = sink;
 	}
 
 	/**
@@ -131,152 +283,189 @@ public class PassManager {
 	 * function, false otherwise.
 	 */
 	public boolean runForFunction(Value f) {
-		return LLVMRunFunctionPassManager(this.manager, f.value()) == 1;
+		long start = System.nanoTime();
+		boolean modified = LLVMRunFunctionPassManager(this.manager,
+				f.value()) == 1;
+		LLVMStatistics.optimized(System.nanoTime() - start);
+		return modified;
 	}
 
 	/* Function Pass Manager */
 	public void addArgumentPromotionPass() {
-		LLVMAddArgumentPromotionPass(this.manager);
+		LLVMAddArgumentPromotionPass(this.stage("ArgumentPromotion"));
 	}
 
 	public void addConstantMergePass() {
-		LLVMAddConstantMergePass(this.manager);
+		LLVMAddConstantMergePass(this.stage("ConstantMerge"));
 	}
 
 	public void addDeadArgEliminationPass() {
-		LLVMAddDeadArgEliminationPass(this.manager);
+		LLVMAddDeadArgEliminationPass(this.stage("DeadArgElimination"));
 	}
 
 	public void addFunctionAttrsPass() {
-		LLVMAddFunctionAttrsPass(this.manager);
+		LLVMAddFunctionAttrsPass(this.stage("FunctionAttrs"));
 	}
 
 	public void addFunctionInliningPass() {
-		LLVMAddFunctionInliningPass(this.manager);
+		LLVMAddFunctionInliningPass(this.stage("FunctionInlining"));
 	}
 
 	public void addGlobalDCEPass() {
-		LLVMAddGlobalDCEPass(this.manager);
+		LLVMAddGlobalDCEPass(this.stage("GlobalDCE"));
 	}
 
 	public void addGlobalOptimizerPass() {
-		LLVMAddGlobalOptimizerPass(this.manager);
+		LLVMAddGlobalOptimizerPass(this.stage("GlobalOptimizer"));
 	}
 
 	public void addIPConstantPropagationPass() {
-		LLVMAddIPConstantPropagationPass(this.manager);
+		LLVMAddIPConstantPropagationPass(this.stage("IPConstantPropagation"));
 	}
 
 	public void addPruneEHPass() {
-		LLVMAddPruneEHPass(this.manager);
+		LLVMAddPruneEHPass(this.stage("PruneEH"));
 	}
 
 	public void addIPSCCPPass() {
-		LLVMAddIPSCCPPass(this.manager);
+		LLVMAddIPSCCPPass(this.stage("IPSCCP"));
 	}
 
 	public void addInternalizePass(boolean allButMain) {
-		LLVMAddInternalizePass(this.manager, allButMain ? 1 : 0);
+		LLVMAddInternalizePass(this.stage("Internalize", "Internalize("
+				+ allButMain + ")"), allButMain ? 1 : 0);
 	}
 
 	public void addStripDeadPrototypesPass() {
-		LLVMAddStripDeadPrototypesPass(this.manager);
+		LLVMAddStripDeadPrototypesPass(this.stage("StripDeadPrototypes"));
 	}
 
 	public void addStripSymbolsPass() {
-		LLVMAddStripSymbolsPass(this.manager);
+		LLVMAddStripSymbolsPass(this.stage("StripSymbols"));
 	}
 
 	public void addAggressiveDCEPass() {
-		LLVMAddAggressiveDCEPass(this.manager);
+		LLVMAddAggressiveDCEPass(this.stage("AggressiveDCE"));
 	}
 
 	public void addCFGSimplificationPass() {
-		LLVMAddCFGSimplificationPass(this.manager);
+		LLVMAddCFGSimplificationPass(this.stage("CFGSimplification"));
 	}
 
 	public void addDeadStoreEliminationPass() {
-		LLVMAddDeadStoreEliminationPass(this.manager);
+		LLVMAddDeadStoreEliminationPass(this.stage("DeadStoreElimination"));
 	}
 
 	public void addGVNPass() {
-		LLVMAddGVNPass(this.manager);
+		LLVMAddGVNPass(this.stage("GVN"));
 	}
 
 	public void addIndVarSimplifyPass() {
-		LLVMAddIndVarSimplifyPass(this.manager);
+		LLVMAddIndVarSimplifyPass(this.stage("IndVarSimplify"));
 	}
 
 	public void addInstructionCombiningPass() {
-		LLVMAddInstructionCombiningPass(this.manager);
+		LLVMAddInstructionCombiningPass(this.stage("InstructionCombining"));
 	}
 
 	public void addJumpThreadingPass() {
-		LLVMAddJumpThreadingPass(this.manager);
+		LLVMAddJumpThreadingPass(this.stage("JumpThreading"));
 	}
 
 	public void addLICMPass() {
-		LLVMAddLICMPass(this.manager);
+		LLVMAddLICMPass(this.stage("LICM"));
 	}
 
 	public void addLoopDeletionPass() {
-		LLVMAddLoopDeletionPass(this.manager);
+		LLVMAddLoopDeletionPass(this.stage("LoopDeletion"));
 	}
 
 	public void addLoopRotatePass() {
-		LLVMAddLoopRotatePass(this.manager);
+		LLVMAddLoopRotatePass(this.stage("LoopRotate"));
 	}
 
 	public void addLoopUnrollPass() {
-		LLVMAddLoopUnrollPass(this.manager);
+		LLVMAddLoopUnrollPass(this.stage("LoopUnroll"));
 	}
 
 	public void addLoopUnswitchPass() {
-		LLVMAddLoopUnswitchPass(this.manager);
+		LLVMAddLoopUnswitchPass(this.stage("LoopUnswitch"));
 	}
 
 	public void addMemCpyOptPass() {
-		LLVMAddMemCpyOptPass(this.manager);
+		LLVMAddMemCpyOptPass(this.stage("MemCpyOpt"));
 	}
 
 	public void addPromoteMemoryToRegisterPass() {
-		LLVMAddPromoteMemoryToRegisterPass(this.manager);
+		LLVMAddPromoteMemoryToRegisterPass(this
+				.stage("PromoteMemoryToRegister"));
 	}
 
 	public void addReassociatePass() {
-		LLVMAddReassociatePass(this.manager);
+		LLVMAddReassociatePass(this.stage("Reassociate"));
 	}
 
 	public void addSCCPPass() {
-		LLVMAddSCCPPass(this.manager);
+		LLVMAddSCCPPass(this.stage("SCCP"));
 	}
 
 	public void addScalarReplAggregatesPass() {
-		LLVMAddScalarReplAggregatesPass(this.manager);
+		LLVMAddScalarReplAggregatesPass(this.stage("ScalarReplAggregates"));
 	}
 
 	public void addScalarReplAggregatesPassWithThreshold(int threshold) {
-		LLVMAddScalarReplAggregatesPassWithThreshold(this.manager, threshold);
+		LLVMAddScalarReplAggregatesPassWithThreshold(this.stage(
+				"ScalarReplAggregates", "ScalarReplAggregates(" + threshold
+						+ ")"), threshold);
 	}
 
 	public void addSimplifyLibCallsPass() {
-		LLVMAddSimplifyLibCallsPass(this.manager);
+		LLVMAddSimplifyLibCallsPass(this.stage("SimplifyLibCalls"));
 	}
 
 	public void addTailCallEliminationPass() {
-		LLVMAddTailCallEliminationPass(this.manager);
+		LLVMAddTailCallEliminationPass(this.stage("TailCallElimination"));
 	}
 
 	public void addConstantPropagationPass() {
-		LLVMAddConstantPropagationPass(this.manager);
+		LLVMAddConstantPropagationPass(this.stage("ConstantPropagation"));
 	}
 
 	public void addDemoteMemoryToRegisterPass() {
-		LLVMAddDemoteMemoryToRegisterPass(this.manager);
+		LLVMAddDemoteMemoryToRegisterPass(this
+				.stage("DemoteMemoryToRegister"));
 	}
 
 	public void addVerifierPass() {
-		LLVMAddVerifierPass(this.manager);
+		LLVMAddVerifierPass(this.stage("Verifier"));
+	}
+
+	public void addLoopVectorizePass() {
+		LLVMAddLoopVectorizePass(this.stage("LoopVectorize"));
+	}
+
+	public void addSLPVectorizePass() {
+		LLVMAddSLPVectorizePass(this.stage("SLPVectorize"));
+	}
+
+	private static final class Disposer implements Runnable {
+		private final LLVMPassManagerRef manager;
+
+		private final List<LLVMPassManagerRef> stages;
+
+		Disposer(LLVMPassManagerRef manager, List<LLVMPassManagerRef> stages) {
+			this.manager = manager;
+			this.stages = stages;
+		}
+
+		public void run() {
+			if (this.stages != null) {
+				for (LLVMPassManagerRef pm : this.stages) {
+					LLVMDisposePassManager(pm);
+				}
+			}
+			LLVMDisposePassManager(this.manager);
+		}
 	}
 
-}
\ No newline at end of file
+}
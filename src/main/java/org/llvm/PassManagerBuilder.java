@@ -0,0 +1,132 @@
+package org.llvm;
+
+import static org.llvm.binding.LLVMLibrary.*;
+
+import org.llvm.binding.LLVMLibrary.LLVMPassManagerBuilderRef;
+
+/**
+ * Fills pass managers with the standard pipeline of an optimization level,<br>
+ * as opt -O2 and friends do:
+ *
+ * <pre>
+ * PassManager pm = PassManager.create();
+ * new PassManagerBuilder(OptimizationLevel.O2).populateModulePassManager(pm);
+ * pm.runForModule(m);
+ * </pre>
+ *
+ * The settings live on the Java side; the native builder only exists while<br>
+ * a pass manager is populated, so a PassManagerBuilder needs no disposal<br>
+ * and may be shared once configured.
+ */
+public class PassManagerBuilder {
+
+	private final OptimizationLevel level;
+
+	private int inlinerThreshold;
+
+	private boolean unrollLoops;
+
+	private boolean vectorize;
+
+	/**
+	 * A builder with the defaults clang uses for the level.
+	 */
+	public PassManagerBuilder(OptimizationLevel level) {
+		this.level = level;
+		this.inlinerThreshold = level.getDefaultInlinerThreshold();
+		this.unrollLoops = level.getOptLevel() > 1 && level.getSizeLevel() == 0;
+		this.vectorize = level.getOptLevel() > 1 && level.getSizeLevel() < 2;
+	}
+
+	public OptimizationLevel getLevel() {
+		return this.level;
+	}
+
+	/**
+	 * Set the inline cost threshold, or -1 to run no inliner.
+	 */
+	public PassManagerBuilder setInlinerThreshold(int threshold) {
+		this.inlinerThreshold = threshold;
+		return this;
+	}
+
+	public int getInlinerThreshold() {
+		return this.inlinerThreshold;
+	}
+
+	public PassManagerBuilder setUnrollLoops(boolean unroll) {
+		this.unrollLoops = unroll;
+		return this;
+	}
+
+	public boolean isUnrollLoops() {
+		return this.unrollLoops;
+	}
+
+	/**
+	 * Run the loop and SLP vectorizers after the module pipeline.
+	 */
+	public PassManagerBuilder setVectorize(boolean vectorize) {
+		this.vectorize = vectorize;
+		return this;
+	}
+
+	public boolean isVectorize() {
+		return this.vectorize;
+	}
+
+	/**
+	 * Add the per-function cleanup passes of the level to a pass manager<br>
+	 * obtained from PassManager.createForModule().
+	 */
+	public void populateFunctionPassManager(PassManager fpm) {
+		LLVMPassManagerBuilderRef pmb = this.create();
+		try {
+			LLVMPassManagerBuilderPopulateFunctionPassManager(pmb,
+					fpm.manager());
+		} finally {
+			LLVMPassManagerBuilderDispose(pmb);
+		}
+	}
+
+	/**
+	 * Add the whole-module pipeline of the level to a pass manager obtained<br>
+	 * from PassManager.create().
+	 */
+	public void populateModulePassManager(PassManager pm) {
+		LLVMPassManagerBuilderRef pmb = this.create();
+		try {
+			LLVMPassManagerBuilderPopulateModulePassManager(pmb,
+					pm.stage(this.level + " module pipeline", this.level
+							+ "(inline=" + this.inlinerThreshold + ",unroll="
+							+ this.unrollLoops + ")"));
+		} finally {
+			LLVMPassManagerBuilderDispose(pmb);
+		}
+
+		/*
+		 * The C API cannot switch on the vectorizers of the builder; add
+		 * them, with the cleanup the builder would schedule after them.
+		 */
+		if (this.vectorize && this.level.getOptLevel() > 0) {
+			pm.addLoopVectorizePass();
+			pm.addSLPVectorizePass();
+			pm.addInstructionCombiningPass();
+			pm.addCFGSimplificationPass();
+		}
+	}
+
+	private LLVMPassManagerBuilderRef create() {
+		LLVMPassManagerBuilderRef pmb = LLVMPassManagerBuilderCreate();
+		LLVMPassManagerBuilderSetOptLevel(pmb, this.level.getOptLevel());
+		LLVMPassManagerBuilderSetSizeLevel(pmb, this.level.getSizeLevel());
+		LLVMPassManagerBuilderSetDisableUnrollLoops(pmb, this.unrollLoops ? 0
+				: 1);
+		if (this.inlinerThreshold >= 0) {
+			LLVMPassManagerBuilderUseInlinerWithThreshold(pmb,
+					this.inlinerThreshold);
+		}
+		return pmb;
+	}
+
+}
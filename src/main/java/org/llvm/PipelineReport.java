@@ -0,0 +1,176 @@
+package org.llvm;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.llvm.binding.LLVMRaw;
+
+/**
+ * Timing and size statistics of one run of an instrumented pass manager<br>
+ * (see PassManager.createInstrumented()). There is one stage per pass added<br>
+ * to the pipeline, or per pipeline populated by a PassManagerBuilder, in<br>
+ * the order they ran.
+ */
+public final class PipelineReport {
+
+	/**
+	 * Receives the report of every run of an instrumented pass manager.
+	 */
+	public interface Sink {
+		void report(PipelineReport report);
+	}
+
+	/**
+	 * Statistics of a single stage of the pipeline.
+	 */
+	public static final class Stage {
+
+		private final String name;
+
+		private final long nanos;
+
+		private final boolean modified;
+
+		private final int blocksBefore;
+
+		private final int blocksAfter;
+
+		private final int instructionsBefore;
+
+		private final int instructionsAfter;
+
+		Stage(String name, long nanos, boolean modified, int blocksBefore,
+				int blocksAfter, int instructionsBefore, int instructionsAfter) {
+			this.name = name;
+			this.nanos = nanos;
+			this.modified = modified;
+			this.blocksBefore = blocksBefore;
+			this.blocksAfter = blocksAfter;
+			this.instructionsBefore = instructionsBefore;
+			this.instructionsAfter = instructionsAfter;
+		}
+
+		/**
+		 * The pass name, e.g. "GVN" for addGVNPass().
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * Wall time of the stage in nanoseconds, excluding the counting.
+		 */
+		public long getNanos() {
+			return this.nanos;
+		}
+
+		public boolean isModified() {
+			return this.modified;
+		}
+
+		public int getBlocksBefore() {
+			return this.blocksBefore;
+		}
+
+		public int getBlocksAfter() {
+			return this.blocksAfter;
+		}
+
+		public int getInstructionsBefore() {
+			return this.instructionsBefore;
+		}
+
+		public int getInstructionsAfter() {
+			return this.instructionsAfter;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-28s %10.3f ms  blocks %6d -> %-6d"
+					+ "  instructions %7d -> %-7d%s", this.name,
+					this.nanos / 1e6, this.blocksBefore, this.blocksAfter,
+					this.instructionsBefore, this.instructionsAfter,
+					this.modified ? "" : "  (unchanged)");
+		}
+	}
+
+	private final List<Stage> stages;
+
+	PipelineReport(Stage[] stages) {
+		this.stages = Collections.unmodifiableList(Arrays.asList(stages));
+	}
+
+	public List<Stage> getStages() {
+		return this.stages;
+	}
+
+	/**
+	 * Returns true if any stage modified the module.
+	 */
+	public boolean isModified() {
+		for (Stage s : this.stages) {
+			if (s.modified) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Total wall time of all stages in nanoseconds.
+	 */
+	public long getTotalNanos() {
+		long total = 0;
+		for (Stage s : this.stages) {
+			total += s.nanos;
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the slowest stage, or null for an empty pipeline.
+	 */
+	public Stage getSlowestStage() {
+		Stage slowest = null;
+		for (Stage s : this.stages) {
+			if (slowest == null || s.nanos > slowest.nanos) {
+				slowest = s;
+			}
+		}
+		return slowest;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("pipeline: %.3f ms", this.getTotalNanos() / 1e6));
+		for (Stage s : this.stages) {
+			sb.append('\n').append("  ").append(s);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Counts the basic blocks and instructions of the function definitions<br>
+	 * of a module into counts[0] and counts[1].
+	 */
+	static void measure(long module, int[] counts) {
+		int blocks = 0;
+		int instructions = 0;
+		for (long f = LLVMRaw.LLVMGetFirstFunction(module); f != 0; f = LLVMRaw
+				.LLVMGetNextFunction(f)) {
+			for (long bb = LLVMRaw.LLVMGetFirstBasicBlock(f); bb != 0; bb = LLVMRaw
+					.LLVMGetNextBasicBlock(bb)) {
+				blocks++;
+				for (long i = LLVMRaw.LLVMGetFirstInstruction(bb); i != 0; i = LLVMRaw
+						.LLVMGetNextInstruction(i)) {
+					instructions++;
+				}
+			}
+		}
+		counts[0] = blocks;
+		counts[1] = instructions;
+	}
+
+}
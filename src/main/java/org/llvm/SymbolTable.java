@@ -0,0 +1,168 @@
+package org.llvm;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.bridj.Pointer;
+import org.llvm.binding.LLVMRaw;
+
+/**
+ * The functions and global variables of a module by name, so that lookups<br>
+ * neither allocate a C string nor make a native call, whether the name is<br>
+ * present or not. Built on the first lookup with one walk over the module<br>
+ * and kept current by the wrappers that add, delete or rename globals,<br>
+ * including the builder's global strings. Operations that may change the<br>
+ * symbols wholesale, like module passes, forget the table; it is rebuilt<br>
+ * on the next lookup. Changes made through raw LLVMLibrary calls are not<br>
+ * seen.
+ */
+final class SymbolTable {
+
+	private static final ConcurrentMap<Long, SymbolTable> TABLES = new ConcurrentHashMap<Long, SymbolTable>();
+
+	/* The table of each global in a table, unnamed ones included. */
+	private static final ConcurrentMap<Long, SymbolTable> OWNERS = new ConcurrentHashMap<Long, SymbolTable>();
+
+	private final Map<String, Long> functions = new HashMap<String, Long>();
+
+	private final Map<String, Long> globals = new HashMap<String, Long>();
+
+	/* The name each symbol was entered under, to remove it. */
+	private final Map<Long, String> names = new HashMap<Long, String>();
+
+	private SymbolTable(long module) {
+		for (long f = LLVMRaw.LLVMGetFirstFunction(module); f != 0; f = LLVMRaw
+				.LLVMGetNextFunction(f)) {
+			this.enter(this.functions, f, name(f));
+		}
+		for (long g = LLVMRaw.LLVMGetFirstGlobal(module); g != 0; g = LLVMRaw
+				.LLVMGetNextGlobal(g)) {
+			this.enter(this.globals, g, name(g));
+		}
+	}
+
+	/**
+	 * Returns the table of a module, building it if needed.
+	 */
+	static SymbolTable of(long module) {
+		SymbolTable t = TABLES.get(module);
+		if (t == null) {
+			SymbolTable created = new SymbolTable(module);
+			t = TABLES.putIfAbsent(module, created);
+			if (t == null) {
+				t = created;
+			}
+		}
+		return t;
+	}
+
+	/**
+	 * Drop the table of a module, e.g. when it is freed.
+	 */
+	static void forget(long module) {
+		if (!TABLES.isEmpty()) {
+			SymbolTable t = TABLES.remove(module);
+			if (t != null) {
+				synchronized (t) {
+					for (Long v : t.names.keySet()) {
+						OWNERS.remove(v, t);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the table of a module if it was built, or null.
+	 */
+	static SymbolTable peek(long module) {
+		return TABLES.get(module);
+	}
+
+	static boolean isEmpty() {
+		return TABLES.isEmpty();
+	}
+
+	/**
+	 * Returns the address of the named function, or 0.
+	 */
+	synchronized long function(String name) {
+		Long f = this.functions.get(name);
+		return f == null ? 0 : f;
+	}
+
+	/**
+	 * Returns the address of the named global variable, or 0.
+	 */
+	synchronized long global(String name) {
+		Long g = this.globals.get(name);
+		return g == null ? 0 : g;
+	}
+
+	/* LLVM renames a symbol on a clash, so the name is read back. */
+	synchronized void addedFunction(long f) {
+		this.enter(this.functions, f, name(f));
+	}
+
+	synchronized void addedGlobal(long g) {
+		this.enter(this.globals, g, name(g));
+	}
+
+	synchronized void removed(long v) {
+		String name = this.names.remove(v);
+		if (name != null) {
+			OWNERS.remove(v, this);
+			this.functions.remove(name, v);
+			this.globals.remove(name, v);
+		}
+	}
+
+	synchronized void renamed(long v) {
+		this.removed(v);
+		this.enter(LLVMRaw.LLVMIsAFunction(v) != 0 ? this.functions
+				: this.globals, v, name(v));
+	}
+
+	/*
+	 * Called by Value when a global value is deleted or any value renamed;
+	 * values not in a table, like instructions, cost one hash lookup.
+	 */
+	static void globalDeleted(long v) {
+		SymbolTable t = OWNERS.get(v);
+		if (t != null) {
+			t.removed(v);
+		}
+	}
+
+	/* Called by Builder for the global variables it creates. */
+	static void globalCreated(long g) {
+		SymbolTable t = TABLES.get(LLVMRaw.LLVMGetGlobalParent(g));
+		if (t != null) {
+			t.addedGlobal(g);
+		}
+	}
+
+	static void valueRenamed(long v) {
+		SymbolTable t = OWNERS.get(v);
+		if (t != null) {
+			t.renamed(v);
+		}
+	}
+
+	private void enter(Map<String, Long> map, long v, String name) {
+		/* Unnamed globals cannot be looked up, but may be named later. */
+		if (!name.isEmpty()) {
+			map.put(name, v);
+		}
+		this.names.put(v, name);
+		OWNERS.put(v, this);
+	}
+
+	private static String name(long v) {
+		return Pointer.pointerToAddress(LLVMRaw.LLVMGetValueName(v),
+				Byte.class).getCString();
+	}
+
+}
@@ -0,0 +1,350 @@
+package org.llvm;
+
+import static org.llvm.binding.LLVMLibrary.LLVMGetModuleContext;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bridj.DynamicFunction;
+import org.bridj.Pointer;
+
+/**
+ * Runs a module in the interpreter first and compiles it once one of its<br>
+ * functions gets hot. Callers obtain functions through getFunction() as an<br>
+ * implementation of a single-method interface, as with<br>
+ * ExecutionEngine.getFunction(); each call is interpreted until the<br>
+ * function has been invoked threshold times, after which the module is<br>
+ * cloned, optionally re-optimized, and compiled with MCJIT, and the same<br>
+ * handle calls the machine code from then on.
+ * <p>
+ * Invocations are counted per function, but MCJIT compiles whole modules,<br>
+ * so the first hot function promotes its entire module. Compilation<br>
+ * happens on the calling thread. The clone lives in the context of the<br>
+ * module, and contexts are not thread-safe, so interpretation,<br>
+ * compilation and the lookup of machine code share one lock: calls on<br>
+ * other threads wait while the module is compiled. If compilation fails, the module stays interpreted and the<br>
+ * error is available from getCompileError(); it is tried again after<br>
+ * another threshold calls, or by compile().
+ */
+public class TieredEngine implements AutoCloseable {
+
+	/* Also the lock of everything using the context of the module. */
+	private final ExecutionEngine interpreter;
+
+	/* Owned by the interpreter; the source of the compiled clone. */
+	private final Module module;
+
+	private final long threshold;
+
+	private final int optLevel;
+
+	private final PassManagerBuilder pipeline;
+
+	private final AtomicBoolean promoting = new AtomicBoolean();
+
+	private volatile ExecutionEngine jit;
+
+	private volatile Module compiled;
+
+	private volatile LLVMException compileError;
+
+	private TieredEngine(Module m, long threshold, int optLevel,
+			PassManagerBuilder pipeline) throws LLVMException {
+		this.interpreter = ExecutionEngine.createInterpreterForModule(m);
+		this.module = m;
+		this.threshold = threshold;
+		this.optLevel = optLevel;
+		this.pipeline = pipeline;
+	}
+
+	/**
+	 * Create a tiered engine, which takes ownership of the module.
+	 *
+	 * @param threshold
+	 *        Number of interpreted calls of a function after which the<br>
+	 *        module is compiled; 0 compiles on the first call.
+	 * @param optLevel
+	 *        Code generation optimisation level passed to MCJIT.
+	 * @param pipeline
+	 *        IR pipeline run over the clone before compilation, or null.
+	 */
+	public static TieredEngine create(Module m, long threshold, int optLevel,
+			PassManagerBuilder pipeline) throws LLVMException {
+		return new TieredEngine(m, threshold, optLevel, pipeline);
+	}
+
+	/**
+	 * Destroy both tiers and the modules they own.
+	 */
+	public void dispose() {
+		ExecutionEngine e = this.jit;
+		if (e != null) {
+			e.dispose();
+			this.jit = null;
+		}
+		this.interpreter.dispose();
+	}
+
+	@Override
+	public void close() {
+		this.dispose();
+	}
+
+	/**
+	 * Returns whether the module has been compiled to machine code.
+	 */
+	public boolean isCompiled() {
+		return this.jit != null;
+	}
+
+	/**
+	 * Returns why compiling the module failed, or null.
+	 */
+	public LLVMException getCompileError() {
+		return this.compileError;
+	}
+
+	/**
+	 * Compile the module now instead of waiting for a hot function.
+	 */
+	public void compile() throws LLVMException {
+		this.promote();
+		if (this.compileError != null) {
+			throw this.compileError;
+		}
+	}
+
+	/**
+	 * Returns an implementation of the given single-method interface that<br>
+	 * calls the named function, interpreted or compiled depending on the<br>
+	 * tier. Parameters and results may be primitives (except char) or<br>
+	 * BridJ pointers.
+	 */
+	public <T> T getFunction(String name, Class<T> type) throws LLVMException {
+		Value f = this.module.getNamedFunction(name);
+		Method method = JITFunction.functionalMethod(type);
+		Class<?>[] params = method.getParameterTypes();
+		if (f.countParams() != params.length) {
+			throw new IllegalArgumentException("function " + name + " takes "
+					+ f.countParams() + " parameters, " + type.getName()
+					+ " passes " + params.length);
+		}
+
+		TypeRef[] paramTypes = new TypeRef[params.length];
+		for (int i = 0; i < params.length; i++) {
+			paramTypes[i] = f.getParam(i).typeOf();
+		}
+		TypeRef returnType = f.typeOf().getElementType().getReturnType();
+
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(),
+				new Class<?>[] { type }, new Tier(name, f, type, method,
+						paramTypes, returnType)));
+	}
+
+	private void promote() {
+		if (this.jit != null || !this.promoting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			synchronized (this.interpreter) {
+				this.compileClone();
+			}
+		} finally {
+			this.promoting.set(false);
+		}
+	}
+
+	private void compileClone() {
+		Module clone = null;
+		try {
+			MemoryBuffer bitcode = this.module.writeBitcodeToMemoryBuffer();
+			try {
+				clone = Module.parseBitcode(
+						LLVMGetModuleContext(this.module.module()), bitcode,
+						this.module.keptContext());
+			} finally {
+				bitcode.dispose();
+			}
+
+			if (this.pipeline != null) {
+				PassManager pm = PassManager.create();
+				try {
+					this.pipeline.populateModulePassManager(pm);
+					pm.runForModule(clone);
+				} finally {
+					pm.dispose();
+				}
+			}
+
+			ExecutionEngine e = ExecutionEngine.createMCJITCompilerForModule(
+					clone, this.optLevel);
+			/* Published before the engine, which Tier.bind() checks first. */
+			this.compiled = clone;
+			this.compileError = null;
+			this.jit = e;
+		} catch (LLVMException e) {
+			this.failed(clone, e);
+		} catch (RuntimeException e) {
+			this.failed(clone, new LLVMException("compilation failed: " + e));
+		}
+	}
+
+	private void failed(Module clone, LLVMException e) {
+		if (clone != null) {
+			clone.dispose();
+		}
+		this.compiled = null;
+		this.compileError = e;
+	}
+
+	/* Dispatches the calls on one function handle. */
+	private final class Tier implements InvocationHandler {
+
+		private final String name;
+
+		private final Value function;
+
+		private final Class<?> type;
+
+		private final Method method;
+
+		private final TypeRef[] paramTypes;
+
+		private final TypeRef returnType;
+
+		private final AtomicLong calls = new AtomicLong();
+
+		private volatile DynamicFunction<?> machineCode;
+
+		Tier(String name, Value function, Class<?> type, Method method,
+				TypeRef[] paramTypes, TypeRef returnType) {
+			this.name = name;
+			this.function = function;
+			this.type = type;
+			this.method = method;
+			this.paramTypes = paramTypes;
+			this.returnType = returnType;
+		}
+
+		public Object invoke(Object proxy, Method m, Object[] args)
+				throws Throwable {
+			if (!m.equals(this.method)) {
+				return JITFunction.invokeObjectMethod(proxy, m, args,
+						"TieredFunction[" + this.name + ", "
+								+ (this.machineCode != null ? "compiled"
+										: "interpreted") + "]");
+			}
+
+			DynamicFunction<?> code = this.machineCode;
+			if (code == null) {
+				if (TieredEngine.this.jit == null
+						&& this.calls.incrementAndGet() > TieredEngine.this.threshold) {
+					TieredEngine.this.promote();
+					if (TieredEngine.this.jit == null) {
+						/* Failed or in progress: count up to the next try. */
+						this.calls.set(0);
+					}
+				}
+				code = this.bind();
+			}
+			if (code != null) {
+				LLVMStatistics.compiledCall();
+				return code.apply(args == null ? new Object[0] : args);
+			}
+			return this.interpret(args);
+		}
+
+		/* Looks up the machine code once the module is compiled. */
+		private DynamicFunction<?> bind() throws LLVMException {
+			ExecutionEngine e = TieredEngine.this.jit;
+			if (e == null) {
+				return null;
+			}
+			Pointer<?> address;
+			/* The first lookup generates the code, in the shared context. */
+			synchronized (TieredEngine.this.interpreter) {
+				Value f = TieredEngine.this.compiled
+						.getNamedFunction(this.name);
+				address = e.getPointerToGlobal(f);
+			}
+			DynamicFunction<?> code = JITFunction.function(address, this.type,
+					this.method);
+			LLVMStatistics.boundFunction();
+			this.machineCode = code;
+			return code;
+		}
+
+		private Object interpret(Object[] args) {
+			Class<?>[] params = this.method.getParameterTypes();
+			GenericValue[] values = new GenericValue[params.length];
+			GenericValue result = null;
+			try {
+				synchronized (TieredEngine.this.interpreter) {
+					for (int i = 0; i < params.length; i++) {
+						values[i] = toGenericValue(this.paramTypes[i],
+								params[i], args[i]);
+					}
+					result = TieredEngine.this.interpreter.runFunction(
+							this.function, values);
+					return fromGenericValue(this.returnType,
+							this.method.getReturnType(), result);
+				}
+			} finally {
+				if (result != null) {
+					result.dispose();
+				}
+				for (GenericValue v : values) {
+					if (v != null) {
+						v.dispose();
+					}
+				}
+			}
+		}
+	}
+
+	private static GenericValue toGenericValue(TypeRef ty, Class<?> c, Object v) {
+		if (c == double.class || c == float.class) {
+			return GenericValue.createFloat(ty, ((Number) v).doubleValue());
+		}
+		if (c == boolean.class) {
+			return GenericValue.createInt(ty, ((Boolean) v) ? 1 : 0, false);
+		}
+		if (c.isPrimitive()) {
+			return GenericValue.createInt(ty, ((Number) v).longValue(), true);
+		}
+		return GenericValue.createPtr((Pointer<?>) v);
+	}
+
+	private static Object fromGenericValue(TypeRef ty, Class<?> c,
+			GenericValue v) {
+		if (c == void.class) {
+			return null;
+		}
+		if (c == double.class) {
+			return v.toFloat(ty);
+		}
+		if (c == float.class) {
+			return (float) v.toFloat(ty);
+		}
+		if (c == boolean.class) {
+			return v.toInt(false) != 0;
+		}
+		if (c == long.class) {
+			return v.toInt(true);
+		}
+		if (c == int.class) {
+			return (int) v.toInt(true);
+		}
+		if (c == short.class) {
+			return (short) v.toInt(true);
+		}
+		if (c == byte.class) {
+			return (byte) v.toInt(true);
+		}
+		return v.toPointer();
+	}
+
+}
@@ -0,0 +1,269 @@
+package org.llvm;
+
+import static org.llvm.binding.LLVMLibrary.*;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bridj.Pointer;
+import org.llvm.binding.LLVMLibrary.LLVMContextRef;
+import org.llvm.binding.LLVMLibrary.LLVMTypeRef;
+
+/**
+ * Canonical TypeRef instances of one context. LLVM already uniques its<br>
+ * types; the cache saves the native call and the wrapper allocation when<br>
+ * the same primitive, pointer, array, vector or function type is asked for<br>
+ * again. Struct types are not cached. A cache lives until its context is<br>
+ * disposed.
+ */
+final class TypeCache {
+
+	static final int INT1 = 0;
+	static final int INT8 = 1;
+	static final int INT16 = 2;
+	static final int INT32 = 3;
+	static final int INT64 = 4;
+	static final int FLOAT = 5;
+	static final int DOUBLE = 6;
+	static final int X86_FP80 = 7;
+	static final int FP128 = 8;
+	static final int PPC_FP128 = 9;
+	static final int VOID = 10;
+	static final int LABEL = 11;
+	static final int X86_MMX = 12;
+
+	private static final int PRIMITIVES = 13;
+
+	private static final int POINTER = 0;
+	private static final int ARRAY = 1;
+	private static final int VECTOR = 2;
+
+	private static final ConcurrentHashMap<Long, TypeCache> CACHES = new ConcurrentHashMap<Long, TypeCache>();
+
+	private static volatile TypeCache global;
+
+	private final LLVMContextRef context;
+
+	private final TypeRef[] primitives = new TypeRef[PRIMITIVES];
+
+	private final ConcurrentHashMap<Integer, TypeRef> ints = new ConcurrentHashMap<Integer, TypeRef>();
+
+	private final ConcurrentHashMap<Derived, TypeRef> derived = new ConcurrentHashMap<Derived, TypeRef>();
+
+	private final ConcurrentHashMap<Signature, TypeRef> functions = new ConcurrentHashMap<Signature, TypeRef>();
+
+	private TypeCache(LLVMContextRef context) {
+		this.context = context;
+	}
+
+	/**
+	 * Returns the cache of a context, creating it on first use.
+	 */
+	static TypeCache of(LLVMContextRef context) {
+		Long peer = Pointer.getPeer(context);
+		TypeCache cache = CACHES.get(peer);
+		if (cache == null) {
+			cache = new TypeCache(context);
+			TypeCache previous = CACHES.putIfAbsent(peer, cache);
+			if (previous != null) {
+				cache = previous;
+			}
+		}
+		return cache;
+	}
+
+	static TypeCache global() {
+		TypeCache cache = global;
+		if (cache == null) {
+			cache = of(LLVMGetGlobalContext());
+			global = cache;
+		}
+		return cache;
+	}
+
+	/**
+	 * Drop the cache of a context about to be disposed, so that a context<br>
+	 * later allocated at the same address starts empty.
+	 */
+	static void forget(LLVMContextRef context) {
+		CACHES.remove(Pointer.getPeer(context));
+	}
+
+	TypeRef primitive(int kind) {
+		TypeRef t = this.primitives[kind];
+		if (t == null) {
+			synchronized (this.primitives) {
+				t = this.primitives[kind];
+				if (t == null) {
+					t = new TypeRef(this.createPrimitive(kind), this);
+					this.primitives[kind] = t;
+				}
+			}
+		}
+		return t;
+	}
+
+	TypeRef intType(int numBits) {
+		switch (numBits) {
+		case 1:
+			return this.primitive(INT1);
+		case 8:
+			return this.primitive(INT8);
+		case 16:
+			return this.primitive(INT16);
+		case 32:
+			return this.primitive(INT32);
+		case 64:
+			return this.primitive(INT64);
+		}
+		TypeRef t = this.ints.get(numBits);
+		if (t == null) {
+			t = this.intern(this.ints, numBits, new TypeRef(
+					LLVMIntTypeInContext(this.context, numBits), this));
+		}
+		return t;
+	}
+
+	TypeRef pointerType(TypeRef pointee, int addressSpace) {
+		return this.derived(POINTER, pointee, addressSpace);
+	}
+
+	TypeRef arrayType(TypeRef element, int elementCount) {
+		return this.derived(ARRAY, element, elementCount);
+	}
+
+	TypeRef vectorType(TypeRef element, int elementCount) {
+		return this.derived(VECTOR, element, elementCount);
+	}
+
+	TypeRef functionType(TypeRef returnType, boolean isVarArg,
+			TypeRef[] paramTypes) {
+		Signature key = new Signature(returnType, isVarArg, paramTypes);
+		TypeRef t = this.functions.get(key);
+		if (t == null) {
+			t = this.intern(this.functions, key, new TypeRef(LLVMFunctionType(
+					returnType.type(), TypeRef.internalize(paramTypes),
+					paramTypes.length, isVarArg ? 1 : 0), this));
+		}
+		return t;
+	}
+
+	private TypeRef derived(int kind, TypeRef element, int n) {
+		Derived key = new Derived(kind, Pointer.getPeer(element.type()), n);
+		TypeRef t = this.derived.get(key);
+		if (t == null) {
+			LLVMTypeRef ref;
+			switch (kind) {
+			case POINTER:
+				ref = LLVMPointerType(element.type(), n);
+				break;
+			case ARRAY:
+				ref = LLVMArrayType(element.type(), n);
+				break;
+			default:
+				ref = LLVMVectorType(element.type(), n);
+				break;
+			}
+			t = this.intern(this.derived, key, new TypeRef(ref, this));
+		}
+		return t;
+	}
+
+	private <K> TypeRef intern(ConcurrentHashMap<K, TypeRef> map, K key,
+			TypeRef t) {
+		TypeRef previous = map.putIfAbsent(key, t);
+		return previous != null ? previous : t;
+	}
+
+	private LLVMTypeRef createPrimitive(int kind) {
+		switch (kind) {
+		case INT1:
+			return LLVMInt1TypeInContext(this.context);
+		case INT8:
+			return LLVMInt8TypeInContext(this.context);
+		case INT16:
+			return LLVMInt16TypeInContext(this.context);
+		case INT32:
+			return LLVMInt32TypeInContext(this.context);
+		case INT64:
+			return LLVMInt64TypeInContext(this.context);
+		case FLOAT:
+			return LLVMFloatTypeInContext(this.context);
+		case DOUBLE:
+			return LLVMDoubleTypeInContext(this.context);
+		case X86_FP80:
+			return LLVMX86FP80TypeInContext(this.context);
+		case FP128:
+			return LLVMFP128TypeInContext(this.context);
+		case PPC_FP128:
+			return LLVMPPCFP128TypeInContext(this.context);
+		case VOID:
+			return LLVMVoidTypeInContext(this.context);
+		case LABEL:
+			return LLVMLabelTypeInContext(this.context);
+		case X86_MMX:
+			return LLVMX86MMXTypeInContext(this.context);
+		default:
+			throw new IllegalArgumentException("kind " + kind);
+		}
+	}
+
+	private static final class Derived {
+		private final int kind;
+		private final long element;
+		private final int n;
+
+		Derived(int kind, long element, int n) {
+			this.kind = kind;
+			this.element = element;
+			this.n = n;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Derived)) {
+				return false;
+			}
+			Derived d = (Derived) o;
+			return this.kind == d.kind && this.element == d.element
+					&& this.n == d.n;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (this.element ^ (this.element >>> 32)) * 31
+					+ this.n * 3 + this.kind;
+		}
+	}
+
+	private static final class Signature {
+		/* The return type followed by the parameter types. */
+		private final long[] types;
+		private final boolean isVarArg;
+
+		Signature(TypeRef returnType, boolean isVarArg, TypeRef[] paramTypes) {
+			this.types = new long[paramTypes.length + 1];
+			this.types[0] = Pointer.getPeer(returnType.type());
+			for (int i = 0; i < paramTypes.length; i++) {
+				this.types[i + 1] = Pointer.getPeer(paramTypes[i].type());
+			}
+			this.isVarArg = isVarArg;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Signature)) {
+				return false;
+			}
+			Signature s = (Signature) o;
+			return this.isVarArg == s.isVarArg
+					&& Arrays.equals(this.types, s.types);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(this.types) + (this.isVarArg ? 1 : 0);
+		}
+	}
+
+}
@@ -16,12 +16,47 @@ public class TypeRef {
 
 	private final LLVMTypeRef type;
 
+	/* Set on canonical instances, which derive types through the cache. */
+	private final TypeCache cache;
+
+	/* Pointer to this type in address space 0, on canonical instances. */
+	private TypeRef pointer;
+
+	/*
+	 * Constants of canonical instances: zero-extended integers and reals,
+	 * and sign-extended negative integers, which differ above 64 bits.
+	 */
+	private ConstantPool constants;
+
+	private ConstantPool signExtended;
+
 	public LLVMTypeRef type() {
 		return this.type;
 	}
 
 	TypeRef(LLVMTypeRef type) {
+		this(type, null);
+	}
+
+	TypeRef(LLVMTypeRef type, TypeCache cache) {
 		this.type = type;
+		this.cache = cache;
+	}
+
+	/**
+	 * Types are equal when they wrap the same native type.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof TypeRef
+				&& Pointer.getPeer(this.type) == Pointer
+						.getPeer(((TypeRef) o).type);
+	}
+
+	@Override
+	public int hashCode() {
+		long peer = Pointer.getPeer(this.type);
+		return (int) (peer ^ (peer >>> 32));
 	}
 
 	/**
@@ -42,27 +77,27 @@ public class TypeRef {
 	 * Obtain an integer type from a context with specified bit width.
 	 */
 	public static TypeRef int1TypeInContext(Context c) {
-		return new TypeRef(LLVMInt1TypeInContext(c.context()));
+		return c.types().primitive(TypeCache.INT1);
 	}
 
 	public static TypeRef int8TypeInContext(Context c) {
-		return new TypeRef(LLVMInt8TypeInContext(c.context()));
+		return c.types().primitive(TypeCache.INT8);
 	}
 
 	public static TypeRef int16TypeInContext(Context c) {
-		return new TypeRef(LLVMInt16TypeInContext(c.context()));
+		return c.types().primitive(TypeCache.INT16);
 	}
 
 	public static TypeRef int32TypeInContext(Context c) {
-		return new TypeRef(LLVMInt32TypeInContext(c.context()));
+		return c.types().primitive(TypeCache.INT32);
 	}
 
 	public static TypeRef int64TypeInContext(Context c) {
-		return new TypeRef(LLVMInt64TypeInContext(c.context()));
+		return c.types().primitive(TypeCache.INT64);
 	}
 
 	public static TypeRef intTypeInContext(Context c, int NumBits) {
-		return new TypeRef(LLVMIntTypeInContext(c.context(), NumBits));
+		return c.types().intType(NumBits);
 	}
 
 	/**
@@ -70,27 +105,27 @@ public class TypeRef {
 	 * width.
 	 */
 	public static TypeRef int1Type() {
-		return new TypeRef(LLVMInt1Type());
+		return TypeCache.global().primitive(TypeCache.INT1);
 	}
 
 	public static TypeRef int8Type() {
-		return new TypeRef(LLVMInt8Type());
+		return TypeCache.global().primitive(TypeCache.INT8);
 	}
 
 	public static TypeRef int16Type() {
-		return new TypeRef(LLVMInt16Type());
+		return TypeCache.global().primitive(TypeCache.INT16);
 	}
 
 	public static TypeRef int32Type() {
-		return new TypeRef(LLVMInt32Type());
+		return TypeCache.global().primitive(TypeCache.INT32);
 	}
 
 	public static TypeRef int64Type() {
-		return new TypeRef(LLVMInt64Type());
+		return TypeCache.global().primitive(TypeCache.INT64);
 	}
 
 	public static TypeRef intType(int NumBits) {
-		return new TypeRef(LLVMIntType(NumBits));
+		return TypeCache.global().intType(NumBits);
 	}
 
 	public int getIntTypeWidth() {
@@ -101,21 +136,21 @@ public class TypeRef {
 	 * Obtain a 32-bit floating point type from a context.
 	 */
 	public static TypeRef floatTypeInContext(Context c) {
-		return new TypeRef(LLVMFloatTypeInContext(c.context()));
+		return c.types().primitive(TypeCache.FLOAT);
 	}
 
 	/**
 	 * Obtain a 64-bit floating point type from a context.
 	 */
 	public static TypeRef doubleTypeInContext(Context c) {
-		return new TypeRef(LLVMDoubleTypeInContext(c.context()));
+		return c.types().primitive(TypeCache.DOUBLE);
 	}
 
 	/**
 	 * Obtain a 80-bit floating point type (X87) from a context.
 	 */
 	public static TypeRef x86FP80TypeInContext(Context c) {
-		return new TypeRef(LLVMX86FP80TypeInContext(c.context()));
+		return c.types().primitive(TypeCache.X86_FP80);
 	}
 
 	/**
@@ -123,34 +158,34 @@ public class TypeRef {
 	 * context.
 	 */
 	public static TypeRef FP128TypeInContext(Context c) {
-		return new TypeRef(LLVMFP128TypeInContext(c.context()));
+		return c.types().primitive(TypeCache.FP128);
 	}
 
 	/**
 	 * Obtain a 128-bit floating point type (two 64-bits) from a context.
 	 */
 	public static TypeRef PPCFP128TypeInContext(Context c) {
-		return new TypeRef(LLVMPPCFP128TypeInContext(c.context()));
+		return c.types().primitive(TypeCache.PPC_FP128);
 	}
 
 	public static TypeRef floatType() {
-		return new TypeRef(LLVMFloatType());
+		return TypeCache.global().primitive(TypeCache.FLOAT);
 	}
 
 	public static TypeRef doubleType() {
-		return new TypeRef(LLVMDoubleType());
+		return TypeCache.global().primitive(TypeCache.DOUBLE);
 	}
 
 	public static TypeRef x86FP80Type() {
-		return new TypeRef(LLVMX86FP80Type());
+		return TypeCache.global().primitive(TypeCache.X86_FP80);
 	}
 
 	public static TypeRef FP128Type() {
-		return new TypeRef(LLVMFP128Type());
+		return TypeCache.global().primitive(TypeCache.FP128);
 	}
 
 	public static TypeRef PPCFP128Type() {
-		return new TypeRef(LLVMPPCFP128Type());
+		return TypeCache.global().primitive(TypeCache.PPC_FP128);
 	}
 
 	/**
@@ -160,20 +195,29 @@ public class TypeRef {
 	 */
 	public static TypeRef functionType(TypeRef returnType,
 			TypeRef... paramTypes) {
-		return new TypeRef(LLVMFunctionType(returnType.type,
-				internalize(paramTypes), paramTypes.length, 0));
+		return functionType(returnType, false, paramTypes);
 	}
 
 	public static TypeRef functionType(TypeRef returnType,
 			List<TypeRef> paramTypes) {
-		return new TypeRef(LLVMFunctionType(returnType.type,
-				internalize(paramTypes), paramTypes.size(), 0));
+		return functionType(returnType, false,
+				paramTypes.toArray(new TypeRef[paramTypes.size()]));
 	}
 
 	public static TypeRef functionType(TypeRef returnType, boolean isVarArg,
 			List<TypeRef> paramTypes) {
+		return functionType(returnType, isVarArg,
+				paramTypes.toArray(new TypeRef[paramTypes.size()]));
+	}
+
+	private static TypeRef functionType(TypeRef returnType, boolean isVarArg,
+			TypeRef[] paramTypes) {
+		if (returnType.cache != null) {
+			return returnType.cache.functionType(returnType, isVarArg,
+					paramTypes);
+		}
 		return new TypeRef(LLVMFunctionType(returnType.type,
-				internalize(paramTypes), paramTypes.size(), isVarArg ? 1 : 0));
+				internalize(paramTypes), paramTypes.length, isVarArg ? 1 : 0));
 	}
 
 	/**
@@ -318,6 +362,9 @@ public class TypeRef {
 	 * exists in.
 	 */
 	public TypeRef arrayType(int elementCount) {
+		if (this.cache != null) {
+			return this.cache.arrayType(this, elementCount);
+		}
 		return new TypeRef(LLVMArrayType(this.type, elementCount));
 	}
 
@@ -327,6 +374,12 @@ public class TypeRef {
 	 * exists in.
 	 */
 	public TypeRef pointerType(int addressSpace) {
+		if (addressSpace == 0) {
+			return this.pointerType();
+		}
+		if (this.cache != null) {
+			return this.cache.pointerType(this, addressSpace);
+		}
 		return new TypeRef(LLVMPointerType(this.type, addressSpace));
 	}
 
@@ -336,7 +389,15 @@ public class TypeRef {
 	 * exists in and the default address space (0).
 	 */
 	public TypeRef pointerType() {
-		return new TypeRef(LLVMPointerType(this.type, 0));
+		TypeRef p = this.pointer;
+		if (p == null) {
+			if (this.cache == null) {
+				return new TypeRef(LLVMPointerType(this.type, 0));
+			}
+			p = this.cache.pointerType(this, 0);
+			this.pointer = p;
+		}
+		return p;
 	}
 
 	/**
@@ -346,6 +407,9 @@ public class TypeRef {
 	 * exists in.
 	 */
 	public TypeRef vectorType(int elementCount) {
+		if (this.cache != null) {
+			return this.cache.vectorType(this, elementCount);
+		}
 		return new TypeRef(LLVMVectorType(this.type, elementCount));
 	}
 
@@ -385,14 +449,14 @@ public class TypeRef {
 	 * Create a void type in a context.
 	 */
 	public static TypeRef voidTypeInContext(Context c) {
-		return new TypeRef(LLVMVoidTypeInContext(c.context()));
+		return c.types().primitive(TypeCache.VOID);
 	}
 
 	/**
 	 * Create a label type in a context.
 	 */
 	public static TypeRef labelTypeInContext(Context c) {
-		return new TypeRef(LLVMLabelTypeInContext(c.context()));
+		return c.types().primitive(TypeCache.LABEL);
 	}
 
 	public static TypeRef opaqueTypeInContext(Context c) {
@@ -403,7 +467,7 @@ public class TypeRef {
 	 * Create a X86 MMX type in a context.
 	 */
 	public static TypeRef x86MMXTypeInContext(Context c) {
-		return new TypeRef(LLVMX86MMXTypeInContext(c.context()));
+		return c.types().primitive(TypeCache.X86_MMX);
 	}
 
 	/**
@@ -411,11 +475,11 @@ public class TypeRef {
 	 * global context.
 	 */
 	public static TypeRef voidType() {
-		return new TypeRef(LLVMVoidType());
+		return TypeCache.global().primitive(TypeCache.VOID);
 	}
 
 	public static TypeRef labelType() {
-		return new TypeRef(LLVMLabelType());
+		return TypeCache.global().primitive(TypeCache.LABEL);
 	}
 
 	public static TypeRef opaqueType() {
@@ -423,7 +487,7 @@ public class TypeRef {
 	}
 
 	public static TypeRef x86MMXType() {
-		return new TypeRef(LLVMX86MMXType());
+		return TypeCache.global().primitive(TypeCache.X86_MMX);
 	}
 
 	//public static TypeHandleRef createTypeHandle(LLVMTypeRef PotentiallyAbstractTy);
@@ -472,7 +536,17 @@ public class TypeRef {
 	 *        Whether to sign extend the produced value.
 	 */
 	public Value constInt(long n, boolean signExtend) {
-		return new Value(LLVMConstInt(this.type, n, signExtend ? 1 : 0));
+		if (this.cache == null) {
+			return new Value(LLVMConstInt(this.type, n, signExtend ? 1 : 0));
+		}
+		ConstantPool pool = signExtend && n < 0 ? this.signExtended()
+				: this.constants();
+		Value v = pool.get(n);
+		if (v == null) {
+			v = new Value(LLVMConstInt(this.type, n, signExtend ? 1 : 0));
+			pool.put(n, v);
+		}
+		return v;
 	}
 
 	/**
@@ -508,7 +582,17 @@ public class TypeRef {
 	 * Obtain a constant value referring to a double floating point value.
 	 */
 	public Value constReal(double n) {
-		return new Value(LLVMConstReal(this.type, n));
+		if (this.cache == null) {
+			return new Value(LLVMConstReal(this.type, n));
+		}
+		ConstantPool pool = this.constants();
+		long bits = Double.doubleToRawLongBits(n);
+		Value v = pool.get(bits);
+		if (v == null) {
+			v = new Value(LLVMConstReal(this.type, n));
+			pool.put(bits, v);
+		}
+		return v;
 	}
 
 	/**
@@ -537,6 +621,20 @@ public class TypeRef {
 		return new Value(LLVMSizeOf(this.type));
 	}
 
+	private synchronized ConstantPool constants() {
+		if (this.constants == null) {
+			this.constants = new ConstantPool();
+		}
+		return this.constants;
+	}
+
+	private synchronized ConstantPool signExtended() {
+		if (this.signExtended == null) {
+			this.signExtended = new ConstantPool();
+		}
+		return this.signExtended;
+	}
+
 	public static Pointer<LLVMTypeRef> internalize(TypeRef... types) {
 		int n = types.length;
 		LLVMTypeRef[] inner = new LLVMTypeRef[n];
@@ -0,0 +1,46 @@
+package org.llvm;
+
+import org.bridj.Pointer;
+import org.llvm.binding.LLVMLibrary.LLVMUseRef;
+import org.llvm.binding.LLVMLibrary.LLVMValueRef;
+import org.llvm.binding.LLVMRaw;
+
+/**
+ * An edge between a value and one of its users, i.e. one operand of an<br>
+ * instruction or constant.
+ *
+ * @see llvm::Use
+ */
+public class Use {
+	private final LLVMUseRef use;
+
+	public LLVMUseRef use() {
+		return this.use;
+	}
+
+	public Use(LLVMUseRef use) {
+		this.use = use;
+	}
+
+	/**
+	 * Obtain the user value for a use.<br>
+	 * The returned value corresponds to a llvm::User type.
+	 *
+	 * @see llvm::Use::getUser()
+	 */
+	public Value getUser() {
+		return new Value(new LLVMValueRef(LLVMRaw.LLVMGetUser(Pointer
+				.getPeer(this.use))));
+	}
+
+	/**
+	 * Obtain the value this use corresponds to.
+	 *
+	 * @see llvm::Use::get()
+	 */
+	public Value getUsedValue() {
+		return new Value(new LLVMValueRef(LLVMRaw.LLVMGetUsedValue(Pointer
+				.getPeer(this.use))));
+	}
+
+}
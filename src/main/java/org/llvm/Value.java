@@ -4,6 +4,7 @@ import static org.llvm.binding.LLVMLibrary.*;
 
 import org.bridj.IntValuedEnum;
 import org.bridj.Pointer;
+import org.llvm.binding.LLVMRaw;
 import org.llvm.binding.LLVMLibrary.LLVMAttribute;
 import org.llvm.binding.LLVMLibrary.LLVMBasicBlockRef;
 import org.llvm.binding.LLVMLibrary.LLVMCallConv;
@@ -57,6 +58,9 @@ public class Value {
 	 */
 	public void setValueName(String name) {
 		LLVMSetValueName(this.value, Pointer.pointerToCString(name));
+		if (!SymbolTable.isEmpty()) {
+			SymbolTable.valueRenamed(Pointer.getPeer(this.value));
+		}
 	}
 
 	/**
@@ -75,6 +79,10 @@ public class Value {
 	 */
 	public void replaceAllUsesWith(Value newVal) {
 		LLVMReplaceAllUsesWith(this.value, newVal.value());
+		if (DefUseIndex.isTracking()) {
+			DefUseIndex.replacedAll(Pointer.getPeer(this.value),
+					Pointer.getPeer(newVal.value()));
+		}
 	}
 
 	/**
@@ -379,6 +387,32 @@ public class Value {
 		return LLVMIsUndef(this.value) != 0;
 	}
 
+	/**
+	 * Returns a view of the uses of this value, i.e. the operands of other<br>
+	 * values that refer to it.
+	 *
+	 * @see llvm::Value::uses()
+	 */
+	public Iterable<Use> uses() {
+		final long val = Pointer.getPeer(this.value);
+		return new NativeList<Use>() {
+			@Override
+			long first() {
+				return LLVMRaw.LLVMGetFirstUse(val);
+			}
+
+			@Override
+			long next(long u) {
+				return LLVMRaw.LLVMGetNextUse(u);
+			}
+
+			@Override
+			Use wrap(long u) {
+				return new Use(new LLVMUseRef(u));
+			}
+		};
+	}
+
 	// TODO: move
 	public static native LLVMUseRef LLVMGetFirstUse(LLVMValueRef val);
 
@@ -422,6 +456,10 @@ public class Value {
 	 */
 	public void setOperand(int index, Value val) {
 		LLVMSetOperand(this.value, index, val.value());
+		if (DefUseIndex.isTracking()) {
+			DefUseIndex.operandSet(Pointer.getPeer(this.value), index,
+					Pointer.getPeer(val.value()));
+		}
 	}
 
 	/**
@@ -710,10 +748,10 @@ public class Value {
 		Pointer ptrIndices = Pointer.allocateTypedPointers(LLVMValueRef.class,
 				indices.size());
 
+		TypeRef i32 = TypeRef.int32Type();
 		int i = 0;
 		for (Integer index : indices) {
-			LLVMValueRef valueRef = TypeRef.int32Type().constInt(index, false)
-					.value();
+			LLVMValueRef valueRef = i32.constInt(index, false).value();
 			ptrIndices.set(i, valueRef);
 			i++;
 		}
@@ -911,6 +949,9 @@ public class Value {
 
 	// this.value is GlobalVar
 	public void deleteGlobal() {
+		if (!SymbolTable.isEmpty()) {
+			SymbolTable.globalDeleted(Pointer.getPeer(this.value));
+		}
 		LLVMDeleteGlobal(this.value);
 	}
 
@@ -962,6 +1003,9 @@ public class Value {
 	 * @see llvm::Function::eraseFromParent()
 	 */
 	public void deleteFunction() {
+		if (!SymbolTable.isEmpty()) {
+			SymbolTable.globalDeleted(Pointer.getPeer(this.value));
+		}
 		LLVMDeleteFunction(this.value);
 	}
 
@@ -1200,6 +1244,29 @@ public class Value {
 		return new BasicBlock(LLVMGetFirstBasicBlock(this.value));
 	}
 
+	/**
+	 * Returns a view of the basic blocks of a function, in order.
+	 */
+	public Iterable<BasicBlock> basicBlocks() {
+		final long fn = Pointer.getPeer(this.value);
+		return new NativeList<BasicBlock>() {
+			@Override
+			long first() {
+				return LLVMRaw.LLVMGetFirstBasicBlock(fn);
+			}
+
+			@Override
+			long next(long bb) {
+				return LLVMRaw.LLVMGetNextBasicBlock(bb);
+			}
+
+			@Override
+			BasicBlock wrap(long bb) {
+				return new BasicBlock(new LLVMBasicBlockRef(bb));
+			}
+		};
+	}
+
 	/**
 	 * Obtain the last basic block in a function.<br>
 	 * 
@@ -0,0 +1,81 @@
+package org.llvm.binding;
+
+import org.bridj.BridJ;
+import org.bridj.ann.Library;
+import org.bridj.ann.Ptr;
+
+/**
+ * This file was manually created. It redeclares a few functions of the C API<br>
+ * with every LLVM*Ref passed and returned as a raw address, for hot loops<br>
+ * which would otherwise allocate a typed pointer per argument and result,<br>
+ * and for iteration, where a null result ends the walk instead of raising an<br>
+ * exception in the typed bindings.<br>
+ * Enum arguments are passed as their int value.
+ */
+@Library("LLVM-3.8")
+public class LLVMRaw {
+	static {
+		BridJ.register();
+	}
+	@Ptr public native static long LLVMConstInt(@Ptr long IntTy, long N, int SignExtend);
+	@Ptr public native static long LLVMConstReal(@Ptr long RealTy, double N);
+	@Ptr public native static long LLVMBuildBinOp(@Ptr long B, int Op, @Ptr long LHS, @Ptr long RHS, @Ptr long Name);
+	@Ptr public native static long LLVMBuildCast(@Ptr long B, int Op, @Ptr long Val, @Ptr long DestTy, @Ptr long Name);
+	@Ptr public native static long LLVMBuildICmp(@Ptr long B, int Op, @Ptr long LHS, @Ptr long RHS, @Ptr long Name);
+	@Ptr public native static long LLVMBuildFCmp(@Ptr long B, int Op, @Ptr long LHS, @Ptr long RHS, @Ptr long Name);
+	@Ptr public native static long LLVMBuildAlloca(@Ptr long B, @Ptr long Ty, @Ptr long Name);
+	@Ptr public native static long LLVMBuildLoad(@Ptr long B, @Ptr long PointerVal, @Ptr long Name);
+	@Ptr public native static long LLVMBuildStore(@Ptr long B, @Ptr long Val, @Ptr long Ptr);
+	@Ptr public native static long LLVMBuildGEP(@Ptr long B, @Ptr long Pointer, @Ptr long Indices, int NumIndices, @Ptr long Name);
+	@Ptr public native static long LLVMBuildSelect(@Ptr long B, @Ptr long If, @Ptr long Then, @Ptr long Else, @Ptr long Name);
+	@Ptr public native static long LLVMBuildCall(@Ptr long B, @Ptr long Fn, @Ptr long Args, int NumArgs, @Ptr long Name);
+	@Ptr public native static long LLVMBuildBr(@Ptr long B, @Ptr long Dest);
+	@Ptr public native static long LLVMBuildCondBr(@Ptr long B, @Ptr long If, @Ptr long Then, @Ptr long Else);
+	@Ptr public native static long LLVMBuildRet(@Ptr long B, @Ptr long V);
+	@Ptr public native static long LLVMBuildRetVoid(@Ptr long B);
+	public native static int LLVMIsDeclaration(@Ptr long Global);
+	public native static int LLVMGetLinkage(@Ptr long Global);
+	public native static void LLVMSetLinkage(@Ptr long Global, int Linkage);
+	@Ptr public native static long LLVMGetValueName(@Ptr long Val);
+	public native static void LLVMSetValueName(@Ptr long Val, @Ptr long Name);
+	@Ptr public native static long LLVMTypeOf(@Ptr long Val);
+	@Ptr public native static long LLVMGetElementType(@Ptr long Ty);
+	public native static void LLVMReplaceAllUsesWith(@Ptr long OldVal, @Ptr long NewVal);
+	public native static int LLVMGetNumOperands(@Ptr long Val);
+	@Ptr public native static long LLVMGetOperand(@Ptr long Val, int Index);
+	@Ptr public native static long LLVMIsAFunction(@Ptr long Val);
+	@Ptr public native static long LLVMGetFirstFunction(@Ptr long M);
+	@Ptr public native static long LLVMGetNextFunction(@Ptr long Fn);
+	@Ptr public native static long LLVMGetFirstGlobal(@Ptr long M);
+	@Ptr public native static long LLVMGetNextGlobal(@Ptr long GlobalVar);
+	@Ptr public native static long LLVMGetFirstBasicBlock(@Ptr long Fn);
+	@Ptr public native static long LLVMGetNextBasicBlock(@Ptr long BB);
+	@Ptr public native static long LLVMGetFirstInstruction(@Ptr long BB);
+	@Ptr public native static long LLVMGetNextInstruction(@Ptr long Inst);
+	@Ptr public native static long LLVMAddFunction(@Ptr long M, @Ptr long Name, @Ptr long FunctionTy);
+	@Ptr public native static long LLVMGetNamedFunction(@Ptr long M, @Ptr long Name);
+	@Ptr public native static long LLVMGetNamedGlobal(@Ptr long M, @Ptr long Name);
+	public native static void LLVMDeleteFunction(@Ptr long Fn);
+	public native static void LLVMDeleteGlobal(@Ptr long GlobalVar);
+	public native static int LLVMGetFunctionCallConv(@Ptr long Fn);
+	public native static void LLVMSetFunctionCallConv(@Ptr long Fn, int CC);
+	@Ptr public native static long LLVMGetFirstUse(@Ptr long Val);
+	@Ptr public native static long LLVMGetNextUse(@Ptr long U);
+	@Ptr public native static long LLVMGetUser(@Ptr long U);
+	@Ptr public native static long LLVMGetUsedValue(@Ptr long U);
+	@Ptr public native static long LLVMGetFirstParam(@Ptr long Fn);
+	@Ptr public native static long LLVMGetNextParam(@Ptr long Arg);
+	public native static int LLVMGetInstructionOpcode(@Ptr long Inst);
+	public native static int LLVMGetTypeKind(@Ptr long Ty);
+	public native static int LLVMGetIntTypeWidth(@Ptr long IntegerTy);
+	@Ptr public native static long LLVMIsAConstant(@Ptr long Val);
+	@Ptr public native static long LLVMIsAConstantInt(@Ptr long Val);
+	public native static long LLVMConstIntGetSExtValue(@Ptr long ConstantVal);
+	public native static void LLVMSetOperand(@Ptr long User, int Index, @Ptr long Val);
+	public native static void LLVMInstructionEraseFromParent(@Ptr long Inst);
+	@Ptr public native static long LLVMIsAGlobalValue(@Ptr long Val);
+	@Ptr public native static long LLVMGetGlobalParent(@Ptr long Global);
+	@Ptr public native static long LLVMGetInitializer(@Ptr long GlobalVar);
+	public native static int LLVMLoadLibraryPermanently(@Ptr long Filename);
+	@Ptr public native static long LLVMSearchForAddressOfSymbol(@Ptr long symbolName);
+}
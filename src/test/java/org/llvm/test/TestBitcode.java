@@ -0,0 +1,92 @@
+package org.llvm.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+import junit.framework.TestCase;
+
+import org.llvm.Builder;
+import org.llvm.Context;
+import org.llvm.MemoryBuffer;
+import org.llvm.Module;
+import org.llvm.TypeRef;
+import org.llvm.Value;
+
+public class TestBitcode extends TestCase {
+
+	private File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		Module m = Module.createWithName("runtime");
+		TypeRef ty_i32 = TypeRef.int32Type();
+		Value f = m.addFunction("twice", TypeRef.functionType(ty_i32, ty_i32));
+		Builder builder = Builder.createBuilder();
+		builder.positionBuilderAtEnd(f.appendBasicBlock("entry"));
+		builder.buildRet(builder.buildAdd(f.getParam(0), f.getParam(0), "r"));
+		builder.dispose();
+
+		this.file = File.createTempFile("runtime", ".bc");
+		assertEquals(0, m.writeBitcodeToFile(this.file.getPath()));
+		m.dispose();
+	}
+
+	@Override
+	protected void tearDown() {
+		this.file.delete();
+	}
+
+	public void testParseMappedFile() throws Exception {
+		Context c = Context.create();
+		Module m = Module.parseBitcodeInContext(c, this.file);
+		m.verify();
+		assertEquals(1, m.getNamedFunction("twice").countBasicBlocks());
+		m.dispose();
+		c.dispose();
+	}
+
+	public void testLoadMappedFileLazily() throws Exception {
+		Context c = Context.create();
+		Module m = Module.getBitcodeModuleInContext(c, this.file);
+		assertNotNull(m.getNamedFunction("twice"));
+		m.dispose();
+		c.dispose();
+	}
+
+	public void testChannelRoundTrip() throws Exception {
+		Context c = Context.create();
+		Module m = Module.parseBitcodeInContext(c, this.file);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		m.writeBitcode(Channels.newChannel(out));
+		assertEquals(this.file.length(), out.size());
+
+		Module copy = Module.parseBitcodeInContext(c,
+				ByteBuffer.wrap(out.toByteArray()));
+		assertNotNull(copy.getNamedFunction("twice"));
+		copy.dispose();
+		m.dispose();
+		c.dispose();
+	}
+
+	public void testDirectBufferView() throws Exception {
+		Context c = Context.create();
+		Module m = Module.parseBitcodeInContext(c, this.file);
+		MemoryBuffer bitcode = m.writeBitcodeToMemoryBuffer();
+
+		ByteBuffer view = bitcode.asByteBuffer();
+		assertTrue(view.isDirect());
+		assertTrue(view.isReadOnly());
+		assertEquals(bitcode.getBufferSize(), view.remaining());
+
+		Module copy = Module.parseBitcodeInContext(c, view);
+		assertNotNull(copy.getNamedFunction("twice"));
+		copy.dispose();
+		bitcode.dispose();
+		m.dispose();
+		c.dispose();
+	}
+
+}
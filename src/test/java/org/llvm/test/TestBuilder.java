@@ -0,0 +1,67 @@
+package org.llvm.test;
+
+import junit.framework.TestCase;
+
+import org.llvm.*;
+
+public class TestBuilder extends TestCase {
+
+	private Module mod;
+
+	private Value f;
+
+	private Builder builder;
+
+	@Override
+	protected void setUp() {
+		this.mod = Module.createWithName("builder_module");
+		TypeRef ty_i32 = TypeRef.int32Type();
+		this.f = this.mod.addFunction("f",
+				TypeRef.functionType(ty_i32, ty_i32));
+		this.builder = Builder.createBuilder();
+		this.builder.positionBuilderAtEnd(this.f.appendBasicBlock("entry"));
+	}
+
+	@Override
+	protected void tearDown() {
+		this.builder.dispose();
+		this.mod.dispose();
+	}
+
+	public void testCachedNames() {
+		Value x = this.f.getParam(0);
+		Value a = this.builder.buildAdd(x, x, "sum");
+		Value b = this.builder.buildAdd(a, x, "sum");
+		assertEquals("sum", a.getValueName());
+		assertEquals("sum1", b.getValueName());
+
+		/* Evicts "sum" from the cache of recent names. */
+		Value v = b;
+		for (int i = 0; i < 300; i++) {
+			v = this.builder.buildMul(v, x, "t" + i);
+		}
+		assertEquals("t299", v.getValueName());
+		assertEquals("sum2", this.builder.buildAdd(v, x, "sum")
+				.getValueName());
+	}
+
+	public void testNamesDisabled() {
+		assertTrue(this.builder.isNamesEnabled());
+		this.builder.setNamesEnabled(false);
+		assertFalse(this.builder.isNamesEnabled());
+
+		Value x = this.f.getParam(0);
+		Value sum = this.builder.buildAdd(x, x, "sum");
+		assertEquals("", sum.getValueName());
+
+		Value greeting = this.builder.buildGlobalString("hello", "greeting");
+		assertEquals("greeting", greeting.getValueName());
+		this.builder.buildGlobalStringPtr("world", "farewell");
+		assertEquals("farewell", this.mod.getLastGlobal().getValueName());
+
+		this.builder.setNamesEnabled(true);
+		assertEquals("sum", this.builder.buildAdd(sum, x, "sum")
+				.getValueName());
+	}
+
+}
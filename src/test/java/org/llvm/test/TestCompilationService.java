@@ -0,0 +1,116 @@
+package org.llvm.test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import junit.framework.TestCase;
+
+import org.llvm.*;
+
+public class TestCompilationService extends TestCase {
+
+	public interface IntUnaryFunction {
+		int apply(int a);
+	}
+
+	private CompilationService service;
+
+	@Override
+	protected void setUp() {
+		Target.initialiseNativeTarget();
+		this.service = new CompilationService(4, 2, null);
+	}
+
+	@Override
+	protected void tearDown() throws InterruptedException {
+		this.service.shutdown();
+	}
+
+	/* Builds a function adding n to its argument. */
+	private static CompilationService.Job adder(final int n) {
+		return new CompilationService.Job() {
+			public Value build(Context c, Module m, Builder b) {
+				TypeRef ty_i32 = TypeRef.int32TypeInContext(c);
+				Value f = m.addFunction("add",
+						TypeRef.functionType(ty_i32, ty_i32));
+				b.positionBuilderAtEnd(f.appendBasicBlockInContext(c, "entry"));
+				b.buildRet(b.buildAdd(f.getParam(0), ty_i32.constInt(n, false),
+						"r"));
+				return f;
+			}
+		};
+	}
+
+	public void testConcurrentCompile() throws Exception {
+		List<Future<CompilationService.Unit<IntUnaryFunction>>> futures = new ArrayList<Future<CompilationService.Unit<IntUnaryFunction>>>();
+		for (int n = 0; n < 16; n++) {
+			futures.add(this.service.submit("adder" + n, adder(n),
+					IntUnaryFunction.class));
+		}
+		for (int n = 0; n < 16; n++) {
+			CompilationService.Unit<IntUnaryFunction> unit = futures.get(n)
+					.get();
+			assertEquals(100 + n, unit.get().apply(100));
+			if (n % 2 == 0) {
+				unit.dispose();
+			}
+		}
+	}
+
+	public void testBuildFailure() throws Exception {
+		Future<CompilationService.Unit<IntUnaryFunction>> thrown = this.service
+				.submit("thrown", new CompilationService.Job() {
+					public Value build(Context c, Module m, Builder b)
+							throws LLVMException {
+						throw new LLVMException("no IR today");
+					}
+				}, IntUnaryFunction.class);
+		try {
+			thrown.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertEquals("no IR today", e.getCause().getMessage());
+		}
+
+		/* A block without terminator fails verification. */
+		Future<CompilationService.Unit<IntUnaryFunction>> invalid = this.service
+				.submit("invalid", new CompilationService.Job() {
+					public Value build(Context c, Module m, Builder b) {
+						TypeRef ty_i32 = TypeRef.int32TypeInContext(c);
+						Value f = m.addFunction("add",
+								TypeRef.functionType(ty_i32, ty_i32));
+						f.appendBasicBlockInContext(c, "entry");
+						return f;
+					}
+				}, IntUnaryFunction.class);
+		try {
+			invalid.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof LLVMException);
+		}
+
+		/* The worker is still usable. */
+		assertEquals(3, this.service.submit("after", adder(1),
+				IntUnaryFunction.class).get().get().apply(2));
+	}
+
+	public void testShutdown() throws Exception {
+		CompilationService.Unit<IntUnaryFunction> unit = this.service.submit(
+				"before", adder(1), IntUnaryFunction.class).get();
+		this.service.shutdown();
+		try {
+			this.service.submit("after", adder(1), IntUnaryFunction.class);
+			fail();
+		} catch (RejectedExecutionException e) {
+			// expected
+		}
+
+		/* Already freed by the shutdown; must not be freed twice. */
+		unit.dispose();
+	}
+
+}
@@ -0,0 +1,178 @@
+package org.llvm.test;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.llvm.*;
+
+public class TestCompileCache extends TestCase {
+
+	private File directory;
+
+	@Override
+	protected void setUp() throws IOException {
+		this.directory = File.createTempFile("compile-cache", "");
+		this.directory.delete();
+	}
+
+	@Override
+	protected void tearDown() {
+		File[] files = this.directory.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		this.directory.delete();
+	}
+
+	private static Module module(String name, int n) {
+		return fill(Module.createWithName("cached_" + name), name, n,
+				TypeRef.int32Type());
+	}
+
+	/* A module whose context is reachable only through the module. */
+	private static Module moduleInOwnContext(String name, int n) {
+		Context ctx = Context.create();
+		return fill(Module.createWithNameInContext("cached_" + name, ctx),
+				name, n, TypeRef.int32TypeInContext(ctx));
+	}
+
+	private static Module fill(Module mod, String name, int n, TypeRef ty_i32) {
+		Value f = mod.addFunction(name, TypeRef.functionType(ty_i32, ty_i32));
+		Builder builder = Builder.createBuilder();
+		builder.positionBuilderAtEnd(f.appendBasicBlock("entry"));
+		Value x = builder.buildAdd(f.getParam(0), ty_i32.constInt(n, false),
+				"x");
+		builder.buildRet(builder.buildAdd(x, ty_i32.constInt(n, false), "y"));
+		builder.dispose();
+		return mod;
+	}
+
+	private static PassManager pipeline(OptimizationLevel level) {
+		PassManager pm = PassManager.create();
+		new PassManagerBuilder(level).populateModulePassManager(pm);
+		return pm;
+	}
+
+	private void optimize(CompileCache cache, String name, int n,
+			PassManager pm) throws LLVMException {
+		Module result = cache.optimize(module(name, n), pm);
+		assertNotNull(result.getNamedFunction(name));
+		result.dispose();
+	}
+
+	public void testHitsAndMisses() throws LLVMException {
+		CompileCache cache = new CompileCache(this.directory, 1 << 20);
+		PassManager o2 = pipeline(OptimizationLevel.O2);
+		PassManager o1 = pipeline(OptimizationLevel.O1);
+
+		this.optimize(cache, "f", 1, o2);
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		this.optimize(cache, "f", 1, o2);
+		assertEquals(1, cache.getHits());
+
+		/* Same module, other pipeline. */
+		this.optimize(cache, "f", 1, o1);
+		assertEquals(1, cache.getHits());
+		assertEquals(2, cache.getMisses());
+
+		/* Reloaded from disk by a new instance. */
+		CompileCache reopened = new CompileCache(this.directory, 1 << 20);
+		this.optimize(reopened, "f", 1, o2);
+		assertEquals(1, reopened.getHits());
+		assertEquals(0, reopened.getMisses());
+
+		o1.dispose();
+		o2.dispose();
+	}
+
+	public void testPassParameters() throws LLVMException {
+		CompileCache cache = new CompileCache(this.directory, 1 << 20);
+		PassManager small = PassManager.create();
+		small.addScalarReplAggregatesPassWithThreshold(16);
+		PassManager large = PassManager.create();
+		large.addScalarReplAggregatesPassWithThreshold(256);
+
+		this.optimize(cache, "f", 1, small);
+		this.optimize(cache, "f", 1, large);
+		assertEquals(0, cache.getHits());
+		assertEquals(2, cache.getMisses());
+
+		small.dispose();
+		large.dispose();
+	}
+
+	public void testHitKeepsOwnedContext() throws LLVMException,
+			InterruptedException {
+		CompileCache cache = new CompileCache(this.directory, 1 << 20);
+		PassManager pm = pipeline(OptimizationLevel.O2);
+		cache.optimize(moduleInOwnContext("f", 1), pm).dispose();
+		int contexts = settle();
+
+		Module cached = cache.optimize(moduleInOwnContext("f", 1), pm);
+		assertEquals(1, cache.getHits());
+
+		/* The context must live as long as the module read into it. */
+		assertEquals(contexts + 1, settle());
+		assertNotNull(cached.getNamedFunction("f"));
+		cached.verify();
+
+		cached.dispose();
+		cached = null;
+		assertEquals(contexts, settle());
+		pm.dispose();
+	}
+
+	/* Collect unreachable contexts until their number stays put. */
+	private static int settle() throws InterruptedException {
+		int n = count(Context.class);
+		for (int i = 0, same = 0; i < 100 && same < 5; i++) {
+			System.gc();
+			Thread.sleep(20);
+			int m = count(Context.class);
+			same = m == n ? same + 1 : 0;
+			n = m;
+		}
+		return n;
+	}
+
+	private static int count(Class<?> kind) {
+		Integer n = NativeHandles.countByType().get(kind);
+		return n == null ? 0 : n;
+	}
+
+	public void testLeastRecentlyUsedEviction() throws LLVMException {
+		PassManager pm = pipeline(OptimizationLevel.O2);
+		File probe = new File(this.directory, "probe");
+		this.optimize(new CompileCache(probe, 1 << 20), "f", 1, pm);
+		long entry = probe.listFiles()[0].length();
+		probe.listFiles()[0].delete();
+		probe.delete();
+
+		CompileCache cache = new CompileCache(this.directory, 2 * entry
+				+ entry / 2);
+		this.optimize(cache, "f", 1, pm);
+		this.optimize(cache, "f", 2, pm);
+		for (File f : this.directory.listFiles()) {
+			f.setLastModified(System.currentTimeMillis() - 60000);
+		}
+
+		/* A hit makes the first entry the most recently used. */
+		this.optimize(cache, "f", 1, pm);
+		this.optimize(cache, "f", 3, pm);
+		assertEquals(1, cache.getEvictions());
+		assertEquals(2, this.directory.listFiles().length);
+
+		this.optimize(cache, "f", 1, pm);
+		assertEquals(2, cache.getHits());
+		this.optimize(cache, "f", 2, pm);
+		assertEquals(2, cache.getHits());
+		pm.dispose();
+	}
+
+}
@@ -0,0 +1,183 @@
+package org.llvm.test;
+
+import junit.framework.TestCase;
+
+import org.llvm.*;
+
+public class TestDefUseIndex extends TestCase {
+
+	private Value f;
+
+	private Value x;
+
+	private Value y;
+
+	private Value z;
+
+	private Module buildModule() {
+		Module mod = Module.createWithName("defuse_module");
+		TypeRef ty_i32 = TypeRef.int32Type();
+		this.f = mod.addFunction("f",
+				TypeRef.functionType(ty_i32, ty_i32, ty_i32));
+		Builder builder = Builder.createBuilder();
+		builder.positionBuilderAtEnd(this.f.appendBasicBlock("entry"));
+		Value a = this.f.getParam(0);
+		Value b = this.f.getParam(1);
+		this.z = builder.buildSub(a, b, "z");
+		this.x = builder.buildAdd(a, b, "x");
+		this.y = builder.buildMul(this.x, this.x, "y");
+		builder.buildRet(this.y);
+		builder.dispose();
+		return mod;
+	}
+
+	public void testBuild() {
+		Module mod = this.buildModule();
+		try (DefUseIndex index = DefUseIndex.build(this.f)) {
+			assertEquals(2, index.getParamCount());
+			assertEquals(4, index.getInstructionCount());
+
+			int a = index.param(0);
+			int x = index.nodeOf(this.x);
+			int y = index.nodeOf(this.y);
+			int z = index.nodeOf(this.z);
+			assertEquals(index.instruction(1), x);
+			assertTrue(index.isInstruction(x));
+			assertTrue(index.isParam(a));
+
+			assertEquals(2, index.getUserCount(a));
+			assertEquals(2, index.getUserCount(x));
+			assertEquals(y, index.getUser(x, 0));
+			assertEquals(y, index.getUser(x, 1));
+			assertEquals(x, index.getOperand(y, 0));
+			assertFalse(index.hasUsers(z));
+		}
+		mod.dispose();
+	}
+
+	public void testUpdates() {
+		Module mod = this.buildModule();
+		try (DefUseIndex index = DefUseIndex.build(this.f)) {
+			int x = index.nodeOf(this.x);
+			int y = index.nodeOf(this.y);
+			int z = index.nodeOf(this.z);
+
+			/* Through the index. */
+			index.replaceAllUsesWith(x, this.z);
+			assertFalse(index.hasUsers(x));
+			assertEquals(2, index.getUserCount(z));
+			assertEquals(z, index.getOperand(y, 1));
+
+			/* Through the wrapper. */
+			this.y.setOperand(0, this.x);
+			assertEquals(1, index.getUserCount(x));
+			assertEquals(1, index.getUserCount(z));
+
+			this.x.replaceAllUsesWith(this.z);
+			assertFalse(index.hasUsers(x));
+			assertEquals(2, index.getUserCount(z));
+
+			index.erase(x);
+			assertTrue(index.isErased(x));
+			assertEquals(1, index.getUserCount(index.param(0)));
+			mod.verify();
+		} catch (LLVMException e) {
+			fail(e.getMessage());
+		}
+		mod.dispose();
+	}
+
+	public void testBounds() {
+		Module mod = this.buildModule();
+		try (DefUseIndex index = DefUseIndex.build(this.f)) {
+			int y = index.nodeOf(this.y);
+			int z = index.nodeOf(this.z);
+			try {
+				index.getOperand(y, 2);
+				fail();
+			} catch (IndexOutOfBoundsException e) {
+				// expected
+			}
+			try {
+				index.setOperand(y, -1, this.z);
+				fail();
+			} catch (IndexOutOfBoundsException e) {
+				// expected
+			}
+			try {
+				index.getOperand(index.param(0), 0);
+				fail();
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+
+			index.erase(z);
+			assertEquals(DefUseIndex.NONE, index.nodeOf(this.z));
+			try {
+				index.getOperand(z, 0);
+				fail();
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+		mod.dispose();
+	}
+
+	public void testOperandAddedSinceBuild() {
+		Module mod = Module.createWithName("defuse_module");
+		TypeRef ty_i32 = TypeRef.int32Type();
+		Value g = mod.addFunction("g",
+				TypeRef.functionType(ty_i32, ty_i32, ty_i32));
+		Builder builder = Builder.createBuilder();
+		BasicBlock entry = g.appendBasicBlock("entry");
+		BasicBlock exit = g.appendBasicBlock("exit");
+		builder.positionBuilderAtEnd(entry);
+		builder.buildBr(exit);
+		builder.positionBuilderAtEnd(exit);
+		Value phi = builder.buildPhi(ty_i32, "phi");
+		phi.addIncoming(new Value[] { g.getParam(0) },
+				new BasicBlock[] { entry }, 1);
+		builder.buildRet(phi);
+		builder.dispose();
+
+		try (DefUseIndex index = DefUseIndex.build(g)) {
+			int node = index.nodeOf(phi);
+			assertEquals(1, index.getOperandCount(node));
+
+			/* Followed: the operand was there when the index was built. */
+			phi.setOperand(0, g.getParam(1));
+			assertEquals(index.param(1), index.getOperand(node, 0));
+			assertFalse(index.isStale());
+
+			/* Not representable, but must not fail the wrapper call. */
+			phi.addIncoming(new Value[] { g.getParam(0) },
+					new BasicBlock[] { entry }, 1);
+			phi.setOperand(1, g.getParam(1));
+			assertTrue(index.isStale());
+			assertEquals(1, index.getOperandCount(node));
+		}
+		mod.dispose();
+	}
+
+	public void testOtherThreadsNotFollowed() throws InterruptedException {
+		Module mod = this.buildModule();
+		try (DefUseIndex index = DefUseIndex.build(this.f)) {
+			final Value y = this.y;
+			final Value z = this.z;
+			Thread t = new Thread() {
+				@Override
+				public void run() {
+					y.setOperand(0, z);
+				}
+			};
+			t.start();
+			t.join();
+
+			/* Stale: the change was made on another thread. */
+			assertEquals(index.nodeOf(this.x), index.getOperand(
+					index.nodeOf(this.y), 0));
+		}
+		mod.dispose();
+	}
+
+}
@@ -0,0 +1,104 @@
+package org.llvm.test;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.stream.StreamSupport;
+
+import junit.framework.TestCase;
+
+import org.bridj.Pointer;
+import org.llvm.*;
+
+public class TestIRViews extends TestCase {
+
+	private Module buildModule(int functions) {
+		Module mod = Module.createWithName("views_module");
+		TypeRef ty_i32 = TypeRef.int32Type();
+		Builder builder = Builder.createBuilder();
+		for (int i = 0; i < functions; i++) {
+			Value f = mod.addFunction("f" + i,
+					TypeRef.functionType(ty_i32, ty_i32));
+			BasicBlock entry = f.appendBasicBlock("entry");
+			BasicBlock exit = f.appendBasicBlock("exit");
+			builder.positionBuilderAtEnd(entry);
+			Value x = builder.buildAdd(f.getParam(0), f.getParam(0), "x");
+			builder.buildBr(exit);
+			builder.positionBuilderAtEnd(exit);
+			builder.buildRet(builder.buildMul(x, x, "y"));
+		}
+		builder.dispose();
+		return mod;
+	}
+
+	public void testWalk() {
+		Module mod = this.buildModule(3);
+		int functions = 0;
+		int blocks = 0;
+		int instructions = 0;
+		for (Value f : mod.functions()) {
+			functions++;
+			for (BasicBlock bb : f.basicBlocks()) {
+				blocks++;
+				for (Value inst : bb.instructions()) {
+					assertNotNull(inst.value());
+					instructions++;
+				}
+			}
+		}
+		assertEquals(3, functions);
+		assertEquals(6, blocks);
+		assertEquals(12, instructions);
+		mod.dispose();
+	}
+
+	public void testEmptyLists() {
+		Module mod = Module.createWithName("empty");
+		assertFalse(mod.functions().iterator().hasNext());
+
+		TypeRef ty_i32 = TypeRef.int32Type();
+		Value decl = mod.addFunction("decl",
+				TypeRef.functionType(ty_i32, ty_i32));
+		assertFalse(decl.basicBlocks().iterator().hasNext());
+		assertFalse(decl.uses().iterator().hasNext());
+		mod.dispose();
+	}
+
+	public void testUses() {
+		Module mod = this.buildModule(1);
+		Value f = mod.functions().iterator().next();
+		Value x = f.getFirstBasicBlock().instructions().iterator().next();
+
+		int uses = 0;
+		for (Use u : x.uses()) {
+			assertEquals(Pointer.getPeer(x.value()),
+					Pointer.getPeer(u.getUsedValue().value()));
+			assertEquals("y", u.getUser().getValueName());
+			uses++;
+		}
+		assertEquals(2, uses);
+		mod.dispose();
+	}
+
+	public void testParallelFunctions() {
+		Module mod = this.buildModule(64);
+		Spliterator<Value> s = mod.functions().spliterator();
+		assertEquals(64, s.estimateSize());
+		Spliterator<Value> prefix = s.trySplit();
+		assertNotNull(prefix);
+		assertEquals(32, prefix.estimateSize());
+		assertEquals(32, s.estimateSize());
+
+		long blocks = StreamSupport.stream(mod.functions().spliterator(), true)
+				.mapToLong(f -> {
+					long n = 0;
+					for (Iterator<BasicBlock> it = f.basicBlocks().iterator(); it
+							.hasNext(); it.next()) {
+						n++;
+					}
+					return n;
+				}).sum();
+		assertEquals(128, blocks);
+		mod.dispose();
+	}
+
+}
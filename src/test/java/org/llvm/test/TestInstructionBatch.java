@@ -0,0 +1,127 @@
+package org.llvm.test;
+
+import org.bridj.Pointer;
+import org.llvm.*;
+import org.llvm.binding.LLVMLibrary.LLVMIntPredicate;
+import org.llvm.binding.LLVMLibrary.LLVMOpcode;
+
+public class TestInstructionBatch extends ExecutionTest {
+
+	public void testEmit() {
+		Module mod = Module.createWithName("batch_module");
+		TypeRef ty_i32 = TypeRef.int32Type();
+
+		// max(a, b) * 2 + 1, with b spilled to the stack
+		Value f = mod.addFunction("f",
+				TypeRef.functionType(ty_i32, ty_i32, ty_i32));
+		Builder builder = Builder.createBuilder();
+		builder.positionBuilderAtEnd(f.appendBasicBlock("entry"));
+
+		InstructionBatch batch = new InstructionBatch();
+		int a = batch.value(f.getParam(0));
+		int b = batch.value(f.getParam(1));
+		int slot = batch.alloca(ty_i32);
+		batch.store(b, slot);
+		int b2 = batch.load(slot);
+		int gt = batch.icmp(LLVMIntPredicate.LLVMIntSGT, a, b2);
+		int max = batch.select(gt, a, b2);
+		int two = batch.constInt(ty_i32, 2, false);
+		int one = batch.constInt(ty_i32, 1, false);
+		int dbl = batch.binOp(LLVMOpcode.LLVMMul, max, two);
+		batch.ret(batch.binOp(LLVMOpcode.LLVMAdd, dbl, one));
+		batch.emit(builder);
+
+		assertEquals(12, batch.size());
+		assertEquals(Pointer.getPeer(f.getParam(0).value()),
+				Pointer.getPeer(batch.get(a).value()));
+
+		boolean SIGNED = true;
+		GenericValue retval = execute(mod, f,
+				GenericValue.createInt(ty_i32, 3, SIGNED),
+				GenericValue.createInt(ty_i32, 20, SIGNED));
+		assertEquals(41, retval.toInt(SIGNED));
+	}
+
+	public void testLoopCallAndGEP() {
+		Module mod = Module.createWithName("batch_loop_module");
+		TypeRef ty_i32 = TypeRef.int32Type();
+		TypeRef ty_array = ty_i32.arrayType(4);
+
+		Value add3 = mod.addFunction("add3",
+				TypeRef.functionType(ty_i32, ty_i32, ty_i32, ty_i32));
+		Builder builder = Builder.createBuilder();
+		builder.positionBuilderAtEnd(add3.appendBasicBlock("entry"));
+		builder.buildRet(builder.buildAdd(builder.buildAdd(add3.getParam(0),
+				add3.getParam(1), "ab"), add3.getParam(2), "abc"));
+
+		// for (i = 0; i < n; i++) { a[i & 3] = add3(i, i, 1); acc += a[i & 3]; }
+		Value f = mod.addFunction("f", TypeRef.functionType(ty_i32, ty_i32));
+		BasicBlock entry = f.appendBasicBlock("entry");
+		BasicBlock loop = f.appendBasicBlock("loop");
+		BasicBlock body = f.appendBasicBlock("body");
+		BasicBlock exit = f.appendBasicBlock("exit");
+		InstructionBatch batch = new InstructionBatch();
+
+		builder.positionBuilderAtEnd(entry);
+		int arr = batch.alloca(ty_array);
+		int acc = batch.alloca(ty_i32);
+		int i = batch.alloca(ty_i32);
+		int zero = batch.constInt(ty_i32, 0, false);
+		batch.store(zero, acc);
+		batch.store(zero, i);
+		batch.br(loop);
+		batch.emit(builder);
+		Value arrValue = batch.get(arr);
+		Value accValue = batch.get(acc);
+		Value iValue = batch.get(i);
+
+		/* Each block reuses the arrays of the batch. */
+		batch.clear();
+		builder.positionBuilderAtEnd(loop);
+		int iv = batch.load(batch.value(iValue));
+		int more = batch.icmp(LLVMIntPredicate.LLVMIntSLT, iv,
+				batch.value(f.getParam(0)));
+		batch.condBr(more, body, exit);
+		batch.emit(builder);
+
+		batch.clear();
+		builder.positionBuilderAtEnd(body);
+		int ip = batch.value(iValue);
+		int ap = batch.value(accValue);
+		iv = batch.load(ip);
+		int one = batch.constInt(ty_i32, 1, false);
+		int three = batch.constInt(ty_i32, 3, false);
+		int idx = batch.binOp(LLVMOpcode.LLVMAnd, iv, three);
+		int elem = batch.gep(batch.value(arrValue),
+				batch.constInt(ty_i32, 0, false), idx);
+		batch.store(batch.call(batch.value(add3), iv, iv, one), elem);
+		batch.store(batch.binOp(LLVMOpcode.LLVMAdd, batch.load(ap),
+				batch.load(elem)), ap);
+		batch.store(batch.binOp(LLVMOpcode.LLVMAdd, iv, one), ip);
+		batch.br(loop);
+		batch.emit(builder);
+
+		batch.clear();
+		builder.positionBuilderAtEnd(exit);
+		batch.ret(batch.load(batch.value(accValue)));
+		batch.emit(builder);
+		builder.dispose();
+
+		/* The sum of the first n odd numbers. */
+		boolean SIGNED = true;
+		GenericValue retval = execute(mod, f,
+				GenericValue.createInt(ty_i32, 5, SIGNED));
+		assertEquals(25, retval.toInt(SIGNED));
+	}
+
+	public void testOperandMustBeRecorded() {
+		InstructionBatch batch = new InstructionBatch();
+		try {
+			batch.load(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+}
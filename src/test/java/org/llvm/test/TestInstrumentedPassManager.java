@@ -0,0 +1,98 @@
+package org.llvm.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.llvm.*;
+
+public class TestInstrumentedPassManager extends TestCase {
+
+	private Module buildSpilledSum() {
+		Module mod = Module.createWithName("instrumented_module");
+		TypeRef ty_i32 = TypeRef.int32Type();
+		Value f = mod.addFunction("sum",
+				TypeRef.functionType(ty_i32, ty_i32, ty_i32));
+		Builder builder = Builder.createBuilder();
+		builder.positionBuilderAtEnd(f.appendBasicBlock("entry"));
+		Value a = builder.buildAlloca(ty_i32, "a");
+		Value b = builder.buildAlloca(ty_i32, "b");
+		builder.buildStore(f.getParam(0), a);
+		builder.buildStore(f.getParam(1), b);
+		builder.buildRet(builder.buildAdd(builder.buildLoad(a, "x"),
+				builder.buildLoad(b, "y"), "tmp"));
+		builder.dispose();
+		return mod;
+	}
+
+	public void testStages() {
+		Module mod = this.buildSpilledSum();
+		PassManager pm = PassManager.createInstrumented();
+		pm.addPromoteMemoryToRegisterPass();
+		pm.addGVNPass();
+
+		final List<PipelineReport> reports = new ArrayList<PipelineReport>();
+		pm.setSink(new PipelineReport.Sink() {
+			public void report(PipelineReport report) {
+				reports.add(report);
+			}
+		});
+
+		PipelineReport report = pm.runInstrumented(mod);
+		assertEquals(1, reports.size());
+		assertSame(report, reports.get(0));
+		assertTrue(report.isModified());
+
+		List<PipelineReport.Stage> stages = report.getStages();
+		assertEquals(2, stages.size());
+
+		PipelineReport.Stage mem2reg = stages.get(0);
+		assertEquals("PromoteMemoryToRegister", mem2reg.getName());
+		assertTrue(mem2reg.isModified());
+		assertEquals(1, mem2reg.getBlocksBefore());
+		assertEquals(1, mem2reg.getBlocksAfter());
+		assertEquals(8, mem2reg.getInstructionsBefore());
+		assertEquals(2, mem2reg.getInstructionsAfter());
+
+		PipelineReport.Stage gvn = stages.get(1);
+		assertEquals("GVN", gvn.getName());
+		assertEquals(2, gvn.getInstructionsBefore());
+		assertTrue(report.getTotalNanos() >= mem2reg.getNanos());
+
+		// A second run finds nothing left to do.
+		assertFalse(pm.runForModule(mod));
+		assertEquals(2, reports.size());
+		pm.dispose();
+		mod.dispose();
+	}
+
+	public void testBuilderPipelineIsOneStage() {
+		Module mod = this.buildSpilledSum();
+		PassManager pm = PassManager.createInstrumented();
+		new PassManagerBuilder(OptimizationLevel.O2).setVectorize(false)
+				.populateModulePassManager(pm);
+
+		PipelineReport report = pm.runInstrumented(mod);
+		assertEquals(1, report.getStages().size());
+		assertEquals("O2 module pipeline", report.getStages().get(0)
+				.getName());
+		pm.dispose();
+		mod.dispose();
+	}
+
+	public void testUninstrumented() {
+		Module mod = this.buildSpilledSum();
+		PassManager pm = PassManager.create();
+		try {
+			pm.runInstrumented(mod);
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		} finally {
+			pm.dispose();
+			mod.dispose();
+		}
+	}
+
+}
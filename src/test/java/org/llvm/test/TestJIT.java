@@ -45,4 +45,54 @@ public class TestJIT extends ExecutionTest {
 		assertEquals(42, retvalVal);
 	}
 
+	public interface IntBinaryFunction {
+		int apply(int a, int b);
+	}
+
+	public void testDirectCall() {
+		Module mod = Module.createWithName("direct_module");
+		TypeRef ty_i32 = TypeRef.intType(32);
+
+		Value f_mul = mod.addFunction("mul",
+				TypeRef.functionType(ty_i32, ty_i32, ty_i32));
+		Builder builder = Builder.createBuilder();
+		builder.positionBuilderAtEnd(f_mul.appendBasicBlock("entry"));
+		builder.buildRet(builder.buildMul(f_mul.getParam(0),
+				f_mul.getParam(1), "tmp"));
+
+		ExecutionEngine engine = ExecutionEngine.createForModule(mod);
+		IntBinaryFunction mul = engine.getFunction(f_mul,
+				IntBinaryFunction.class);
+
+		assertEquals(42, mul.apply(6, 7));
+		assertEquals(-12, mul.apply(-3, 4));
+	}
+
+	public void testResolvedByName() {
+		Module mod = Module.createWithName("resolved_module");
+		TypeRef ty_i32 = TypeRef.intType(32);
+
+		Value f_mul = mod.addFunction("mul",
+				TypeRef.functionType(ty_i32, ty_i32, ty_i32));
+		Builder builder = Builder.createBuilder();
+		builder.positionBuilderAtEnd(f_mul.appendBasicBlock("entry"));
+		builder.buildRet(builder.buildMul(f_mul.getParam(0),
+				f_mul.getParam(1), "tmp"));
+
+		ExecutionEngine engine = ExecutionEngine.createForModule(mod);
+		long address = engine.getFunctionAddress("mul");
+		assertTrue(address != 0);
+		assertEquals(address, engine.getFunctionAddress("mul"));
+		assertEquals(0, engine.getFunctionAddress("missing"));
+
+		IntBinaryFunction mul = engine.getFunction("mul",
+				IntBinaryFunction.class);
+		assertSame(mul, engine.getFunction("mul", IntBinaryFunction.class));
+		assertEquals(42, mul.apply(6, 7));
+
+		engine.removeModule(mod).dispose();
+		assertEquals(0, engine.getFunctionAddress("mul"));
+		engine.dispose();
+	}
+
 }
@@ -0,0 +1,111 @@
+package org.llvm.test;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+import org.llvm.*;
+
+public class TestLLVMStatistics extends TestCase {
+
+	/* Counting is process-wide; later tests must find it as it was. */
+	private boolean enabled;
+
+	@Override
+	protected void setUp() {
+		this.enabled = LLVMStatistics.isEnabled();
+	}
+
+	@Override
+	protected void tearDown() {
+		LLVMStatistics.setEnabled(this.enabled);
+	}
+
+	public void testLiveCounts() {
+		LLVMStatistics stats = LLVMStatistics.getInstance();
+		long modules = stats.getLiveModules();
+		long engineModules = stats.getEngineModules();
+
+		Module mod = Module.createWithName("stats_module");
+		assertEquals(modules + 1, stats.getLiveModules());
+
+		ExecutionEngine engine = ExecutionEngine.createForModule(mod);
+		assertEquals(modules, stats.getLiveModules());
+		assertEquals(engineModules + 1, stats.getEngineModules());
+
+		engine.dispose();
+		assertEquals(engineModules, stats.getEngineModules());
+	}
+
+	public void testOptimizations() {
+		LLVMStatistics.setEnabled(true);
+		LLVMStatistics stats = LLVMStatistics.getInstance();
+		long runs = stats.getOptimizations();
+
+		Module mod = Module.createWithName("stats_module");
+		PassManager pm = PassManager.create();
+		pm.addGlobalDCEPass();
+		pm.runForModule(mod);
+		pm.dispose();
+		mod.dispose();
+
+		assertEquals(runs + 1, stats.getOptimizations());
+	}
+
+	public void testCompilations() {
+		Target.initialiseNativeTarget();
+		LLVMStatistics.setEnabled(true);
+		LLVMStatistics stats = LLVMStatistics.getInstance();
+		long compilations = stats.getCompilations();
+
+		Module mod = Module.createWithName("stats_module");
+		TypeRef i32 = TypeRef.int32Type();
+		Value f = mod.addFunction("answer", TypeRef.functionType(i32));
+		Builder builder = Builder.createBuilder();
+		builder.positionBuilderAtEnd(f.appendBasicBlock("entry"));
+		builder.buildRet(i32.constInt(42, false));
+		builder.dispose();
+
+		ExecutionEngine engine = ExecutionEngine.createForModule(mod);
+		try {
+			assertNotNull(engine.getPointerToGlobal(f));
+			assertNotNull(engine.getPointerToGlobal(f));
+			assertEquals(compilations + 1, stats.getCompilations());
+		} finally {
+			engine.dispose();
+		}
+	}
+
+	public void testDisabled() {
+		LLVMStatistics.setEnabled(false);
+		LLVMStatistics stats = LLVMStatistics.getInstance();
+		long runs = stats.getOptimizations();
+
+		Module mod = Module.createWithName("stats_module");
+		PassManager pm = PassManager.create();
+		pm.runForModule(mod);
+		pm.dispose();
+		mod.dispose();
+
+		assertEquals(runs, stats.getOptimizations());
+	}
+
+	public void testMBean() throws JMException {
+		LLVMStatistics.register();
+		LLVMStatistics.register();
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(LLVMStatistics.OBJECT_NAME);
+			assertTrue(server.isRegistered(name));
+			assertEquals(LLVMStatistics.getInstance().getLiveContexts(),
+					server.getAttribute(name, "LiveContexts"));
+		} finally {
+			LLVMStatistics.unregister();
+		}
+	}
+
+}
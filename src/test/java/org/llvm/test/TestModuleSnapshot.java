@@ -0,0 +1,82 @@
+package org.llvm.test;
+
+import junit.framework.TestCase;
+
+import org.llvm.*;
+import org.llvm.binding.LLVMLibrary.LLVMOpcode;
+import org.llvm.binding.LLVMLibrary.LLVMTypeKind;
+
+public class TestModuleSnapshot extends TestCase {
+
+	public void testStructure() {
+		Module mod = Module.createWithName("snapshot_module");
+		TypeRef ty_i32 = TypeRef.int32Type();
+		Value g = mod.addGlobal(ty_i32, "counter");
+		Value decl = mod.addFunction("ext",
+				TypeRef.functionType(ty_i32, ty_i32));
+		Value f = mod.addFunction("f", TypeRef.functionType(ty_i32, ty_i32));
+		Builder builder = Builder.createBuilder();
+		BasicBlock entry = f.appendBasicBlock("entry");
+		BasicBlock exit = f.appendBasicBlock("exit");
+		builder.positionBuilderAtEnd(entry);
+		Value sum = builder.buildAdd(f.getParam(0), ty_i32.constInt(-7, true),
+				"sum");
+		builder.buildStore(sum, g);
+		builder.buildBr(exit);
+		builder.positionBuilderAtEnd(exit);
+		builder.buildRet(builder.buildCall(decl, "r", sum));
+		builder.dispose();
+
+		ModuleSnapshot s = ModuleSnapshot.of(mod);
+		mod.dispose();
+
+		assertEquals(2, s.getFunctionCount());
+		assertEquals(1, s.getGlobalCount());
+		assertEquals("counter", s.getGlobalName(0));
+		int ext = s.findFunction("ext");
+		int fn = s.findFunction("f");
+		assertTrue(s.isDeclaration(ext));
+		assertFalse(s.isDeclaration(fn));
+		assertEquals(-1, s.findFunction("missing"));
+		assertEquals(1, s.getParamEnd(fn) - s.getParamBegin(fn));
+		assertEquals(2, s.getBlockEnd(fn) - s.getBlockBegin(fn));
+
+		int b0 = s.getBlockBegin(fn);
+		assertEquals(fn, s.getBlockFunction(b0));
+		assertEquals(3, s.getInstructionEnd(b0) - s.getInstructionBegin(b0));
+
+		int add = s.getInstructionBegin(b0);
+		assertEquals(LLVMOpcode.LLVMAdd.value(), s.getOpcode(add));
+		assertEquals(fn, s.getInstructionFunction(add));
+		assertEquals(LLVMTypeKind.LLVMIntegerTypeKind.value(),
+				s.getTypeKind(s.getType(add)));
+		assertEquals(32, s.getIntTypeWidth(s.getType(add)));
+
+		int lhs = s.getOperand(add, 0);
+		assertEquals(ModuleSnapshot.REF_PARAM, ModuleSnapshot.refKind(lhs));
+		assertEquals(s.getParamBegin(fn), ModuleSnapshot.refIndex(lhs));
+		int rhs = s.getOperand(add, 1);
+		assertEquals(ModuleSnapshot.REF_CONSTANT, ModuleSnapshot.refKind(rhs));
+		int c = ModuleSnapshot.refIndex(rhs);
+		assertTrue(s.isConstantInt(c));
+		assertEquals(-7, s.getConstantIntValue(c));
+
+		int store = add + 1;
+		assertEquals(ModuleSnapshot.REF_INSTRUCTION,
+				ModuleSnapshot.refKind(s.getOperand(store, 0)));
+		assertEquals(add, ModuleSnapshot.refIndex(s.getOperand(store, 0)));
+		assertEquals(ModuleSnapshot.REF_GLOBAL,
+				ModuleSnapshot.refKind(s.getOperand(store, 1)));
+
+		int br = add + 2;
+		assertEquals(ModuleSnapshot.REF_BLOCK,
+				ModuleSnapshot.refKind(s.getOperand(br, 0)));
+		assertEquals(b0 + 1, ModuleSnapshot.refIndex(s.getOperand(br, 0)));
+
+		int call = s.getInstructionBegin(b0 + 1);
+		int callee = s.getOperand(call, s.getOperandCount(call) - 1);
+		assertEquals(ModuleSnapshot.REF_FUNCTION, ModuleSnapshot.refKind(callee));
+		assertEquals(ext, ModuleSnapshot.refIndex(callee));
+	}
+
+}
@@ -0,0 +1,54 @@
+package org.llvm.test;
+
+import junit.framework.TestCase;
+
+import org.llvm.Builder;
+import org.llvm.Module;
+import org.llvm.NativeHandles;
+import org.llvm.NativeScope;
+
+public class TestNativeHandles extends TestCase {
+
+	public void testStrictScopeAcceptsDisposedObjects() {
+		try (NativeScope scope = NativeScope.openStrict()) {
+			Module module = Module.createWithName("strict");
+			Builder builder = Builder.createBuilder();
+			builder.dispose();
+			module.dispose();
+		}
+	}
+
+	public void testStrictScopeReportsLeaks() {
+		NativeScope scope = NativeScope.openStrict();
+		Builder.createBuilder();
+		try {
+			scope.close();
+			fail();
+		} catch (IllegalStateException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(
+					"Builder created at " + TestNativeHandles.class.getName()));
+		}
+	}
+
+	public void testSampledSites() {
+		int rate = NativeHandles.getSampleRate();
+		NativeHandles.setSampleRate(1);
+		try {
+			Module module = Module.createWithName("sampled");
+			boolean found = false;
+			for (NativeHandles.Handle h : NativeHandles.outstanding()) {
+				if (h.getType() == Module.class && h.getSite() != null
+						&& h.toString().contains("testSampledSites")) {
+					found = true;
+				}
+			}
+			assertTrue(found);
+			assertTrue(NativeHandles.countByType().get(Module.class) >= 1);
+			assertTrue(NativeHandles.report().contains("testSampledSites"));
+			module.dispose();
+		} finally {
+			NativeHandles.setSampleRate(rate);
+		}
+	}
+
+}
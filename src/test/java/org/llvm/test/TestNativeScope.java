@@ -0,0 +1,107 @@
+package org.llvm.test;
+
+import junit.framework.TestCase;
+
+import org.llvm.Builder;
+import org.llvm.Context;
+import org.llvm.ExecutionEngine;
+import org.llvm.LLVMException;
+import org.llvm.Module;
+import org.llvm.NativeHandles;
+import org.llvm.NativeScope;
+import org.llvm.TypeRef;
+import org.llvm.Value;
+
+public class TestNativeScope extends TestCase {
+
+	public void testScopeDisposesObjects() {
+		Module module;
+		try (NativeScope scope = NativeScope.open()) {
+			Context ctx = Context.create();
+			module = Module.createWithNameInContext("scoped", ctx);
+			Builder builder = Builder.createBuilderInContext(ctx);
+			assertNotNull(builder);
+		}
+
+		/* Already freed by the scope; must not be freed twice. */
+		module.dispose();
+	}
+
+	public void testEngineOwnsModule() {
+		try (NativeScope scope = NativeScope.open()) {
+			Module module = Module.createWithName("owned");
+			TypeRef ty_i32 = TypeRef.int32Type();
+			Value f = module.addFunction("id",
+					TypeRef.functionType(ty_i32, ty_i32));
+			Builder builder = Builder.createBuilder();
+			builder.positionBuilderAtEnd(f.appendBasicBlock("entry"));
+			builder.buildRet(f.getParam(0));
+
+			ExecutionEngine engine = ExecutionEngine.createForModule(module);
+
+			/* Ownership moved to the engine: this is a no-op. */
+			module.dispose();
+			engine.dispose();
+		}
+	}
+
+	public void testDisposeTransferredModule() throws LLVMException {
+		Module module = Module.createWithName("transferred");
+		TypeRef ty_i32 = TypeRef.int32Type();
+		module.addFunction("f", TypeRef.functionType(ty_i32, ty_i32));
+		ExecutionEngine engine = ExecutionEngine.createForModule(module);
+
+		/* A no-op which leaves the handle to the engine's module. */
+		module.dispose();
+		assertNotNull(module.module());
+		Module removed = engine.removeModule(module);
+		assertNotNull(removed.getNamedFunction("f"));
+		engine.dispose();
+		removed.dispose();
+	}
+
+	public void testGlobalContextIsNotDisposed() {
+		Context.getGlobalContext().dispose();
+
+		Module module = Module.createWithName("after_dispose");
+		assertNotNull(module.module());
+		module.dispose();
+	}
+
+	public void testContextDisposedBeforeModule() {
+		Context ctx = Context.create();
+		Module module = Module.createWithNameInContext("outlives", ctx);
+		ctx.dispose();
+
+		/* The native context lives on until its module is freed. */
+		TypeRef ty_i32 = TypeRef.int32TypeInContext(module.getModuleContext());
+		module.addFunction("f", TypeRef.functionType(ty_i32, ty_i32));
+		module.dispose();
+	}
+
+	public void testUnreachableContextAndModules() throws InterruptedException {
+		int before = count(Module.class) + count(Context.class);
+		for (int i = 0; i < 50; i++) {
+			Context ctx = Context.create();
+			Module a = Module.createWithNameInContext("a", ctx);
+			Module b = Module.createWithNameInContext("b", ctx);
+			TypeRef ty_i32 = TypeRef.int32TypeInContext(ctx);
+			a.addFunction("f", TypeRef.functionType(ty_i32, ty_i32));
+			b.addFunction("g", TypeRef.functionType(ty_i32, ty_i32));
+		}
+
+		/* The cleaner sees the wrappers of each context in any order. */
+		for (int i = 0; i < 100
+				&& count(Module.class) + count(Context.class) > before; i++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		assertTrue(count(Module.class) + count(Context.class) <= before);
+	}
+
+	private static int count(Class<?> kind) {
+		Integer n = NativeHandles.countByType().get(kind);
+		return n == null ? 0 : n;
+	}
+
+}
@@ -0,0 +1,100 @@
+package org.llvm.test;
+
+import junit.framework.TestCase;
+
+import org.llvm.*;
+
+public class TestOrcJIT extends TestCase {
+
+	public interface IntBinaryFunction {
+		int apply(int a, int b);
+	}
+
+	public interface IntUnaryFunction {
+		int apply(int a);
+	}
+
+	public interface LongUnaryFunction {
+		long apply(long a);
+	}
+
+	private OrcJIT jit;
+
+	@Override
+	protected void setUp() throws LLVMException {
+		Target.initialiseNativeTarget();
+		this.jit = OrcJIT.createForHost(2);
+	}
+
+	@Override
+	protected void tearDown() {
+		this.jit.dispose();
+	}
+
+	private static Module mulModule() {
+		Module mod = Module.createWithName("orc_mul");
+		TypeRef ty_i32 = TypeRef.int32Type();
+		Value f = mod.addFunction("mul",
+				TypeRef.functionType(ty_i32, ty_i32, ty_i32));
+		Builder builder = Builder.createBuilder();
+		builder.positionBuilderAtEnd(f.appendBasicBlock("entry"));
+		builder.buildRet(builder.buildMul(f.getParam(0), f.getParam(1), "r"));
+		builder.dispose();
+		return mod;
+	}
+
+	public void testAddLookupRemove() throws LLVMException {
+		int handle = this.jit.addModuleEagerly(mulModule());
+		long address = this.jit.getFunctionAddress("mul");
+		assertTrue(address != 0);
+		assertEquals(address, this.jit.getFunctionAddress("mul"));
+		assertEquals(0, this.jit.getFunctionAddress("missing"));
+
+		IntBinaryFunction mul = this.jit.getFunction("mul",
+				IntBinaryFunction.class);
+		assertEquals(42, mul.apply(6, 7));
+
+		this.jit.removeModule(handle);
+		assertEquals(0, this.jit.getFunctionAddress("mul"));
+	}
+
+	public void testCallBetweenModules() throws LLVMException {
+		this.jit.addModuleEagerly(mulModule());
+
+		Module mod = Module.createWithName("orc_square");
+		TypeRef ty_i32 = TypeRef.int32Type();
+		Value mul = mod.addFunction("mul",
+				TypeRef.functionType(ty_i32, ty_i32, ty_i32));
+		Value square = mod.addFunction("square",
+				TypeRef.functionType(ty_i32, ty_i32));
+		Builder builder = Builder.createBuilder();
+		builder.positionBuilderAtEnd(square.appendBasicBlock("entry"));
+		builder.buildRet(builder.buildCall(mul, "r", square.getParam(0),
+				square.getParam(0)));
+		builder.dispose();
+		this.jit.addModuleLazily(mod);
+
+		IntUnaryFunction f = this.jit.getFunction("square",
+				IntUnaryFunction.class);
+		assertEquals(49, f.apply(7));
+	}
+
+	public void testCallIntoProcess() throws LLVMException {
+		Module mod = Module.createWithName("orc_libc");
+		TypeRef ty_i64 = TypeRef.int64Type();
+		Value labs = mod.addFunction("labs", TypeRef.functionType(ty_i64,
+				ty_i64));
+		Value abs = mod.addFunction("absolute", TypeRef.functionType(ty_i64,
+				ty_i64));
+		Builder builder = Builder.createBuilder();
+		builder.positionBuilderAtEnd(abs.appendBasicBlock("entry"));
+		builder.buildRet(builder.buildCall(labs, "r", abs.getParam(0)));
+		builder.dispose();
+		this.jit.addModuleEagerly(mod);
+
+		LongUnaryFunction f = this.jit.getFunction("absolute",
+				LongUnaryFunction.class);
+		assertEquals(5, f.apply(-5));
+	}
+
+}
@@ -0,0 +1,38 @@
+package org.llvm.test;
+
+import junit.framework.TestCase;
+
+import org.llvm.Context;
+import org.llvm.LLVMException;
+import org.llvm.Module;
+
+public class TestParseIR extends TestCase {
+
+	private static final String SUM = "define i32 @sum(i32 %a, i32 %b) {\n"
+			+ "entry:\n"
+			+ "  %tmp = add i32 %a, %b\n"
+			+ "  ret i32 %tmp\n"
+			+ "}\n";
+
+	public void testParseString() throws LLVMException {
+		Context c = Context.create();
+		Module m = Module.parseIRInContext(c, SUM);
+		m.verify();
+		assertEquals(1, m.getNamedFunction("sum").countBasicBlocks());
+		m.dispose();
+		c.dispose();
+	}
+
+	public void testParseErrorIsReported() {
+		Context c = Context.create();
+		try {
+			Module.parseIRInContext(c, new StringBuilder("define i32 @f( {"));
+			fail();
+		} catch (LLVMException e) {
+			assertTrue(e.getMessage().length() > 0);
+		} finally {
+			c.dispose();
+		}
+	}
+
+}
@@ -0,0 +1,154 @@
+package org.llvm.test;
+
+import java.util.List;
+import java.util.Set;
+
+import org.llvm.*;
+import org.llvm.binding.LLVMLibrary.LLVMLinkage;
+
+public class TestPartitionedOptimizer extends ExecutionTest {
+
+	public void testOptimizePartitions() throws LLVMException {
+		Context c = Context.create();
+		Module mod = Module.createWithNameInContext("partitioned", c);
+		TypeRef ty_i32 = TypeRef.int32TypeInContext(c);
+		TypeRef ty_func = TypeRef.functionType(ty_i32, ty_i32);
+		Builder builder = Builder.createBuilderInContext(c);
+
+		// An internal helper and its caller form one group; f1..f5 are
+		// independent groups.
+		Value helper = mod.addFunction("helper", ty_func);
+		helper.setLinkage(LLVMLinkage.LLVMInternalLinkage);
+		builder.positionBuilderAtEnd(helper.appendBasicBlockInContext(c,
+				"entry"));
+		builder.buildRet(builder.buildMul(helper.getParam(0),
+				ty_i32.constInt(2, false), "r"));
+
+		Value f0 = mod.addFunction("f0", ty_func);
+		builder.positionBuilderAtEnd(f0.appendBasicBlockInContext(c, "entry"));
+		builder.buildRet(builder.buildCall(helper, "r", f0.getParam(0)));
+
+		for (int n = 1; n <= 5; n++) {
+			Value f = mod.addFunction("f" + n, ty_func);
+			builder.positionBuilderAtEnd(f.appendBasicBlockInContext(c,
+					"entry"));
+			builder.buildRet(builder.buildAdd(f.getParam(0),
+					ty_i32.constInt(n, false), "r"));
+		}
+		builder.dispose();
+
+		PartitionedOptimizer optimizer = new PartitionedOptimizer(4,
+				new PassManagerBuilder(OptimizationLevel.O2));
+		Module result = optimizer.optimize(mod, 4);
+		optimizer.shutdown();
+		result.verify();
+
+		for (int n = 0; n <= 5; n++) {
+			assertNotNull(result.getNamedFunction("f" + n));
+		}
+		Value f0opt = result.getNamedFunction("f0");
+		GenericValue retval = execute(result, f0opt,
+				GenericValue.createInt(ty_i32, 21, true));
+		assertEquals(42, retval.toInt(true));
+		mod.dispose();
+		c.dispose();
+	}
+
+	public void testSharedHelper() throws LLVMException {
+		Context c = Context.create();
+		Module mod = Module.createWithNameInContext("shared", c);
+		TypeRef ty_i32 = TypeRef.int32TypeInContext(c);
+		TypeRef ty_func = TypeRef.functionType(ty_i32, ty_i32);
+		Builder builder = Builder.createBuilderInContext(c);
+
+		// A small internal helper called from every function, the usual
+		// shape of generated code; it must not merge them into one group.
+		Value helper = mod.addFunction("helper", ty_func);
+		helper.setLinkage(LLVMLinkage.LLVMInternalLinkage);
+		builder.positionBuilderAtEnd(helper.appendBasicBlockInContext(c,
+				"entry"));
+		builder.buildRet(builder.buildMul(helper.getParam(0),
+				ty_i32.constInt(2, false), "r"));
+		for (int n = 0; n < 6; n++) {
+			Value f = mod.addFunction("f" + n, ty_func);
+			builder.positionBuilderAtEnd(f.appendBasicBlockInContext(c,
+					"entry"));
+			Value r = builder.buildCall(helper, "h", f.getParam(0));
+			builder.buildRet(builder.buildAdd(r, ty_i32.constInt(n, false),
+					"r"));
+		}
+		builder.dispose();
+
+		List<Set<String>> plan = PartitionedOptimizer.plan(mod, 4);
+		assertEquals(4, plan.size());
+		int functions = 0;
+		for (Set<String> part : plan) {
+			functions += part.size();
+		}
+		assertEquals(7, functions);
+
+		PartitionedOptimizer optimizer = new PartitionedOptimizer(4,
+				new PassManagerBuilder(OptimizationLevel.O2));
+		Module result = optimizer.optimize(mod, 4);
+		optimizer.shutdown();
+		result.verify();
+
+		GenericValue retval = execute(result, result.getNamedFunction("f5"),
+				GenericValue.createInt(ty_i32, 20, true));
+		assertEquals(45, retval.toInt(true));
+		mod.dispose();
+		c.dispose();
+	}
+
+	public void testConstantReferences() throws LLVMException {
+		Context c = Context.create();
+		Module mod = Module.createWithNameInContext("referenced", c);
+		TypeRef ty_i32 = TypeRef.int32TypeInContext(c);
+		TypeRef ty_ptr = TypeRef.int8TypeInContext(c).pointerType();
+		TypeRef ty_func = TypeRef.functionType(ty_i32, ty_i32);
+		Builder builder = Builder.createBuilderInContext(c);
+
+		// "cb" is only referenced by an initializer, "hook" only through a
+		// constant expression; both may be dropped where unreferenced.
+		Value cb = mod.addFunction("cb", ty_func);
+		Value hook = mod.addFunction("hook", ty_func);
+		for (Value f : new Value[] { cb, hook }) {
+			f.setLinkage(LLVMLinkage.LLVMLinkOnceODRLinkage);
+			builder.positionBuilderAtEnd(f.appendBasicBlockInContext(c,
+					"entry"));
+			builder.buildRet(builder.buildAdd(f.getParam(0),
+					ty_i32.constInt(1, false), "r"));
+		}
+		Value table = mod.addGlobal(ty_ptr, "table");
+		table.setInitializer(Value.constBitCast(cb, ty_ptr));
+		Value slot = mod.addGlobal(ty_ptr, "slot");
+		slot.setInitializer(ty_ptr.constNull());
+
+		Value install = mod.addFunction("install", ty_func);
+		builder.positionBuilderAtEnd(install.appendBasicBlockInContext(c,
+				"entry"));
+		builder.buildStore(Value.constBitCast(hook, ty_ptr), slot);
+		builder.buildRet(install.getParam(0));
+		for (int n = 1; n <= 4; n++) {
+			Value f = mod.addFunction("f" + n, ty_func);
+			builder.positionBuilderAtEnd(f.appendBasicBlockInContext(c,
+					"entry"));
+			builder.buildRet(builder.buildAdd(f.getParam(0),
+					ty_i32.constInt(n, false), "r"));
+		}
+		builder.dispose();
+
+		PartitionedOptimizer optimizer = new PartitionedOptimizer(4,
+				new PassManagerBuilder(OptimizationLevel.O2));
+		Module result = optimizer.optimize(mod, 4);
+		optimizer.shutdown();
+		result.verify();
+
+		assertFalse(result.getNamedFunction("cb").isDeclaration());
+		assertFalse(result.getNamedFunction("hook").isDeclaration());
+		result.dispose();
+		mod.dispose();
+		c.dispose();
+	}
+
+}
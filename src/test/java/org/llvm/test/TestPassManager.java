@@ -0,0 +1,49 @@
+package org.llvm.test;
+
+import junit.framework.TestCase;
+
+import org.llvm.*;
+
+public class TestPassManager extends TestCase {
+
+	private Value buildIdentity(Module mod) {
+		TypeRef ty_i32 = TypeRef.int32Type();
+		Value f = mod.addFunction("id", TypeRef.functionType(ty_i32, ty_i32));
+		Builder builder = Builder.createBuilder();
+		builder.positionBuilderAtEnd(f.appendBasicBlock("entry"));
+		builder.buildRet(f.getParam(0));
+		builder.dispose();
+		return f;
+	}
+
+	/* A module pipeline must not be finalized as a function pipeline. */
+	public void testDisposeModulePipeline() throws LLVMException {
+		Module mod = Module.createWithName("pm_module");
+		this.buildIdentity(mod);
+
+		PassManager pm = PassManager.create();
+		pm.addGlobalDCEPass();
+		pm.runForModule(mod);
+		assertFalse(pm.dispose());
+		assertFalse(pm.dispose());
+		pm.close();
+
+		mod.verify();
+		mod.dispose();
+	}
+
+	public void testDisposeFunctionPipeline() throws LLVMException {
+		Module mod = Module.createWithName("fpm_module");
+		Value f = this.buildIdentity(mod);
+
+		PassManager fpm = PassManager.createForModule(mod);
+		fpm.initialize();
+		fpm.runForFunction(f);
+		fpm.dispose();
+		assertFalse(fpm.dispose());
+
+		mod.verify();
+		mod.dispose();
+	}
+
+}
@@ -0,0 +1,67 @@
+package org.llvm.test;
+
+import org.llvm.*;
+
+public class TestPassManagerBuilder extends ExecutionTest {
+
+	private Value buildSpilledSum(Module mod) {
+		TypeRef ty_i32 = TypeRef.int32Type();
+		Value f = mod.addFunction("sum",
+				TypeRef.functionType(ty_i32, ty_i32, ty_i32));
+		Builder builder = Builder.createBuilder();
+		builder.positionBuilderAtEnd(f.appendBasicBlock("entry"));
+		Value a = builder.buildAlloca(ty_i32, "a");
+		Value b = builder.buildAlloca(ty_i32, "b");
+		builder.buildStore(f.getParam(0), a);
+		builder.buildStore(f.getParam(1), b);
+		builder.buildRet(builder.buildAdd(builder.buildLoad(a, "x"),
+				builder.buildLoad(b, "y"), "tmp"));
+		builder.dispose();
+		return f;
+	}
+
+	public void testDefaults() {
+		PassManagerBuilder o0 = new PassManagerBuilder(OptimizationLevel.O0);
+		assertEquals(-1, o0.getInlinerThreshold());
+		assertFalse(o0.isVectorize());
+
+		PassManagerBuilder o3 = new PassManagerBuilder(OptimizationLevel.O3);
+		assertEquals(250, o3.getInlinerThreshold());
+		assertTrue(o3.isUnrollLoops());
+		assertTrue(o3.isVectorize());
+
+		assertFalse(new PassManagerBuilder(OptimizationLevel.Oz).isVectorize());
+	}
+
+	public void testModulePipeline() throws LLVMException {
+		Module mod = Module.createWithName("o2_module");
+		Value f = this.buildSpilledSum(mod);
+
+		PassManager pm = PassManager.create();
+		new PassManagerBuilder(OptimizationLevel.O2).setInlinerThreshold(100)
+				.populateModulePassManager(pm);
+		assertTrue(pm.runForModule(mod));
+		pm.dispose();
+		mod.verify();
+
+		TypeRef ty_i32 = TypeRef.int32Type();
+		GenericValue retval = execute(mod, f,
+				GenericValue.createInt(ty_i32, 40, true),
+				GenericValue.createInt(ty_i32, 2, true));
+		assertEquals(42, retval.toInt(true));
+	}
+
+	public void testFunctionPipeline() throws LLVMException {
+		Module mod = Module.createWithName("fpm_module");
+		Value f = this.buildSpilledSum(mod);
+
+		PassManager fpm = PassManager.createForModule(mod);
+		new PassManagerBuilder(OptimizationLevel.O1)
+				.populateFunctionPassManager(fpm);
+		fpm.initialize();
+		assertTrue(fpm.runForFunction(f));
+		fpm.dispose();
+		mod.verify();
+	}
+
+}
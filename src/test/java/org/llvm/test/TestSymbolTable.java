@@ -0,0 +1,135 @@
+package org.llvm.test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.bridj.Pointer;
+import org.llvm.*;
+import org.llvm.binding.LLVMLibrary;
+
+public class TestSymbolTable extends TestCase {
+
+	public void testLookup() {
+		Module mod = Module.createWithName("symbols_module");
+		TypeRef ty_i32 = TypeRef.int32Type();
+		TypeRef fty = TypeRef.functionType(ty_i32, ty_i32);
+		Value f = mod.addFunction("f", fty);
+		Value g = mod.addGlobal(ty_i32, "g");
+
+		assertFalse(mod.lookupFunction("missing").isPresent());
+		assertFalse(mod.lookupFunction("g").isPresent());
+		assertFalse(mod.lookupGlobal("f").isPresent());
+		assertEquals(Pointer.getPeer(f.value()),
+				Pointer.getPeer(mod.lookupFunction("f").get().value()));
+		assertEquals(Pointer.getPeer(g.value()),
+				Pointer.getPeer(mod.lookupGlobal("g").get().value()));
+
+		/* Changes made once the table is built. */
+		Value h = mod.addFunction("h", fty);
+		assertTrue(mod.lookupFunction("h").isPresent());
+		h.setValueName("renamed");
+		assertFalse(mod.lookupFunction("h").isPresent());
+		assertEquals(Pointer.getPeer(h.value()),
+				Pointer.getPeer(mod.lookupFunction("renamed").get().value()));
+		h.deleteFunction();
+		assertFalse(mod.lookupFunction("renamed").isPresent());
+		g.deleteGlobal();
+		assertFalse(mod.lookupGlobal("g").isPresent());
+
+		try {
+			mod.getNamedFunction("renamed");
+			fail();
+		} catch (LLVMException e) {
+			// expected
+		}
+		mod.dispose();
+	}
+
+	public void testAddOrInsert() {
+		Module mod = Module.createWithName("symbols_module");
+		TypeRef ty_i32 = TypeRef.int32Type();
+		TypeRef fty = TypeRef.functionType(ty_i32, ty_i32);
+		Value f = mod.addFunction("f", fty);
+
+		assertEquals(Pointer.getPeer(f.value()),
+				Pointer.getPeer(mod.addOrInsertFunction("f", fty).value()));
+
+		Map<String, TypeRef> prototypes = new LinkedHashMap<String, TypeRef>();
+		prototypes.put("f", fty);
+		prototypes.put("rt_alloc", fty);
+		prototypes.put("rt_free", fty);
+		Map<String, Value> functions = mod.addOrInsertFunctions(prototypes);
+		assertEquals(3, functions.size());
+		assertEquals(Pointer.getPeer(f.value()),
+				Pointer.getPeer(functions.get("f").value()));
+		assertEquals("rt_alloc", functions.get("rt_alloc").getValueName());
+		assertTrue(mod.lookupFunction("rt_free").isPresent());
+
+		/* A second call declares nothing new. */
+		mod.addOrInsertFunctions(prototypes);
+		int count = 0;
+		for (Value v : mod.functions()) {
+			count++;
+		}
+		assertEquals(3, count);
+		mod.dispose();
+	}
+
+	public void testChangesBehindTheWrappers() throws LLVMException {
+		Module mod = Module.createWithName("symbols_module");
+		TypeRef ty_i32 = TypeRef.int32Type();
+		TypeRef fty = TypeRef.functionType(ty_i32, ty_i32);
+		Value f = mod.addFunction("f", fty);
+		Value g = mod.addFunction("g", fty);
+		assertTrue(mod.lookupFunction("g").isPresent());
+
+		/* Created by the builder, not through Module. */
+		Builder builder = Builder.createBuilder();
+		builder.positionBuilderAtEnd(f.appendBasicBlock("entry"));
+		builder.buildGlobalString("text", "greeting");
+		builder.buildGlobalStringPtr("more text", "farewell");
+		builder.buildRet(f.getParam(0));
+		builder.dispose();
+		assertTrue(mod.lookupGlobal("greeting").isPresent());
+		assertTrue(mod.lookupGlobal("farewell").isPresent());
+
+		/* getNamedFunction() asks LLVM, whatever the table says. */
+		LLVMLibrary.LLVMDeleteFunction(g.value());
+		try {
+			mod.getNamedFunction("g");
+			fail();
+		} catch (LLVMException e) {
+			// expected
+		}
+		mod.dispose();
+	}
+
+	public void testMissesStayInTheTable() {
+		Module mod = Module.createWithName("symbols_module");
+		TypeRef ty_i32 = TypeRef.int32Type();
+		assertFalse(mod.lookupFunction("absent").isPresent());
+
+		/*
+		 * Declared behind the wrappers: a miss answered natively would find
+		 * it, the table does not.
+		 */
+		LLVMLibrary.LLVMAddFunction(mod.module(),
+				Pointer.pointerToCString("absent"),
+				TypeRef.functionType(ty_i32).type());
+		assertFalse(mod.lookupFunction("absent").isPresent());
+		assertFalse(mod.lookupFunction("absent").isPresent());
+
+		/* Passes forget the table, which is then rebuilt. */
+		PassManager pm = PassManager.create();
+		pm.addStripDeadPrototypesPass();
+		assertTrue(pm.runForModule(mod));
+		pm.dispose();
+		assertFalse(mod.lookupFunction("absent").isPresent());
+		mod.addFunction("absent", TypeRef.functionType(ty_i32));
+		assertTrue(mod.lookupFunction("absent").isPresent());
+		mod.dispose();
+	}
+
+}
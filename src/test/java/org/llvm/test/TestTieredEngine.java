@@ -0,0 +1,76 @@
+package org.llvm.test;
+
+import junit.framework.TestCase;
+
+import org.llvm.*;
+
+public class TestTieredEngine extends TestCase {
+
+	public interface IntBinaryFunction {
+		int apply(int a, int b);
+	}
+
+	public interface DoubleUnaryFunction {
+		double apply(double a);
+	}
+
+	private Module buildModule() {
+		Module mod = Module.createWithName("tiered_module");
+		TypeRef ty_i32 = TypeRef.int32Type();
+		TypeRef ty_double = TypeRef.doubleType();
+
+		Value f_mul = mod.addFunction("mul",
+				TypeRef.functionType(ty_i32, ty_i32, ty_i32));
+		Builder builder = Builder.createBuilder();
+		builder.positionBuilderAtEnd(f_mul.appendBasicBlock("entry"));
+		builder.buildRet(builder.buildMul(f_mul.getParam(0),
+				f_mul.getParam(1), "tmp"));
+
+		Value f_half = mod.addFunction("half",
+				TypeRef.functionType(ty_double, ty_double));
+		builder.positionBuilderAtEnd(f_half.appendBasicBlock("entry"));
+		builder.buildRet(builder.buildFMul(f_half.getParam(0),
+				ty_double.constReal(0.5), "tmp"));
+		builder.dispose();
+		return mod;
+	}
+
+	public void testInterpretedBelowThreshold() throws LLVMException {
+		TieredEngine engine = TieredEngine.create(this.buildModule(), 100, 2,
+				null);
+		IntBinaryFunction mul = engine.getFunction("mul",
+				IntBinaryFunction.class);
+		DoubleUnaryFunction half = engine.getFunction("half",
+				DoubleUnaryFunction.class);
+
+		assertEquals(42, mul.apply(6, 7));
+		assertEquals(-12, mul.apply(-3, 4));
+		assertEquals(1.25, half.apply(2.5), 0.0);
+		assertFalse(engine.isCompiled());
+		engine.dispose();
+	}
+
+	public void testPromotion() throws LLVMException {
+		Target.initialiseNativeTarget();
+		TieredEngine engine = TieredEngine.create(this.buildModule(), 2, 2,
+				new PassManagerBuilder(OptimizationLevel.O2));
+		IntBinaryFunction mul = engine.getFunction("mul",
+				IntBinaryFunction.class);
+		DoubleUnaryFunction half = engine.getFunction("half",
+				DoubleUnaryFunction.class);
+
+		for (int i = 0; i < 10; i++) {
+			assertEquals(i * 3, mul.apply(i, 3));
+		}
+		assertNull(engine.getCompileError());
+		assertTrue(engine.isCompiled());
+		assertTrue(mul.toString().contains("compiled"));
+
+		// The whole module was promoted by the hot "mul".
+		assertFalse(half.toString().contains("compiled"));
+		assertEquals(4.0, half.apply(8.0), 0.0);
+		assertTrue(half.toString().contains("compiled"));
+		engine.dispose();
+	}
+
+}
@@ -0,0 +1,51 @@
+package org.llvm.test;
+
+import junit.framework.TestCase;
+
+import org.llvm.Context;
+import org.llvm.TypeRef;
+
+public class TestTypeCache extends TestCase {
+
+	public void testCanonicalTypes() {
+		TypeRef i32 = TypeRef.int32Type();
+		assertSame(i32, TypeRef.int32Type());
+		assertSame(i32, TypeRef.intType(32));
+		assertSame(i32.pointerType(), TypeRef.int32Type().pointerType());
+		assertSame(i32.arrayType(4), i32.arrayType(4));
+		assertNotSame(i32.arrayType(4), i32.vectorType(4));
+		assertSame(TypeRef.functionType(i32, i32, i32),
+				TypeRef.functionType(i32, i32, i32));
+	}
+
+	public void testEqualityByHandle() {
+		TypeRef i64 = TypeRef.int64Type();
+		TypeRef elem = i64.pointerType().getElementType();
+		assertEquals(i64, elem);
+		assertEquals(i64.hashCode(), elem.hashCode());
+		assertFalse(i64.equals(TypeRef.int32Type()));
+	}
+
+	public void testConstantsAreInterned() {
+		TypeRef i32 = TypeRef.int32Type();
+		assertSame(i32.constInt(7, false), i32.constInt(7, false));
+		assertSame(i32.constInt(-1, true), i32.constInt(-1, true));
+		assertEquals(-1, i32.constInt(-1, true).constIntGetSExtValue());
+
+		TypeRef f64 = TypeRef.doubleType();
+		assertSame(f64.constReal(0.5), f64.constReal(0.5));
+		assertNotSame(f64.constReal(0.0), f64.constReal(-0.0));
+	}
+
+	public void testTypesArePerContext() {
+		Context c = Context.create();
+		try {
+			TypeRef i32 = TypeRef.int32TypeInContext(c);
+			assertSame(i32, TypeRef.int32TypeInContext(c));
+			assertFalse(i32.equals(TypeRef.int32Type()));
+		} finally {
+			c.dispose();
+		}
+	}
+
+}